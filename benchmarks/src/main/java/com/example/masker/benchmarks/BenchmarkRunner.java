@@ -0,0 +1,35 @@
+package com.example.masker.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Точка входа {@code java -jar target/benchmarks.jar}: принимает обычные аргументы
+ * JMH и всегда включает профилировщик GC, чтобы в отчёте были скорость выделения
+ * памяти ({@code gc.alloc.rate.norm} — байт на операцию) и число сборок.
+ * Результаты также сохраняются в {@code jmh-result.json} для сравнения между запусками.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        options.addProfiler(GCProfiler.class);
+        if (commandLine.getResult().hasValue()) {
+            options.result(commandLine.getResult().get());
+        } else {
+            options.result("jmh-result.json");
+        }
+        options.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON));
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.masker.benchmarks;
+
+import com.example.masker.service.JsonMaskingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Маскировка JSON через {@link JsonMaskingService}: строка, массив байт и поток.
+ *
+ * Параметры покрывают размер документа, его форму (вложенность, длина массивов)
+ * и нагрузку правилами (число правил, доля маскируемых полей, плотность пар
+ * code / codeValue). По умолчанию меняются размер и доля маскируемых полей,
+ * остальные измерения задаются через {@code -p}, например
+ * {@code -p depth=1,8,32 -p arrayLength=0,1000}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonMaskingBenchmark {
+
+    @Param({"1KB", "64KB", "1MB", "10MB"})
+    private String payloadSize;
+
+    @Param({"2"})
+    private int depth;
+
+    @Param({"4"})
+    private int arrayLength;
+
+    @Param({"10"})
+    private int configuredFields;
+
+    @Param({"0.0", "0.1", "0.5"})
+    private double maskedRatio;
+
+    @Param({"0.1"})
+    private double codeValueDensity;
+
+    private JsonMaskingService service;
+    private String json;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setUp() {
+        Payloads.Spec spec = new Payloads.Spec(payloadSize, depth, arrayLength, configuredFields,
+                maskedRatio, codeValueDensity);
+        service = new JsonMaskingService(Payloads.properties(spec), new ObjectMapper());
+        jsonBytes = Payloads.json(spec);
+        json = new String(jsonBytes, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String maskJson() {
+        return service.maskJson(json);
+    }
+
+    @Benchmark
+    public byte[] maskJsonBytes() {
+        return service.maskJsonBytes(jsonBytes);
+    }
+
+    @Benchmark
+    public void maskJsonStream() throws IOException {
+        service.maskJson(new ByteArrayInputStream(jsonBytes), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.masker.benchmarks;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.filter.MaskingFilter;
+import com.example.masker.service.JsonMaskingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный проход {@link MaskingFilter} на mock-объектах сервлетов: контроллер читает
+ * JSON-тело запроса и пишет JSON-ответ того же размера. Измеряются буферизация,
+ * маскировка обоих тел и выдача результата в обоих режимах ответа.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MaskingFilterBenchmark {
+
+    @Param({"1KB", "64KB", "1MB", "10MB"})
+    private String payloadSize;
+
+    @Param({"BUFFERED", "STREAMING"})
+    private MaskingProperties.ResponseMode responseMode;
+
+    @Param({"10"})
+    private int configuredFields;
+
+    @Param({"0.0", "0.1"})
+    private double maskedRatio;
+
+    @Param({"0.1"})
+    private double codeValueDensity;
+
+    private MaskingFilter filter;
+    private HttpServlet servlet;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        Payloads.Spec spec = new Payloads.Spec(payloadSize, 2, 4, configuredFields, maskedRatio, codeValueDensity);
+        MaskingProperties properties = Payloads.properties(spec);
+        properties.setResponseMode(responseMode);
+        filter = new MaskingFilter(properties, new JsonMaskingService(properties, new ObjectMapper()));
+        json = Payloads.json(spec);
+        servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                req.getInputStream().transferTo(OutputStream.nullOutputStream());
+                resp.setContentType("application/json");
+                resp.getOutputStream().write(json);
+            }
+        };
+    }
+
+    @Benchmark
+    public MockHttpServletResponse filter() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders");
+        request.setContentType("application/json");
+        request.setContent(json);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(servlet));
+        return response;
+    }
+}
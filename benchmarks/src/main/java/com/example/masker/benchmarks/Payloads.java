@@ -0,0 +1,122 @@
+package com.example.masker.benchmarks;
+
+import com.example.masker.config.MaskingProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Генератор тестовых JSON-документов и конфигурации правил для бенчмарков.
+ *
+ * Документ — объект {@code {"items":[...]}}, элементы которого добавляются, пока
+ * не набран нужный размер. Каждый элемент вложен на {@code depth} уровней и содержит
+ * строковые поля, массив строк длины {@code arrayLength} и, с заданной вероятностью,
+ * пару {@code code} / {@code codeValue}. Доля полей с настроенными именами задаётся
+ * {@code maskedRatio}. Генерация детерминирована: одинаковые параметры дают
+ * одинаковый документ.
+ */
+final class Payloads {
+
+    /** Строковых полей в каждом элементе */
+    static final int FIELDS_PER_ITEM = 8;
+
+    private static final String CONFIGURED_PREFIX = "secret";
+
+    private Payloads() {
+    }
+
+    /**
+     * Параметры документа и правил
+     *
+     * @param size             размер документа, например {@code 1KB} или {@code 10MB}
+     * @param depth            уровень вложенности полей в элементе
+     * @param arrayLength      длина массива строк в элементе
+     * @param configuredFields число настроенных правил
+     * @param maskedRatio      доля строковых полей, которые попадают под правила
+     * @param codeValueDensity доля элементов с парой code / codeValue
+     */
+    record Spec(String size, int depth, int arrayLength, int configuredFields,
+                double maskedRatio, double codeValueDensity) {
+    }
+
+    /**
+     * Правила для настроенных полей {@code secret0..secretN}: чётные маскируются
+     * целиком, нечётные — кроме первых двух символов
+     */
+    static MaskingProperties properties(Spec spec) {
+        MaskingProperties properties = new MaskingProperties();
+        for (int i = 0; i < spec.configuredFields(); i++) {
+            MaskingProperties.FieldMaskingConfig field = new MaskingProperties.FieldMaskingConfig();
+            field.setFieldName(CONFIGURED_PREFIX + i);
+            field.setMaskAll(i % 2 == 0);
+            if (i % 2 != 0) {
+                field.setMaskStartIndex(2);
+            }
+            properties.getFields().add(field);
+        }
+        return properties;
+    }
+
+    /**
+     * Документ в UTF-8
+     */
+    static byte[] json(Spec spec) {
+        long target = DataSize.parse(spec.size()).toBytes();
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder((int) Math.min(target + 1024, Integer.MAX_VALUE - 8));
+        json.append("{\"items\":[");
+        int item = 0;
+        do {
+            if (item > 0) {
+                json.append(',');
+            }
+            appendItem(json, spec, random, item++);
+        } while (json.length() < target);
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendItem(StringBuilder json, Spec spec, Random random, int item) {
+        json.append("{\"id\":").append(item);
+        for (int level = 1; level < spec.depth(); level++) {
+            json.append(",\"level").append(level).append("\":{\"id\":").append(level);
+        }
+
+        for (int i = 0; i < FIELDS_PER_ITEM; i++) {
+            boolean masked = spec.configuredFields() > 0 && random.nextDouble() < spec.maskedRatio();
+            String name = masked
+                    ? CONFIGURED_PREFIX + random.nextInt(spec.configuredFields())
+                    : "field" + i;
+            json.append(",\"").append(name).append("\":\"").append(value(random)).append('"');
+        }
+
+        if (spec.arrayLength() > 0) {
+            json.append(",\"tags\":[");
+            for (int i = 0; i < spec.arrayLength(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(value(random)).append('"');
+            }
+            json.append(']');
+        }
+
+        if (random.nextDouble() < spec.codeValueDensity()) {
+            // code ссылается на настроенное поле, если правила есть
+            String code = spec.configuredFields() > 0
+                    ? CONFIGURED_PREFIX + random.nextInt(spec.configuredFields())
+                    : "PHONE";
+            json.append(",\"code\":\"").append(code).append("\",\"codeValue\":\"").append(value(random)).append('"');
+        }
+
+        for (int level = 1; level < spec.depth(); level++) {
+            json.append('}');
+        }
+        json.append('}');
+    }
+
+    private static String value(Random random) {
+        return Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    }
+}
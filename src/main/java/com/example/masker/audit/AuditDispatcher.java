@@ -0,0 +1,176 @@
+package com.example.masker.audit;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.metrics.MaskingMetrics;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Асинхронная маскировка копий тел для аудита.
+ *
+ * Поток запроса только ставит задачу в ограниченную очередь; маскировка и доставка в
+ * {@link AuditSink} выполняются выделенными рабочими потоками. Если очередь заполнена,
+ * задача отбрасывается ({@link MaskingProperties.AuditOverflowPolicy#DROP}) или поток
+ * запроса ждёт места ({@link MaskingProperties.AuditOverflowPolicy#BLOCK}).
+ *
+ * Глубина очереди, отброшенные и неудавшиеся записи публикуются через
+ * {@link MaskingMetrics#bindAuditQueue}.
+ */
+public class AuditDispatcher {
+
+    private static final Log logger = LogFactory.getLog(AuditDispatcher.class);
+
+    /** Как часто ожидающие очереди потоки проверяют, не остановлен ли диспетчер */
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final AuditSink sink;
+    private final MaskingProperties.AuditOverflowPolicy overflowPolicy;
+    private final BlockingQueue<Task> queue;
+    private final List<Thread> workers;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public AuditDispatcher(MaskingProperties properties, AuditSink sink) {
+        this(properties, sink, MaskingMetrics.NOOP);
+    }
+
+    public AuditDispatcher(MaskingProperties properties, AuditSink sink, MaskingMetrics metrics) {
+        this.sink = sink;
+        this.overflowPolicy = properties.getAuditOverflowPolicy();
+        this.queue = new ArrayBlockingQueue<>(Math.max(properties.getAuditQueueCapacity(), 1));
+        int workerCount = Math.max(properties.getAuditWorkers(), 1);
+        this.workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "masking-audit-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        metrics.bindAuditQueue(queue, dropped, failures);
+    }
+
+    /**
+     * Ставит задачу в очередь
+     *
+     * @param record  готовит запись в рабочем потоке (там же маскируются тела); null — записи нет
+     * @param release освобождает захваченные тела; вызывается ровно один раз — после
+     *                выполнения задачи или сразу, если задача отброшена
+     * @return false — задача отброшена: очередь заполнена или диспетчер остановлен
+     */
+    public boolean submit(Callable<AuditRecord> record, Runnable release) {
+        Task task = new Task(record, release);
+        boolean queued = false;
+        if (overflowPolicy == MaskingProperties.AuditOverflowPolicy.BLOCK) {
+            try {
+                // Ожидание порциями, чтобы остановка диспетчера не оставила поток висеть в put()
+                while (running && !queued) {
+                    queued = queue.offer(task, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (running) {
+            queued = queue.offer(task);
+        }
+        if (!queued) {
+            dropped.increment();
+            release.run();
+            return false;
+        }
+        // Если shutdown() успел вычерпать очередь раньше, задачу больше никто не заберёт
+        if (!running && queue.remove(task)) {
+            run(task);
+        }
+        return true;
+    }
+
+    /**
+     * Текущая длина очереди
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Сколько записей отброшено из-за переполнения очереди
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Сколько записей не удалось замаскировать или доставить
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Останавливает рабочие потоки и дорабатывает оставшиеся в очереди задачи
+     * в вызывающем потоке. Новые задачи после этого отбрасываются
+     */
+    public void shutdown() {
+        // Без interrupt: запись, которую поток сейчас передаёт в sink, должна дойти
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        Task task;
+        while ((task = queue.poll()) != null) {
+            run(task);
+        }
+    }
+
+    private void work() {
+        try {
+            while (running) {
+                Task task = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    run(task);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Поток прерван извне, оставшиеся задачи дорабатывает shutdown()
+        }
+    }
+
+    private void run(Task task) {
+        try {
+            AuditRecord record = task.record.call();
+            if (record != null) {
+                sink.accept(record);
+            }
+        } catch (Exception e) {
+            failures.increment();
+            logger.debug("Failed to mask or deliver audit record", e);
+        } finally {
+            task.release.run();
+        }
+    }
+
+    private static final class Task {
+        final Callable<AuditRecord> record;
+        final Runnable release;
+
+        Task(Callable<AuditRecord> record, Runnable release) {
+            this.record = record;
+            this.release = release;
+        }
+    }
+}
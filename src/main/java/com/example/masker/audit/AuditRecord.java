@@ -0,0 +1,32 @@
+package com.example.masker.audit;
+
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Замаскированная копия обмена запрос — ответ для аудита
+ */
+@Getter
+public class AuditRecord {
+
+    private final String method;
+    private final String uri;
+    private final int status;
+    /** Замаскированное тело запроса; null — тела нет, оно не JSON или больше допустимого */
+    private final String requestBody;
+    /** Замаскированное тело ответа; null — тела нет, оно не JSON или больше допустимого */
+    private final String responseBody;
+    /** Время получения запроса */
+    private final Instant timestamp;
+
+    public AuditRecord(String method, String uri, int status, String requestBody, String responseBody,
+                       Instant timestamp) {
+        this.method = method;
+        this.uri = uri;
+        this.status = status;
+        this.requestBody = requestBody;
+        this.responseBody = responseBody;
+        this.timestamp = timestamp;
+    }
+}
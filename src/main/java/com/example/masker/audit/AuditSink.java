@@ -0,0 +1,14 @@
+package com.example.masker.audit;
+
+/**
+ * Получатель замаскированных копий запросов и ответов: журнал аудита, очередь сообщений и т.п.
+ *
+ * Вызывается из рабочих потоков {@link AuditDispatcher}, а не из потока запроса,
+ * поэтому может выполнять блокирующий ввод-вывод. Исключение учитывается в метрике
+ * ошибок аудита и на обработку запроса не влияет.
+ */
+@FunctionalInterface
+public interface AuditSink {
+
+    void accept(AuditRecord record) throws Exception;
+}
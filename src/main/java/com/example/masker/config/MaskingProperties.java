@@ -2,7 +2,9 @@ package com.example.masker.config;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,11 +30,276 @@ public class MaskingProperties {
      */
     private List<FieldMaskingConfig> fields = new ArrayList<>();
     
+    /**
+     * Профили маршрутов: для запросов, подходящих под маршрут, вместо fields
+     * действуют правила маршрута. Выбирается первый подходящий маршрут
+     */
+    private List<RouteConfig> routes = new ArrayList<>();
+    
     /**
      * Символ маскировки по умолчанию
      */
     private char defaultMaskChar = '*';
     
+    /**
+     * До какой глубины маскировать JSON, вложенный в строковые значения
+     * ({@code "data":"{\"password\":\"...\"}"}). 0 — вложенный JSON не разбирается
+     */
+    private int embeddedJsonMaxDepth = 2;
+    
+    /**
+     * Строка длиннее этого размера (в символах) не разбирается как вложенный JSON
+     */
+    private DataSize embeddedJsonMaxSize = DataSize.ofKilobytes(64);
+    
+    /**
+     * Content-Type тел, которые маскируются как JSON. Допускаются шаблоны подтипа
+     * и суффиксы: {@code application/*+json} покрывает application/problem+json
+     * и application/vnd.api+json. Регистр и параметры (charset) не учитываются
+     */
+    private List<String> jsonMediaTypes = new ArrayList<>(List.of("application/json", "application/*+json"));
+    
+    /**
+     * Content-Type тел, которые маскируются по записям как NDJSON (JSON по одной записи в строке)
+     */
+    private List<String> ndjsonMediaTypes = new ArrayList<>(List.of("application/x-ndjson", "application/jsonl"));
+    
+    /**
+     * Content-Type тел, которые маскируются как XML (StAX, без DOM): текст элементов
+     * и атрибуты с именами из fields. По умолчанию пусто — XML передаётся как есть;
+     * для SOAP обычно {@code application/xml, text/xml, application/*+xml}
+     */
+    private List<String> xmlMediaTypes = new ArrayList<>();
+    
+    /**
+     * Content-Type тел, которые маскируются как форма: значения параметров с именами из fields.
+     * По умолчанию пусто — формы передаются как есть; обычно {@code application/x-www-form-urlencoded}
+     */
+    private List<String> formMediaTypes = new ArrayList<>();
+    
+    /**
+     * Маскировать параметры строки запроса ({@code getQueryString}, {@code getParameter*}).
+     * Выключено по умолчанию: приложение и следующие фильтры увидят замаскированные значения
+     */
+    private boolean queryStringMasking = false;
+    
+    /**
+     * Маскировать заголовки запроса, имена которых (без учёта регистра) совпадают с fields,
+     * например {@code Authorization}. Выключено по умолчанию: приложение и следующие фильтры,
+     * в том числе аутентификация, увидят замаскированные значения
+     */
+    private boolean headerMasking = false;
+    
+    /**
+     * Режим обработки тела ответа
+     */
+    private ResponseMode responseMode = ResponseMode.BUFFERED;
+    
+    /**
+     * Сколько байт тела держать в памяти. Тело больше этого размера переносится
+     * во временный файл и маскируется через отображение файла в память
+     */
+    private DataSize maxInMemoryBodySize = DataSize.ofMegabytes(1);
+    
+    /**
+     * Максимальный размер тела, которое маскируется. Что делать с телом больше,
+     * определяет oversizePolicy
+     */
+    private DataSize maxBodySize = DataSize.ofMegabytes(100);
+    
+    /**
+     * Что делать с телом больше maxBodySize
+     */
+    private OversizePolicy oversizePolicy = OversizePolicy.PASS_THROUGH;
+    
+    /**
+     * Размер сегмента пула, из которых собираются буферы тел в памяти
+     */
+    private DataSize bufferSegmentSize = DataSize.ofKilobytes(8);
+    
+    /**
+     * Сколько памяти держать в пуле свободных сегментов между запросами.
+     * 0 — сегменты не переиспользуются
+     */
+    private DataSize bufferPoolMaxSize = DataSize.ofMegabytes(32);
+    
+    /**
+     * Маскировать большие JSON-массивы верхнего уровня параллельно.
+     * Действует для буферизованных тел (не для потокового режима)
+     */
+    private boolean parallelArrayMasking = false;
+    
+    /**
+     * Начиная с какого числа элементов массив верхнего уровня делится на части,
+     * которые маскируются параллельно
+     */
+    private int parallelArrayThreshold = 10_000;
+    
+    /**
+     * Число потоков выделенного ForkJoinPool для параллельной маскировки.
+     * Пул создаётся при первом использовании, изменение требует перезапуска
+     */
+    private int parallelPoolSize = Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * Кэшировать результат маскировки одинаковых тел (справочники, страницы каталога).
+     * Повторное тело с тем же содержимым возвращается из кэша без разбора
+     */
+    private boolean resultCacheEnabled = false;
+    
+    /**
+     * Суммарный размер кэша: исходные и замаскированные тела всех записей
+     */
+    private DataSize resultCacheMaxSize = DataSize.ofMegabytes(16);
+    
+    /**
+     * Тела больше этого размера не кэшируются
+     */
+    private DataSize resultCacheMaxEntrySize = DataSize.ofKilobytes(256);
+    
+    /**
+     * Время жизни записи кэша
+     */
+    private Duration resultCacheTtl = Duration.ofMinutes(5);
+    
+    /**
+     * Маскировать записи NDJSON, пришедшие одной порцией, параллельно в пуле
+     * {@link #parallelPoolSize} потоков. Записи выводятся в исходном порядке
+     */
+    private boolean ndjsonParallel = false;
+    
+    /**
+     * Уровень повторного сжатия тел с Content-Encoding gzip или deflate после маскировки:
+     * от 0 (без сжатия) и 1 (быстрее) до 9 (меньше)
+     */
+    private int compressionLevel = 6;
+    
+    /**
+     * Режим работы сервлетного фильтра: подменять тела или только отдавать
+     * замаскированную копию на аудит
+     */
+    private FilterMode filterMode = FilterMode.REWRITE;
+    
+    /**
+     * Ёмкость очереди тел, ожидающих маскировки для аудита
+     */
+    private int auditQueueCapacity = 1000;
+    
+    /**
+     * Число потоков, которые маскируют тела из очереди аудита
+     */
+    private int auditWorkers = 2;
+    
+    /**
+     * Что делать, если очередь аудита заполнена
+     */
+    private AuditOverflowPolicy auditOverflowPolicy = AuditOverflowPolicy.DROP;
+    
+    /**
+     * Режим обработки тела ответа
+     */
+    public enum ResponseMode {
+        /**
+         * Тело ответа целиком кэшируется и маскируется после выполнения цепочки фильтров
+         */
+        BUFFERED,
+        
+        /**
+         * Тело ответа маскируется по мере записи и сразу отправляется клиенту частями.
+         * Память не зависит от размера тела, Content-Length не выставляется
+         */
+        STREAMING
+    }
+    
+    /**
+     * Какие тела маскируются на маршруте
+     */
+    public enum MaskingDirection {
+        /** Только тела запросов */
+        REQUEST,
+        
+        /** Только тела ответов */
+        RESPONSE,
+        
+        /** Тела запросов и ответов */
+        BOTH
+    }
+    
+    /**
+     * Режим работы фильтра
+     */
+    public enum FilterMode {
+        /**
+         * Приложение читает замаскированный запрос, клиент получает замаскированный ответ
+         */
+        REWRITE,
+        
+        /**
+         * Тела проходят без изменений и задержек, их копия маскируется асинхронно
+         * и передаётся в AuditSink
+         */
+        AUDIT
+    }
+    
+    /**
+     * Политика переполнения очереди аудита
+     */
+    public enum AuditOverflowPolicy {
+        /**
+         * Запись аудита отбрасывается, запрос не ждёт
+         */
+        DROP,
+        
+        /**
+         * Поток запроса ждёт места в очереди
+         */
+        BLOCK
+    }
+    
+    /**
+     * Политика для тел больше maxBodySize
+     */
+    public enum OversizePolicy {
+        /**
+         * Тело передаётся без маскировки, в запрос выставляется атрибут
+         * MaskingFilter.REQUEST_NOT_MASKED_ATTRIBUTE или RESPONSE_NOT_MASKED_ATTRIBUTE
+         */
+        PASS_THROUGH,
+        
+        /**
+         * Запрос отклоняется с кодом 413, ответ заменяется ошибкой 500:
+         * незамаскированные данные дальше не уходят
+         */
+        REJECT
+    }
+    
+    /**
+     * Профиль маскировки для группы URL
+     */
+    @Data
+    public static class RouteConfig {
+        
+        /**
+         * Шаблон пути внутри приложения в синтаксисе Spring PathPattern: {@code /api/users/**}
+         */
+        private String pattern;
+        
+        /**
+         * HTTP-методы маршрута; пустой список — любой метод
+         */
+        private List<String> methods = new ArrayList<>();
+        
+        /**
+         * Какие тела маскируются; для другого направления маскировка на маршруте отключена
+         */
+        private MaskingDirection direction = MaskingDirection.BOTH;
+        
+        /**
+         * Правила маршрута. Пустой список — тела маршрута не оборачиваются и не маскируются
+         */
+        private List<FieldMaskingConfig> fields = new ArrayList<>();
+    }
+    
     /**
      * Конфигурация маскировки для конкретного поля
      */
@@ -44,6 +311,13 @@ public class MaskingProperties {
          */
         private String fieldName;
         
+        /**
+         * Путь к полю от корня документа вместо имени: {@code customer.card.number},
+         * {@code items[*].password}; {@code *} — любое поле, {@code [*]} — любой элемент массива.
+         * Правило по пути действует только в этом месте документа и важнее правила по имени
+         */
+        private String path;
+        
         /**
          * Символ маскировки (если не указан, используется defaultMaskChar)
          */
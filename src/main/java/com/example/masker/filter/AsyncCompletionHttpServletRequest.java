@@ -0,0 +1,133 @@
+package com.example.masker.filter;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.util.function.Consumer;
+
+/**
+ * Обертка запроса, которая перехватывает завершение асинхронной обработки.
+ *
+ * Сервлет, который пишет ответ асинхронно и сам вызывает AsyncContext.complete(),
+ * не проходит через фильтр второй раз. Чтобы замаскированное тело успело уйти клиенту,
+ * complete() сначала передаётся фильтру, а тот вызывает оригинальный complete(),
+ * когда ответ дописан.
+ */
+class AsyncCompletionHttpServletRequest extends HttpServletRequestWrapper {
+    
+    private final ServletResponse response;
+    private final Consumer<Runnable> beforeComplete;
+    private AsyncContext asyncContext;
+    
+    /**
+     * @param response обертка ответа, которую получит асинхронный обработчик
+     * @param beforeComplete получает оригинальный complete() и вызывает его, когда ответ готов
+     */
+    AsyncCompletionHttpServletRequest(HttpServletRequest request, ServletResponse response,
+                                      Consumer<Runnable> beforeComplete) {
+        super(request);
+        this.response = response;
+        this.beforeComplete = beforeComplete;
+    }
+    
+    @Override
+    public AsyncContext startAsync() throws IllegalStateException {
+        // Без аргументов контейнер отдал бы обработчику оригинальный ответ в обход маскировки
+        return startAsync(this, response);
+    }
+    
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse)
+            throws IllegalStateException {
+        asyncContext = new CompletingAsyncContext(super.startAsync(servletRequest, servletResponse));
+        return asyncContext;
+    }
+    
+    @Override
+    public AsyncContext getAsyncContext() {
+        return asyncContext != null ? asyncContext : super.getAsyncContext();
+    }
+    
+    /**
+     * AsyncContext, который передаёт complete() фильтру
+     */
+    private final class CompletingAsyncContext implements AsyncContext {
+        private final AsyncContext delegate;
+        
+        CompletingAsyncContext(AsyncContext delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void complete() {
+            beforeComplete.accept(delegate::complete);
+        }
+        
+        @Override
+        public ServletRequest getRequest() {
+            return delegate.getRequest();
+        }
+        
+        @Override
+        public ServletResponse getResponse() {
+            return delegate.getResponse();
+        }
+        
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return delegate.hasOriginalRequestAndResponse();
+        }
+        
+        @Override
+        public void dispatch() {
+            delegate.dispatch();
+        }
+        
+        @Override
+        public void dispatch(String path) {
+            delegate.dispatch(path);
+        }
+        
+        @Override
+        public void dispatch(ServletContext context, String path) {
+            delegate.dispatch(context, path);
+        }
+        
+        @Override
+        public void start(Runnable run) {
+            delegate.start(run);
+        }
+        
+        @Override
+        public void addListener(AsyncListener listener) {
+            delegate.addListener(listener);
+        }
+        
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest servletRequest,
+                                ServletResponse servletResponse) {
+            delegate.addListener(listener, servletRequest, servletResponse);
+        }
+        
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+            return delegate.createListener(clazz);
+        }
+        
+        @Override
+        public void setTimeout(long timeout) {
+            delegate.setTimeout(timeout);
+        }
+        
+        @Override
+        public long getTimeout() {
+            return delegate.getTimeout();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.masker.filter;
+
+import java.io.IOException;
+
+/**
+ * Копия тела для аудита, которая пишется параллельно с настоящим телом.
+ *
+ * Ошибки копии не должны влиять на обмен с клиентом, поэтому запись в неё не бросает
+ * исключений: тело больше допустимого или ошибка временного файла делают копию
+ * неполной, и в аудит она не попадает.
+ */
+final class AuditBodyCopy {
+    
+    private final BodyBuffer buffer;
+    private final BodyLimits limits;
+    private boolean complete = true;
+    
+    AuditBodyCopy(BodyLimits limits) {
+        this.buffer = limits.newBuffer();
+        this.limits = limits;
+    }
+    
+    void write(int b) {
+        if (!complete) {
+            return;
+        }
+        if (limits.isOversized(buffer.size() + 1)) {
+            discard();
+            return;
+        }
+        try {
+            buffer.write(b);
+        } catch (IOException e) {
+            discard();
+        }
+    }
+    
+    void write(byte[] b, int off, int len) {
+        if (!complete || len <= 0) {
+            return;
+        }
+        if (limits.isOversized(buffer.size() + len)) {
+            discard();
+            return;
+        }
+        try {
+            buffer.write(b, off, len);
+        } catch (IOException e) {
+            discard();
+        }
+    }
+    
+    /**
+     * Копия не нужна (например, ответ не JSON): дальнейшие записи игнорируются
+     */
+    void discard() {
+        if (complete) {
+            complete = false;
+            release();
+        }
+    }
+    
+    /**
+     * Тело скопировано целиком и его можно маскировать
+     */
+    boolean isComplete() {
+        return complete;
+    }
+    
+    BodyBuffer getBuffer() {
+        return buffer;
+    }
+    
+    /**
+     * Возвращает сегменты в пул и удаляет временный файл
+     */
+    void release() {
+        try {
+            buffer.close();
+        } catch (IOException e) {
+            // Временный файл будет удалён при завершении JVM
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.masker.filter;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Обертка запроса для режима аудита: приложение читает исходное тело, а прочитанные
+ * байты попутно копируются для аудита. Блокирующее и неблокирующее чтение
+ * (ReadListener) работают как без обертки
+ */
+class AuditCopyHttpServletRequest extends HttpServletRequestWrapper {
+    
+    /** null — тело запроса не копируется */
+    private final AuditBodyCopy copy;
+    private final ServletResponse response;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+    
+    /**
+     * @param response обертка ответа, которую получит асинхронный обработчик
+     */
+    AuditCopyHttpServletRequest(HttpServletRequest request, AuditBodyCopy copy, ServletResponse response) {
+        super(request);
+        this.copy = copy;
+        this.response = response;
+    }
+    
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (copy == null) {
+            return super.getInputStream();
+        }
+        if (reader != null) {
+            throw new IllegalStateException("getReader() has already been called for this request");
+        }
+        if (inputStream == null) {
+            inputStream = new CopyingServletInputStream(super.getInputStream(), copy);
+        }
+        return inputStream;
+    }
+    
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (copy == null) {
+            return super.getReader();
+        }
+        if (reader == null) {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+        return reader;
+    }
+    
+    @Override
+    public AsyncContext startAsync() throws IllegalStateException {
+        // Без аргументов асинхронный обработчик получил бы ответ без копирования
+        return startAsync(this, response);
+    }
+    
+    private static final class CopyingServletInputStream extends ServletInputStream {
+        
+        private final ServletInputStream source;
+        private final AuditBodyCopy copy;
+        
+        CopyingServletInputStream(ServletInputStream source, AuditBodyCopy copy) {
+            this.source = source;
+            this.copy = copy;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = source.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = source.read(b, off, len);
+            if (read > 0) {
+                copy.write(b, off, read);
+            }
+            return read;
+        }
+        
+        @Override
+        public boolean isFinished() {
+            return source.isFinished();
+        }
+        
+        @Override
+        public boolean isReady() {
+            return source.isReady();
+        }
+        
+        @Override
+        public void setReadListener(ReadListener listener) {
+            source.setReadListener(listener);
+        }
+        
+        @Override
+        public int available() throws IOException {
+            return source.available();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.masker.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.function.Predicate;
+
+/**
+ * Обертка ответа для режима аудита: тело сразу уходит клиенту, а его копия
+ * сохраняется для аудита. Копируются только JSON-ответы: тип содержимого
+ * проверяется при первой записи
+ */
+class AuditCopyHttpServletResponse extends HttpServletResponseWrapper {
+    
+    private final AuditBodyCopy copy;
+    private final Predicate<String> maskedContentType;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private boolean contentTypeChecked;
+    
+    AuditCopyHttpServletResponse(HttpServletResponse response, AuditBodyCopy copy,
+                                 Predicate<String> maskedContentType) {
+        super(response);
+        this.copy = copy;
+        this.maskedContentType = maskedContentType;
+    }
+    
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called on this response.");
+        }
+        if (outputStream == null) {
+            outputStream = new CopyingServletOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+    
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called on this response.");
+            }
+            Charset charset = Charset.forName(getCharacterEncoding());
+            outputStream = new CopyingServletOutputStream(super.getOutputStream());
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, charset));
+        }
+        return writer;
+    }
+    
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        super.flushBuffer();
+    }
+    
+    /**
+     * Дописывает в поток то, что осталось в буфере writer
+     */
+    void flushWriter() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+    
+    private void checkContentType() {
+        if (!contentTypeChecked) {
+            contentTypeChecked = true;
+            if (!maskedContentType.test(getContentType())) {
+                copy.discard();
+            }
+        }
+    }
+    
+    private final class CopyingServletOutputStream extends ServletOutputStream {
+        
+        private final ServletOutputStream target;
+        
+        CopyingServletOutputStream(ServletOutputStream target) {
+            this.target = target;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            checkContentType();
+            copy.write(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            checkContentType();
+            copy.write(b, off, len);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+        
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            target.setWriteListener(listener);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.masker.filter;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Буфер тела запроса или ответа, который держит данные в памяти до порога,
+ * а дальше переносит их во временный файл.
+ *
+ * В памяти тело хранится цепочкой сегментов из {@link SegmentPool}: буфер растёт
+ * без копирования уже записанного, а после закрытия сегменты возвращаются в пул.
+ *
+ * Содержимое файла читается через отображение в память (memory-mapped): страницы
+ * подгружает ОС, а куча JVM не растёт вместе с размером тела.
+ *
+ * Экземпляр не потокобезопасен. После использования его нужно закрыть,
+ * чтобы вернуть сегменты в пул и удалить временный файл.
+ */
+final class BodyBuffer extends OutputStream {
+    
+    private static final String TEMP_FILE_PREFIX = "masking-body-";
+    
+    private final int memoryThreshold;
+    private final SegmentPool pool;
+    
+    private final List<byte[]> segments = new ArrayList<>();
+    /** Сколько байт занято в последнем сегменте */
+    private int tailCount;
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+    
+    BodyBuffer(int memoryThreshold, SegmentPool pool) {
+        this.memoryThreshold = memoryThreshold;
+        this.pool = pool;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        if (file == null && size + 1 > memoryThreshold) {
+            spill();
+        }
+        if (file != null) {
+            fileOut.write(b);
+        } else {
+            writableSegment()[tailCount++] = (byte) b;
+        }
+        size++;
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (file == null && size + len > memoryThreshold) {
+            spill();
+        }
+        if (file != null) {
+            fileOut.write(b, off, len);
+        } else {
+            int remaining = len;
+            while (remaining > 0) {
+                byte[] segment = writableSegment();
+                int count = Math.min(remaining, segment.length - tailCount);
+                System.arraycopy(b, off, segment, tailCount, count);
+                tailCount += count;
+                off += count;
+                remaining -= count;
+            }
+        }
+        size += len;
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+    
+    /**
+     * Размер тела в байтах
+     */
+    long size() {
+        return size;
+    }
+    
+    /**
+     * Находится ли тело целиком в памяти
+     */
+    boolean isInMemory() {
+        return file == null;
+    }
+    
+    /**
+     * Сегменты тела в памяти без копирования. Только для тела в памяти
+     */
+    List<ByteBuffer> chunks() {
+        List<ByteBuffer> chunks = new ArrayList<>(segments.size());
+        int last = segments.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            byte[] segment = segments.get(i);
+            chunks.add(ByteBuffer.wrap(segment, 0, i == last ? tailCount : segment.length));
+        }
+        return chunks;
+    }
+    
+    /**
+     * Копия тела в массиве. Для тела на диске читает файл целиком — только для небольших тел
+     */
+    byte[] toByteArray() throws IOException {
+        if (file == null) {
+            byte[] bytes = new byte[(int) size];
+            int position = 0;
+            for (ByteBuffer chunk : chunks()) {
+                int length = chunk.remaining();
+                chunk.get(bytes, position, length);
+                position += length;
+            }
+            return bytes;
+        }
+        flush();
+        return Files.readAllBytes(file);
+    }
+    
+    /**
+     * Открывает поток для чтения тела без копирования: сегменты в памяти
+     * или отображённый в память временный файл
+     */
+    InputStream openInputStream() throws IOException {
+        if (file == null) {
+            return new SegmentsInputStream(chunks());
+        }
+        flush();
+        if (size > Integer.MAX_VALUE) {
+            // Один MappedByteBuffer ограничен 2 ГБ
+            return new BufferedInputStream(Files.newInputStream(file));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Отображение остаётся действительным и после закрытия канала
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new ByteBufferBackedInputStream(mapped);
+        }
+    }
+    
+    /**
+     * Тело одним буфером для произвольного доступа: единственный сегмент или
+     * отображённый в память файл — без копирования, несколько сегментов — копией.
+     * Только для тел до 2 ГБ
+     */
+    ByteBuffer toByteBuffer() throws IOException {
+        if (file == null) {
+            return segments.size() == 1
+                    ? ByteBuffer.wrap(segments.get(0), 0, tailCount)
+                    : ByteBuffer.wrap(toByteArray());
+        }
+        flush();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+    
+    /**
+     * Записывает тело в поток
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (file == null) {
+            writeSegmentsTo(out);
+            return;
+        }
+        flush();
+        Files.copy(file, out);
+    }
+    
+    /**
+     * Отбрасывает накопленное тело, возвращает сегменты в пул и удаляет временный файл
+     */
+    void reset() throws IOException {
+        close();
+        size = 0;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        releaseSegments();
+        deleteFile();
+    }
+    
+    /**
+     * Сегмент, в котором есть место для записи: последний или новый из пула
+     */
+    private byte[] writableSegment() {
+        if (segments.isEmpty() || tailCount == segments.get(segments.size() - 1).length) {
+            segments.add(pool.acquire());
+            tailCount = 0;
+        }
+        return segments.get(segments.size() - 1);
+    }
+    
+    private void writeSegmentsTo(OutputStream out) throws IOException {
+        int last = segments.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            byte[] segment = segments.get(i);
+            out.write(segment, 0, i == last ? tailCount : segment.length);
+        }
+    }
+    
+    /**
+     * Переносит накопленные байты во временный файл; дальнейшая запись идёт туда
+     */
+    private void spill() throws IOException {
+        file = Files.createTempFile(TEMP_FILE_PREFIX, ".tmp");
+        fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+        writeSegmentsTo(fileOut);
+        releaseSegments();
+    }
+    
+    private void releaseSegments() {
+        for (byte[] segment : segments) {
+            pool.release(segment);
+        }
+        segments.clear();
+        tailCount = 0;
+    }
+    
+    private void deleteFile() throws IOException {
+        if (file == null) {
+            return;
+        }
+        try {
+            fileOut.close();
+        } finally {
+            Files.deleteIfExists(file);
+            file = null;
+            fileOut = null;
+        }
+    }
+    
+    /**
+     * Последовательное чтение цепочки сегментов
+     */
+    private static final class SegmentsInputStream extends InputStream {
+        private final List<ByteBuffer> chunks;
+        private int index;
+        
+        SegmentsInputStream(List<ByteBuffer> chunks) {
+            this.chunks = chunks;
+        }
+        
+        @Override
+        public int read() {
+            ByteBuffer chunk = current();
+            return chunk != null ? chunk.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer chunk = current();
+            if (chunk == null) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.remaining());
+            chunk.get(b, off, count);
+            return count;
+        }
+        
+        @Override
+        public int available() {
+            ByteBuffer chunk = current();
+            return chunk != null ? chunk.remaining() : 0;
+        }
+        
+        private ByteBuffer current() {
+            while (index < chunks.size()) {
+                ByteBuffer chunk = chunks.get(index);
+                if (chunk.hasRemaining()) {
+                    return chunk;
+                }
+                index++;
+            }
+            return null;
+        }
+    }
+}
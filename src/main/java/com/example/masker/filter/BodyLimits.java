@@ -0,0 +1,65 @@
+package com.example.masker.filter;
+
+import com.example.masker.config.MaskingProperties;
+import lombok.Getter;
+
+import java.util.zip.Deflater;
+
+/**
+ * Ограничения размера тела и параметры его обработки, с которыми работают обертки запроса и ответа
+ */
+@Getter
+final class BodyLimits {
+    
+    /**
+     * Без ограничений: всё тело держится в памяти, сегменты не переиспользуются
+     */
+    static final BodyLimits UNLIMITED = new BodyLimits(Integer.MAX_VALUE, Long.MAX_VALUE,
+            MaskingProperties.OversizePolicy.PASS_THROUGH, new SegmentPool(SegmentPool.DEFAULT_SEGMENT_SIZE, 0),
+            Deflater.DEFAULT_COMPRESSION);
+    
+    /** Сколько байт тела держать в памяти, прежде чем перенести его во временный файл */
+    private final int maxInMemorySize;
+    /** Максимальный размер тела, которое маскируется */
+    private final long maxBodySize;
+    /** Что делать с телом больше maxBodySize */
+    private final MaskingProperties.OversizePolicy oversizePolicy;
+    /** Пул сегментов для буферов в памяти */
+    private final SegmentPool pool;
+    /** Уровень повторного сжатия тел с Content-Encoding */
+    private final int compressionLevel;
+    
+    BodyLimits(int maxInMemorySize, long maxBodySize, MaskingProperties.OversizePolicy oversizePolicy,
+               SegmentPool pool, int compressionLevel) {
+        this.maxInMemorySize = maxInMemorySize;
+        this.maxBodySize = maxBodySize;
+        this.oversizePolicy = oversizePolicy;
+        this.pool = pool;
+        this.compressionLevel = compressionLevel;
+    }
+    
+    static BodyLimits from(MaskingProperties properties, SegmentPool pool) {
+        long maxInMemory = properties.getMaxInMemoryBodySize().toBytes();
+        return new BodyLimits(
+                (int) Math.min(maxInMemory, Integer.MAX_VALUE - 8),
+                properties.getMaxBodySize().toBytes(),
+                properties.getOversizePolicy(),
+                pool,
+                properties.getCompressionLevel());
+    }
+    
+    /**
+     * Превышает ли тело такого размера допустимый
+     */
+    boolean isOversized(long size) {
+        return size > maxBodySize;
+    }
+    
+    boolean isReject() {
+        return oversizePolicy == MaskingProperties.OversizePolicy.REJECT;
+    }
+    
+    BodyBuffer newBuffer() {
+        return new BodyBuffer(maxInMemorySize, pool);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.masker.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Кодировка тела из заголовка Content-Encoding.
+ *
+ * Сжатое тело маскируется потоково: распаковка, маскировка и повторное сжатие идут
+ * за один проход, распакованное тело целиком нигде не хранится. Кодировки, которые
+ * JDK распаковать не умеет (br, цепочки из нескольких кодировок), маскировать
+ * нельзя — такое тело обрабатывается по политике oversize-policy. Используется и
+ * сервлетным фильтром, и реактивным.
+ */
+public enum ContentCoding {
+    
+    IDENTITY,
+    GZIP,
+    DEFLATE,
+    UNSUPPORTED;
+    
+    public static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    public static ContentCoding of(String contentEncoding) {
+        if (contentEncoding == null) {
+            return IDENTITY;
+        }
+        String coding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if (coding.isEmpty() || coding.equals("identity")) {
+            return IDENTITY;
+        }
+        if (coding.equals("gzip") || coding.equals("x-gzip")) {
+            return GZIP;
+        }
+        if (coding.equals("deflate")) {
+            return DEFLATE;
+        }
+        return UNSUPPORTED;
+    }
+    
+    /**
+     * Распаковывающий поток поверх сжатого тела. Закрывает исходный поток при закрытии
+     */
+    InputStream decode(InputStream body) throws IOException {
+        switch (this) {
+            case IDENTITY:
+                return body;
+            case GZIP:
+                return new GZIPInputStream(body, BUFFER_SIZE);
+            case DEFLATE:
+                return new InflaterInputStream(body);
+            default:
+                throw new IOException("Unsupported Content-Encoding");
+        }
+    }
+    
+    /**
+     * Сжимающий поток поверх target. close() дописывает хвост сжатого потока
+     * и закрывает target; чтобы target остался открытым, его нужно обернуть.
+     * flush() сбрасывает уже сжатые данные (SYNC_FLUSH), чтобы потоковый ответ
+     * уходил клиенту по мере записи
+     *
+     * @param level уровень сжатия 0–9
+     */
+    OutputStream encode(OutputStream target, int level) throws IOException {
+        switch (this) {
+            case IDENTITY:
+                return target;
+            case GZIP:
+                return new GZIPOutputStream(target, BUFFER_SIZE, true) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            case DEFLATE:
+                Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(target, deflater, BUFFER_SIZE, true) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            default:
+                throw new IOException("Unsupported Content-Encoding");
+        }
+    }
+}
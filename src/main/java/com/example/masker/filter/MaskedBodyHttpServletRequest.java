@@ -1,34 +1,80 @@
 package com.example.masker.filter;
 
+import com.example.masker.service.BodyFormat;
+import com.example.masker.service.JsonMaskingService;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
-import org.springframework.util.StreamUtils;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Обертка для HttpServletRequest, которая возвращает замаскированное тело запроса
+ *
+ * Тело хранится в {@link BodyBuffer}: в сегментах общего пула, а большое — во временном
+ * файле, читаемом через отображение в память.
+ *
+ * Обертка, созданная фильтром, маскирует тело лениво. При обычном (блокирующем) чтении
+ * тело читается и маскируется целиком при первом обращении. Если приложение установило
+ * ReadListener, тело маскируется по мере поступления данных: слушатель регистрируется
+ * на оригинальном потоке, и поток контейнера не ждёт медленного клиента.
  */
 public class MaskedBodyHttpServletRequest extends HttpServletRequestWrapper {
     
-    private final byte[] maskedBody;
+    private static final int READ_CHUNK_SIZE = 8192;
+    
+    private final JsonMaskingService maskingService;
+    private final BodyLimits limits;
+    /** Формат тела по Content-Type; null — тело уже замаскировано */
+    private final BodyFormat format;
+    
+    private byte[] maskedBody;
+    private BodyBuffer bufferedBody;
+    private InputStream remainingBody;
+    
+    private boolean materialized;
+    private boolean nonBlocking;
+    private boolean rejected;
+    
+    public MaskedBodyHttpServletRequest(HttpServletRequest request, byte[] maskedBody) {
+        super(request);
+        this.maskingService = null;
+        this.limits = BodyLimits.UNLIMITED;
+        this.format = null;
+        this.maskedBody = maskedBody != null ? maskedBody : new byte[0];
+        this.materialized = true;
+    }
     
     public MaskedBodyHttpServletRequest(HttpServletRequest request, String maskedBody) {
+        this(request, maskedBody != null ? maskedBody.getBytes(StandardCharsets.UTF_8) : null);
+    }
+    
+    /**
+     * Обертка, которая маскирует тело при первом чтении
+     */
+    MaskedBodyHttpServletRequest(HttpServletRequest request, JsonMaskingService maskingService, BodyLimits limits,
+                                 BodyFormat format) {
         super(request);
-        this.maskedBody = maskedBody != null 
-                ? maskedBody.getBytes(StandardCharsets.UTF_8) 
-                : new byte[0];
+        this.maskingService = maskingService;
+        this.limits = limits;
+        this.format = format;
     }
     
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        return new CachedBodyServletInputStream(maskedBody);
+        if (nonBlocking) {
+            throw new IllegalStateException("Request body is being read with a ReadListener");
+        }
+        return new MaskedBodyServletInputStream();
     }
     
     @Override
@@ -36,35 +82,332 @@ public class MaskedBodyHttpServletRequest extends HttpServletRequestWrapper {
         return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
     }
     
+    @Override
+    public int getContentLength() {
+        long length = getContentLengthLong();
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
+    }
+    
+    @Override
+    public long getContentLengthLong() {
+        // Замаскированное тело может отличаться по длине от исходного, поэтому длина
+        // клиента не отдаётся: пока тело не замаскировано, она неизвестна
+        if (maskedBody != null) {
+            return maskedBody.length;
+        }
+        if (bufferedBody != null && remainingBody == null) {
+            return bufferedBody.size();
+        }
+        return -1;
+    }
+    
+    /**
+     * Было ли тело отклонено из-за размера (политика REJECT)
+     */
+    boolean isRejected() {
+        return rejected;
+    }
+    
+    /**
+     * Освобождает буфер тела (удаляет временный файл). Вызывается фильтром после выполнения цепочки
+     */
+    void release() throws IOException {
+        if (bufferedBody != null) {
+            bufferedBody.close();
+        }
+    }
+    
     /**
-     * Внутренний класс для чтения замаскированного тела
+     * Читает и маскирует тело целиком: в память, а сверх порога — во временный файл
      */
-    private static class CachedBodyServletInputStream extends ServletInputStream {
-        private final ByteArrayInputStream buffer;
+    private void materialize() throws IOException {
+        if (materialized) {
+            return;
+        }
+        materialized = true;
+        
+        BodyBuffer originalBody = limits.newBuffer();
+        InputStream input = getRequest().getInputStream();
+        // Буфер чтения тоже берётся из пула
+        byte[] chunk = limits.getPool().acquire();
+        try {
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                originalBody.write(chunk, 0, read);
+                if (limits.isOversized(originalBody.size())) {
+                    // Размер не был заявлен (chunked) и превысил допустимый
+                    if (limits.isReject()) {
+                        originalBody.close();
+                        rejected = true;
+                        return;
+                    }
+                    setAttribute(MaskingFilter.REQUEST_NOT_MASKED_ATTRIBUTE, Boolean.TRUE);
+                    bufferedBody = originalBody;
+                    remainingBody = input;
+                    return;
+                }
+            }
+        } finally {
+            limits.getPool().release(chunk);
+        }
         
-        public CachedBodyServletInputStream(byte[] contents) {
-            this.buffer = new ByteArrayInputStream(contents);
+        // Маскируем байты UTF-8 из сегментов или временного файла, без копирования в массив
+        bufferedBody = MaskingFilter.maskBuffered(maskingService, originalBody, limits, coding(), format);
+    }
+    
+    /**
+     * Кодировка тела: сжатое тело после маскировки сжимается снова, заголовок не меняется
+     */
+    private ContentCoding coding() {
+        return ContentCoding.of(getHeader(ContentCoding.CONTENT_ENCODING_HEADER));
+    }
+    
+    private InputStream openBody() throws IOException {
+        materialize();
+        if (rejected) {
+            throw new IOException("Request body exceeds the configured max-body-size");
+        }
+        if (maskedBody != null) {
+            return new ByteArrayInputStream(maskedBody);
+        }
+        InputStream body = bufferedBody.openInputStream();
+        if (remainingBody != null) {
+            body = new SequenceInputStream(body, remainingBody);
         }
+        return body;
+    }
+    
+    /**
+     * Поток замаскированного тела: блокирующее чтение или неблокирующее через ReadListener
+     */
+    private final class MaskedBodyServletInputStream extends ServletInputStream {
+        private InputStream body;
+        private NonBlockingBody nonBlockingBody;
+        /** Блокирующее чтение вернуло -1 */
+        private boolean eof;
         
         @Override
         public int read() throws IOException {
-            return buffer.read();
+            if (nonBlockingBody != null) {
+                return nonBlockingBody.read();
+            }
+            return track(body().read());
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (nonBlockingBody != null) {
+                return nonBlockingBody.read(b, off, len);
+            }
+            return track(body().read(b, off, len));
         }
         
         @Override
         public boolean isFinished() {
-            return buffer.available() == 0;
+            if (nonBlockingBody != null) {
+                return nonBlockingBody.isFinished();
+            }
+            if (eof) {
+                return true;
+            }
+            if (!materialized || remainingBody != null) {
+                // За буфером идёт непрочитанный остаток оригинального потока: available()
+                // у SequenceInputStream и сетевого потока может вернуть 0 до конца тела
+                return false;
+            }
+            try {
+                // Тело целиком в буфере: available() равен 0 только в конце
+                return body().available() == 0;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+        
+        private int track(int read) {
+            if (read == -1) {
+                eof = true;
+            }
+            return read;
         }
         
         @Override
         public boolean isReady() {
-            return true;
+            return nonBlockingBody == null || nonBlockingBody.isReady();
         }
         
         @Override
         public void setReadListener(ReadListener listener) {
-            throw new UnsupportedOperationException();
+            if (listener == null) {
+                throw new NullPointerException("ReadListener must not be null");
+            }
+            if (nonBlockingBody != null || body != null) {
+                throw new IllegalStateException("Request body is already being read");
+            }
+            try {
+                if (materialized) {
+                    // Тело уже замаскировано целиком: все данные доступны сразу
+                    body = body();
+                    notifyListener(listener);
+                    return;
+                }
+                nonBlocking = true;
+                materialized = true;
+                nonBlockingBody = new NonBlockingBody(listener, getRequest().getInputStream());
+            } catch (IOException e) {
+                listener.onError(e);
+            }
+        }
+        
+        private InputStream body() throws IOException {
+            if (body == null) {
+                body = openBody();
+            }
+            return body;
+        }
+        
+        private void notifyListener(ReadListener listener) {
+            try {
+                listener.onDataAvailable();
+                listener.onAllDataRead();
+            } catch (Throwable t) {
+                listener.onError(t);
+            }
+        }
+    }
+    
+    /**
+     * Неблокирующее чтение: данные оригинального потока по мере поступления проходят
+     * через маскирующий поток в очередь, из которой читает приложение
+     */
+    private final class NonBlockingBody implements ReadListener {
+        private final ReadListener listener;
+        private final ServletInputStream source;
+        private final ByteQueue masked = new ByteQueue();
+        private final MaskingBodyOutputStream masker;
+        private final byte[] chunk = new byte[READ_CHUNK_SIZE];
+        private long received;
+        private boolean allRead;
+        
+        NonBlockingBody(ReadListener listener, ServletInputStream source) throws IOException {
+            this.listener = listener;
+            this.source = source;
+            this.masker = new MaskingBodyOutputStream(maskingService, coding(), masked, limits.getCompressionLevel(),
+                    format);
+            source.setReadListener(this);
+        }
+        
+        @Override
+        public void onDataAvailable() throws IOException {
+            int read;
+            // Читаем, пока есть данные; isReady() == false взводит следующий вызов onDataAvailable
+            while (source.isReady() && (read = source.read(chunk)) != -1) {
+                received += read;
+                if (limits.isReject() && limits.isOversized(received)) {
+                    rejected = true;
+                    masker.discard();
+                    throw new IOException("Request body exceeds the configured max-body-size");
+                }
+                masker.write(chunk, 0, read);
+            }
+            if (masked.available() > 0) {
+                listener.onDataAvailable();
+            }
+        }
+        
+        @Override
+        public void onAllDataRead() throws IOException {
+            masker.close();
+            allRead = true;
+            if (masked.available() > 0) {
+                listener.onDataAvailable();
+            }
+            listener.onAllDataRead();
+        }
+        
+        @Override
+        public void onError(Throwable t) {
+            try {
+                masker.discard();
+            } catch (IOException e) {
+                t.addSuppressed(e);
+            }
+            listener.onError(t);
+        }
+        
+        int read() {
+            checkReadable();
+            return masked.available() == 0 ? -1 : masked.read();
+        }
+        
+        int read(byte[] b, int off, int len) {
+            checkReadable();
+            return masked.available() == 0 ? -1 : masked.read(b, off, len);
+        }
+        
+        boolean isReady() {
+            return masked.available() > 0 || allRead;
+        }
+        
+        boolean isFinished() {
+            return allRead && masked.available() == 0;
+        }
+        
+        private void checkReadable() {
+            if (!isReady()) {
+                throw new IllegalStateException("isReady() returned false, read is not allowed");
+            }
+        }
+    }
+    
+    /**
+     * Очередь байтов: маскирующий поток пишет в конец, приложение читает с начала
+     */
+    private static final class ByteQueue extends OutputStream {
+        private byte[] buffer = new byte[1024];
+        private int head;
+        private int tail;
+        
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer[tail++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, tail, len);
+            tail += len;
+        }
+        
+        int available() {
+            return tail - head;
+        }
+        
+        int read() {
+            return buffer[head++] & 0xFF;
+        }
+        
+        int read(byte[] b, int off, int len) {
+            int count = Math.min(len, available());
+            System.arraycopy(buffer, head, b, off, count);
+            head += count;
+            return count;
+        }
+        
+        private void ensureCapacity(int extra) {
+            if (tail + extra <= buffer.length) {
+                return;
+            }
+            int size = available();
+            if (size + extra <= buffer.length) {
+                // Места хватает после сдвига непрочитанного хвоста в начало
+                System.arraycopy(buffer, head, buffer, 0, size);
+            } else {
+                buffer = Arrays.copyOfRange(buffer, head, head + Math.max(size + extra, buffer.length * 2));
+            }
+            head = 0;
+            tail = size;
         }
     }
 }
-
@@ -1,26 +1,150 @@
 package com.example.masker.filter;
 
+import com.example.masker.service.BodyFormat;
+import com.example.masker.service.JsonMaskingService;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpServletResponseWrapper;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Обертка для HttpServletResponse, которая кэширует тело ответа для маскировки
+ *
+ * Куда писать тело, решается лениво — при первой записи (или flushBuffer), когда
+ * Content-Type уже выставлен. Тела, которые маскировать не нужно, сразу уходят
+ * в оригинальный ответ без кэширования. Маскируемые тела кэшируются
+ * (буферизованный режим) или маскируются на лету (потоковый режим).
+ *
+ * Кэш больше maxInMemorySize переносится во временный файл. Если тело превысило
+ * maxBodySize, оно по политике либо передаётся дальше без маскировки, либо отбрасывается.
+ *
+ * Тело с Content-Encoding gzip или deflate распаковывается, маскируется и снова
+ * сжимается; тело в неподдерживаемой кодировке обрабатывается как слишком большое.
+ *
+ * Неблокирующий вывод (WriteListener) поддерживается: слушатель регистрируется
+ * на оригинальном потоке, а всё, что уходит клиенту, проходит через очередь,
+ * которая дописывается в оригинальный поток, только когда тот готов. Замаскированное
+ * тело в очередь не копируется и уходит из буфера по сегменту за раз.
  */
 public class MaskedBodyHttpServletResponse extends HttpServletResponseWrapper {
     
-    private final ByteArrayOutputStream cachedBody = new ByteArrayOutputStream();
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    
+    private BodyBuffer cachedBody;
+    private final BodyLimits limits;
     private ServletOutputStream outputStream;
     private PrintWriter writer;
     
+    /** Формат тела по Content-Type; null — тело не маскируется */
+    private final Function<String, BodyFormat> bodyFormat;
+    /** Сервис маскировки тела; null — обертка только кэширует */
+    private final JsonMaskingService maskingService;
+    private final boolean streaming;
+    
+    private Target target = Target.UNDECIDED;
+    private OutputStream passThroughStream;
+    private MaskingBodyOutputStream maskingStream;
+    private NonBlockingOutput nonBlockingOutput;
+    private Runnable afterDrained;
+    private boolean completed;
+    private Long pendingContentLength;
+    private Long declaredContentLength;
+    private boolean oversized;
+    private boolean unsupportedEncoding;
+    
+    /**
+     * Куда пишется тело ответа
+     */
+    private enum Target {
+        /** Тело ещё не писалось */
+        UNDECIDED,
+        /** Тело кэшируется и маскируется фильтром после выполнения цепочки */
+        CACHE,
+        /** Тело маскируется на лету */
+        MASKING_STREAM,
+        /** Тело передаётся в оригинальный ответ без изменений */
+        PASS_THROUGH,
+        /** Тело превысило допустимый размер и отбрасывается */
+        DISCARD
+    }
+    
+    /**
+     * Обертка, которая кэширует любое тело ответа
+     */
     public MaskedBodyHttpServletResponse(HttpServletResponse response) {
+        this(response, contentType -> true);
+    }
+    
+    /**
+     * Буферизованный режим: кэшируются только тела с подходящим Content-Type,
+     * остальные пишутся в оригинальный ответ напрямую
+     *
+     * @param maskedContentType проверка, что тело с таким Content-Type нужно маскировать
+     */
+    public MaskedBodyHttpServletResponse(HttpServletResponse response, Predicate<String> maskedContentType) {
+        this(response, asJson(maskedContentType), BodyLimits.UNLIMITED, null);
+    }
+    
+    /**
+     * Буферизованный режим с ограничением размера кэшируемого тела
+     *
+     * @param maskingService сервис, которым фильтр замаскирует кэш (с правилами маршрута)
+     */
+    MaskedBodyHttpServletResponse(HttpServletResponse response, Function<String, BodyFormat> bodyFormat,
+                                  BodyLimits limits, JsonMaskingService maskingService) {
         super(response);
+        this.bodyFormat = bodyFormat;
+        this.maskingService = maskingService;
+        this.streaming = false;
+        this.limits = limits;
+        this.cachedBody = limits.newBuffer();
+    }
+    
+    /**
+     * Обертка в потоковом режиме
+     *
+     * @param maskingService сервис, создающий маскирующий поток
+     * @param jsonContentType проверка, что Content-Type ответа — JSON
+     */
+    public MaskedBodyHttpServletResponse(HttpServletResponse response,
+                                         JsonMaskingService maskingService,
+                                         Predicate<String> jsonContentType) {
+        this(response, maskingService, asJson(jsonContentType), BodyLimits.UNLIMITED);
+    }
+    
+    /**
+     * Обертка в потоковом режиме с политикой для тел, которые нельзя замаскировать,
+     * и уровнем повторного сжатия. Размер тела не ограничивается: оно не кэшируется
+     */
+    MaskedBodyHttpServletResponse(HttpServletResponse response, JsonMaskingService maskingService,
+                                  Function<String, BodyFormat> bodyFormat, BodyLimits limits) {
+        super(response);
+        this.bodyFormat = bodyFormat;
+        this.maskingService = maskingService;
+        this.streaming = true;
+        this.limits = limits;
+        this.cachedBody = limits.newBuffer();
+    }
+    
+    /**
+     * Проверка Content-Type из публичных конструкторов: подходящее тело маскируется как JSON
+     */
+    private static Function<String, BodyFormat> asJson(Predicate<String> contentType) {
+        return value -> contentType.test(value) ? BodyFormat.JSON : null;
     }
     
     @Override
@@ -30,7 +154,7 @@ public class MaskedBodyHttpServletResponse extends HttpServletResponseWrapper {
         }
         
         if (outputStream == null) {
-            outputStream = new CachedBodyServletOutputStream(cachedBody);
+            outputStream = new CachedBodyServletOutputStream(this);
         }
         
         return outputStream;
@@ -43,69 +167,647 @@ public class MaskedBodyHttpServletResponse extends HttpServletResponseWrapper {
         }
         
         if (writer == null) {
-            writer = new PrintWriter(new java.io.OutputStreamWriter(cachedBody, StandardCharsets.UTF_8));
+            writer = new PrintWriter(new OutputStreamWriter(new CachedBodyServletOutputStream(this), StandardCharsets.UTF_8));
         }
         
         return writer;
     }
     
     @Override
-    public void flushBuffer() throws IOException {
-        if (outputStream != null) {
-            outputStream.flush();
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+    
+    @Override
+    public void setContentLengthLong(long len) {
+        switch (target) {
+            // Длина исходного тела может не совпасть с замаскированным — решим при первой записи
+            case UNDECIDED -> pendingContentLength = len;
+            case PASS_THROUGH -> super.setContentLengthLong(len);
+            default -> {
+                // Длину замаскированного тела выставит фильтр, в потоковом режиме она не передаётся
+            }
+        }
+    }
+    
+    @Override
+    public void setHeader(String name, String value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name) && value != null) {
+            setContentLengthHeader(value);
+            return;
         }
+        super.setHeader(name, value);
+    }
+    
+    @Override
+    public void addHeader(String name, String value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name) && value != null) {
+            setContentLengthHeader(value);
+            return;
+        }
+        super.addHeader(name, value);
+    }
+    
+    /**
+     * Content-Length, выставленный заголовком. Некорректное значение приложения
+     * игнорируется: длину тела выставит фильтр или контейнер
+     */
+    private void setContentLengthHeader(String value) {
+        long length;
+        try {
+            length = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        setContentLengthLong(length);
+    }
+    
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+            return;
+        }
+        super.setIntHeader(name, value);
+    }
+    
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (CONTENT_LENGTH_HEADER.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+            return;
+        }
+        super.addIntHeader(name, value);
+    }
+    
+    /**
+     * Кэшируемое тело не коммитит оригинальный ответ: иначе замаскированное тело
+     * уже нельзя было бы записать. В остальных случаях flush проходит насквозь
+     */
+    @Override
+    public void flushBuffer() throws IOException {
         if (writer != null) {
             writer.flush();
         }
-        // Сбрасываем флаг, чтобы избежать повторных flush
+        OutputStream body = bodyTarget();
+        if (body == cachedBody) {
+            return;
+        }
+        body.flush();
         super.flushBuffer();
     }
     
+    @Override
+    public void resetBuffer() {
+        // Недописанный буфер writer'а тоже должен быть отброшен вместе с телом
+        flushCachedBody();
+        super.resetBuffer();
+        resetCachedBody();
+    }
+    
+    @Override
+    public void reset() {
+        flushCachedBody();
+        super.reset();
+        resetCachedBody();
+        pendingContentLength = null;
+        declaredContentLength = null;
+        if (target == Target.CACHE || target == Target.DISCARD) {
+            // После reset Content-Type может смениться — решаем заново при следующей записи
+            target = Target.UNDECIDED;
+            oversized = false;
+        }
+    }
+    
+    /**
+     * Работает ли обертка в потоковом режиме
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+    
+    /**
+     * Маскируется ли тело на лету: в потоковом режиме (кроме XML) или, в буферизованном, тело NDJSON
+     */
+    public boolean isMaskedOnTheFly() {
+        return target == Target.MASKING_STREAM;
+    }
+    
+    /**
+     * Кэшировалось ли тело, чтобы замаскировать его после цепочки фильтров.
+     * В потоковом режиме так обрабатывается XML
+     */
+    public boolean isCached() {
+        // Тело могло остаться в буфере writer'а, и цель ещё не выбрана
+        flushCachedBody();
+        return target == Target.CACHE || oversized;
+    }
+    
+    /**
+     * Было ли тело передано в оригинальный ответ без кэширования и маскировки
+     */
+    public boolean isPassThrough() {
+        return target == Target.PASS_THROUGH;
+    }
+    
+    /**
+     * Превысило ли тело допустимый размер (и было передано без маскировки или отброшено)
+     */
+    public boolean isOversized() {
+        // Превышение могло остаться в буфере writer'а
+        flushCachedBody();
+        return oversized;
+    }
+    
+    /**
+     * Сжато ли JSON-тело кодировкой, которую нельзя распаковать (и было передано
+     * без маскировки или отброшено)
+     */
+    public boolean isUnsupportedEncoding() {
+        return unsupportedEncoding;
+    }
+    
+    /**
+     * Включён ли неблокирующий вывод (приложение установило WriteListener)
+     */
+    public boolean isNonBlocking() {
+        return nonBlockingOutput != null;
+    }
+    
+    /**
+     * Отмечает ответ завершённым. Возвращает false, если он уже был завершён:
+     * асинхронный ответ может завершаться и из фильтра, и из AsyncContext.complete()
+     */
+    boolean markCompleted() {
+        if (completed) {
+            return false;
+        }
+        completed = true;
+        return true;
+    }
+    
+    /**
+     * Поток оригинального ответа для записи тела. В неблокирующем режиме — очередь,
+     * которая пишет в оригинальный поток по мере его готовности
+     */
+    OutputStream originalOutput() throws IOException {
+        return nonBlockingOutput != null ? nonBlockingOutput : getResponse().getOutputStream();
+    }
+    
+    /**
+     * Выполняет действие, когда всё тело ушло в оригинальный поток. В блокирующем
+     * режиме — сразу, в неблокирующем — из onWritePossible, если клиент ещё не принял данные
+     */
+    void whenDrained(Runnable action) throws IOException {
+        if (nonBlockingOutput == null || nonBlockingOutput.drain()) {
+            action.run();
+        } else {
+            afterDrained = action;
+        }
+    }
+    
+    /**
+     * Передаёт отложенный Content-Length, если тело так и не писалось (например, ответ на HEAD)
+     */
+    public void applyPendingContentLength() {
+        if (target == Target.UNDECIDED && pendingContentLength != null) {
+            super.setContentLengthLong(pendingContentLength);
+            pendingContentLength = null;
+        }
+    }
+    
+    /**
+     * Завершает потоковую маскировку: дописывает хвост документа в оригинальный ответ
+     */
+    public void finishStreaming() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (maskingStream != null) {
+            maskingStream.finish();
+        }
+    }
+    
     /**
      * Получить закэшированное тело ответа как строку
      */
     public String getCachedBodyAsString() {
-        flushBuffer();
-        return cachedBody.toString(StandardCharsets.UTF_8);
+        return new String(getCachedBodyAsBytes(), StandardCharsets.UTF_8);
     }
     
     /**
      * Получить закэшированное тело ответа как байты
      */
     public byte[] getCachedBodyAsBytes() {
-        flushBuffer();
-        return cachedBody.toByteArray();
+        flushCachedBody();
+        try {
+            return cachedBody.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Записать закэшированное тело ответа в поток без копирования
+     */
+    public void writeCachedBodyTo(OutputStream out) throws IOException {
+        flushCachedBody();
+        cachedBody.writeTo(out);
+    }
+    
+    /**
+     * Передаёт закэшированное тело в оригинальный ответ, как {@link #writeBody}.
+     * Кэш после этого пуст
+     */
+    void writeCachedBody() throws IOException {
+        writeBody(takeCachedBody());
+    }
+    
+    /**
+     * Пишет буфер в оригинальный ответ и закрывает его. В неблокирующем режиме буфер
+     * ставится в очередь без копирования: он уходит порциями по сегменту из
+     * onWritePossible и закрывается, когда записан целиком
+     */
+    void writeBody(BodyBuffer body) throws IOException {
+        if (nonBlockingOutput != null) {
+            nonBlockingOutput.enqueue(body);
+            return;
+        }
+        try {
+            body.writeTo(getResponse().getOutputStream());
+        } finally {
+            body.close();
+        }
+    }
+    
+    /**
+     * Размер закэшированного тела ответа в байтах
+     */
+    public long getCachedBodySize() {
+        flushCachedBody();
+        return cachedBody.size();
+    }
+    
+    /**
+     * Сервис, которым маскируется тело ответа, или null
+     */
+    JsonMaskingService getMaskingService() {
+        return maskingService;
+    }
+    
+    /**
+     * Забирает закэшированное тело — в памяти или во временном файле. Закрыть его
+     * должен вызывающий, кэш обертки после этого пуст
+     */
+    BodyBuffer takeCachedBody() {
+        flushCachedBody();
+        BodyBuffer body = cachedBody;
+        cachedBody = limits.newBuffer();
+        return body;
+    }
+    
+    /**
+     * Удаляет временный файл кэша. Вызывается фильтром после записи ответа
+     */
+    void release() throws IOException {
+        cachedBody.close();
+    }
+    
+    /**
+     * Сбрасывает буфер writer'а в кэш, не трогая оригинальный response
+     */
+    private void flushCachedBody() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+    
+    private void resetCachedBody() {
+        try {
+            cachedBody.reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Куда пишутся следующие incoming байт. Кэш, который перерос maxBodySize,
+     * по политике сбрасывается в ответ без маскировки или отбрасывается
+     */
+    private OutputStream bodyTarget(int incoming) throws IOException {
+        OutputStream body = bodyTarget();
+        if (target == Target.CACHE && limits.isOversized(cachedBody.size() + incoming)) {
+            oversized = true;
+            if (limits.isReject()) {
+                target = Target.DISCARD;
+                cachedBody.close();
+            } else {
+                passThroughStream = originalOutput();
+                target = Target.PASS_THROUGH;
+                if (declaredContentLength != null) {
+                    super.setContentLengthLong(declaredContentLength);
+                }
+                writeCachedBody();
+            }
+            return bodyTarget();
+        }
+        return body;
+    }
+    
+    /**
+     * Куда пишется тело. Решение принимается при первой записи, когда Content-Type
+     * уже выставлен, и дальше не меняется
+     */
+    private OutputStream bodyTarget() throws IOException {
+        switch (target) {
+            case CACHE:
+                return cachedBody;
+            case DISCARD:
+                return OutputStream.nullOutputStream();
+            case MASKING_STREAM:
+                return maskingStream;
+            case PASS_THROUGH:
+                return passThroughStream;
+            default:
+                break;
+        }
+        
+        ContentCoding coding = ContentCoding.of(getHeader(ContentCoding.CONTENT_ENCODING_HEADER));
+        BodyFormat format = bodyFormat.apply(getContentType());
+        boolean masked = format != null;
+        if (masked && coding == ContentCoding.UNSUPPORTED) {
+            // Распаковать нельзя: по политике тело уходит без маскировки или отбрасывается
+            unsupportedEncoding = true;
+            masked = false;
+        }
+        if (!masked && unsupportedEncoding && limits.isReject()) {
+            target = Target.DISCARD;
+        } else if (!masked) {
+            // Маскировать нечего — пишем прямо в оригинальный ответ, без копий
+            passThroughStream = originalOutput();
+            target = Target.PASS_THROUGH;
+            if (pendingContentLength != null) {
+                super.setContentLengthLong(pendingContentLength);
+            }
+        } else if (isStreaming() && format != BodyFormat.XML || format == BodyFormat.NDJSON) {
+            // NDJSON маскируется по записям на лету и в буферизованном режиме:
+            // поток событий может не закончиться, а каждая запись должна уйти сразу.
+            // XML читается StAX только целиком, поэтому и в потоковом режиме кэшируется
+            maskingStream = new MaskingBodyOutputStream(maskingService, coding, originalOutput(),
+                    limits.getCompressionLevel(), format);
+            target = Target.MASKING_STREAM;
+        } else {
+            target = Target.CACHE;
+            declaredContentLength = pendingContentLength;
+        }
+        pendingContentLength = null;
+        return bodyTarget();
+    }
+    
+    /**
+     * Готов ли поток принять следующую запись без блокировки
+     */
+    private boolean isBodyReady() {
+        try {
+            return nonBlockingOutput == null || nonBlockingOutput.drain();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Переводит вывод в неблокирующий режим: слушатель приложения вызывается,
+     * когда оригинальный поток готов и очередь вывода пуста
+     */
+    private void registerWriteListener(WriteListener listener) {
+        if (nonBlockingOutput != null) {
+            throw new IllegalStateException("WriteListener has already been set");
+        }
+        ServletOutputStream original;
+        try {
+            original = getResponse().getOutputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nonBlockingOutput = new NonBlockingOutput(original, limits.getPool().getSegmentSize());
+        original.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() throws IOException {
+                if (!nonBlockingOutput.drain()) {
+                    return;
+                }
+                if (afterDrained != null) {
+                    // Приложение уже завершило ответ — дописали хвост, завершаем
+                    Runnable action = afterDrained;
+                    afterDrained = null;
+                    action.run();
+                    return;
+                }
+                listener.onWritePossible();
+            }
+            
+            @Override
+            public void onError(Throwable t) {
+                nonBlockingOutput.discard();
+                listener.onError(t);
+            }
+        });
+    }
+    
+    /**
+     * Очередь вывода для неблокирующего режима. Записи приложения копятся и уходят
+     * в оригинальный поток одной записью, когда тот сообщает о готовности. Буферы
+     * тела в очередь не копируются: они дописываются порциями по сегменту, по одной
+     * на каждое окно готовности, и закрываются, когда записаны целиком
+     */
+    private static final class NonBlockingOutput extends OutputStream {
+        private final ServletOutputStream target;
+        private final int chunkSize;
+        private final Deque<Pending> queue = new ArrayDeque<>();
+        private byte[] chunk;
+        
+        NonBlockingOutput(ServletOutputStream target, int chunkSize) {
+            this.target = target;
+            this.chunkSize = chunkSize;
+        }
+        
+        @Override
+        public void write(int b) {
+            pendingBytes().write(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            pendingBytes().write(b, off, len);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+        
+        /**
+         * Ставит буфер в очередь за уже записанным. Буфер закрывается очередью
+         */
+        void enqueue(BodyBuffer body) throws IOException {
+            InputStream input;
+            try {
+                input = body.openInputStream();
+            } catch (IOException e) {
+                body.close();
+                throw e;
+            }
+            queue.addLast(new PendingBody(body, input, chunk()));
+        }
+        
+        /**
+         * Пишет очередь, пока оригинальный поток готов. Возвращает true, если очередь
+         * пуста и поток готов к следующей записи; иначе контейнер вызовет onWritePossible
+         */
+        boolean drain() throws IOException {
+            try {
+                while (!queue.isEmpty() && target.isReady()) {
+                    if (queue.peekFirst().writeTo(target)) {
+                        queue.removeFirst().close();
+                    }
+                }
+            } catch (IOException e) {
+                discard();
+                throw e;
+            }
+            return queue.isEmpty() && target.isReady();
+        }
+        
+        /**
+         * Отбрасывает очередь: закрывает буферы и удаляет их временные файлы
+         */
+        void discard() {
+            while (!queue.isEmpty()) {
+                try {
+                    queue.removeFirst().close();
+                } catch (IOException ignored) {
+                    // Клиент уже отключился, остаётся только освободить буферы
+                }
+            }
+        }
+        
+        /**
+         * Порция для чтения буферов тела: одна на очередь и только когда буфер поставлен в неё
+         */
+        private byte[] chunk() {
+            if (chunk == null) {
+                chunk = new byte[chunkSize];
+            }
+            return chunk;
+        }
+        
+        private ByteArrayOutputStream pendingBytes() {
+            Pending last = queue.peekLast();
+            if (!(last instanceof PendingBytes)) {
+                last = new PendingBytes();
+                queue.addLast(last);
+            }
+            return ((PendingBytes) last).bytes;
+        }
+    }
+    
+    /**
+     * Элемент очереди неблокирующего вывода
+     */
+    private interface Pending extends Closeable {
+        
+        /**
+         * Пишет очередную порцию в готовый поток. Возвращает true, если элемент записан целиком
+         */
+        boolean writeTo(ServletOutputStream target) throws IOException;
+    }
+    
+    /**
+     * Записи приложения: уходят одной записью
+     */
+    private static final class PendingBytes implements Pending {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        
+        @Override
+        public boolean writeTo(ServletOutputStream target) throws IOException {
+            bytes.writeTo(target);
+            return true;
+        }
+        
+        @Override
+        public void close() {
+        }
     }
     
     /**
-     * Внутренний класс для кэширования тела ответа
+     * Буфер тела с позицией чтения: сегменты в памяти или временный файл
+     */
+    private static final class PendingBody implements Pending {
+        private final BodyBuffer body;
+        private final InputStream input;
+        private final byte[] chunk;
+        
+        PendingBody(BodyBuffer body, InputStream input, byte[] chunk) {
+            this.body = body;
+            this.input = input;
+            this.chunk = chunk;
+        }
+        
+        @Override
+        public boolean writeTo(ServletOutputStream target) throws IOException {
+            int read = input.readNBytes(chunk, 0, chunk.length);
+            if (read > 0) {
+                target.write(chunk, 0, read);
+            }
+            return read < chunk.length;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                input.close();
+            } finally {
+                body.close();
+            }
+        }
+    }
+    
+    /**
+     * Внутренний класс для записи тела ответа
      */
     private static class CachedBodyServletOutputStream extends ServletOutputStream {
-        private final ByteArrayOutputStream buffer;
+        private final MaskedBodyHttpServletResponse response;
         
-        public CachedBodyServletOutputStream(ByteArrayOutputStream buffer) {
-            this.buffer = buffer;
+        public CachedBodyServletOutputStream(MaskedBodyHttpServletResponse response) {
+            this.response = response;
         }
         
         @Override
         public void write(int b) throws IOException {
-            buffer.write(b);
+            response.bodyTarget(1).write(b);
         }
         
         @Override
         public void write(byte[] b, int off, int len) throws IOException {
-            buffer.write(b, off, len);
+            response.bodyTarget(len).write(b, off, len);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            // До первой записи решать рано: Content-Type может быть ещё не выставлен
+            if (response.target != Target.UNDECIDED) {
+                response.bodyTarget().flush();
+            }
         }
         
         @Override
         public boolean isReady() {
-            return true;
+            return response.isBodyReady();
         }
         
         @Override
         public void setWriteListener(WriteListener listener) {
-            throw new UnsupportedOperationException();
+            response.registerWriteListener(listener);
         }
     }
 }
-
@@ -0,0 +1,157 @@
+package com.example.masker.filter;
+
+import com.example.masker.service.JsonMaskingService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Обертка для HttpServletRequest, которая маскирует строку запроса, параметры и заголовки
+ *
+ * Значения маскируются по тем же правилам полей, что и тело: параметр — по точному
+ * имени, заголовок — по имени без учёта регистра. Всё вычисляется лениво при первом
+ * обращении и кэшируется, так что повторные getParameterMap() и getHeader() не
+ * маскируют заново, а запрос, который их не вызывает, ничего не стоит. Заголовки
+ * без правила отдаются оригинальным запросом без копирования.
+ *
+ * Параметры берутся у контейнера: он разбирает строку запроса и исходное тело формы,
+ * после чего значения с правилом заменяются замаскированными.
+ */
+class MaskedParametersHttpServletRequest extends HttpServletRequestWrapper {
+    
+    private final JsonMaskingService maskingService;
+    private final boolean maskParameters;
+    private final boolean maskHeaders;
+    
+    private String queryString;
+    private boolean queryStringMasked;
+    private Map<String, String[]> parameterMap;
+    /** Замаскированные значения заголовков с правилом; ключ — имя в нижнем регистре */
+    private Map<String, List<String>> headers;
+    
+    /**
+     * @param maskParameters маскировать строку запроса и параметры
+     * @param maskHeaders    маскировать заголовки
+     */
+    MaskedParametersHttpServletRequest(HttpServletRequest request, JsonMaskingService maskingService,
+                                       boolean maskParameters, boolean maskHeaders) {
+        super(request);
+        this.maskingService = maskingService;
+        this.maskParameters = maskParameters;
+        this.maskHeaders = maskHeaders;
+    }
+    
+    @Override
+    public String getQueryString() {
+        if (!maskParameters) {
+            return super.getQueryString();
+        }
+        if (!queryStringMasked) {
+            queryString = maskingService.maskQueryString(super.getQueryString());
+            queryStringMasked = true;
+        }
+        return queryString;
+    }
+    
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        if (!maskParameters) {
+            return super.getParameterMap();
+        }
+        if (parameterMap == null) {
+            parameterMap = maskParameters(super.getParameterMap());
+        }
+        return parameterMap;
+    }
+    
+    @Override
+    public String getParameter(String name) {
+        String[] values = getParameterMap().get(name);
+        return values == null || values.length == 0 ? null : values[0];
+    }
+    
+    @Override
+    public String[] getParameterValues(String name) {
+        String[] values = getParameterMap().get(name);
+        return values == null ? null : values.clone();
+    }
+    
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(getParameterMap().keySet());
+    }
+    
+    @Override
+    public String getHeader(String name) {
+        List<String> values = maskedHeader(name);
+        if (values == null) {
+            return super.getHeader(name);
+        }
+        return values.isEmpty() ? null : values.get(0);
+    }
+    
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        List<String> values = maskedHeader(name);
+        return values == null ? super.getHeaders(name) : Collections.enumeration(values);
+    }
+    
+    /**
+     * Замаскированные значения заголовка или null, если заголовок не маскируется
+     */
+    private List<String> maskedHeader(String name) {
+        if (!maskHeaders || name == null || maskingService.getPlan().getHeaderRule(name) == null) {
+            return null;
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        if (headers == null) {
+            headers = new HashMap<>();
+        }
+        List<String> values = headers.get(key);
+        if (values == null) {
+            values = new ArrayList<>();
+            Enumeration<String> original = super.getHeaders(name);
+            while (original != null && original.hasMoreElements()) {
+                values.add(maskingService.maskHeader(name, original.nextElement()));
+            }
+            headers.put(key, values);
+        }
+        return values;
+    }
+    
+    /**
+     * Копия карты параметров, в которой значения с правилом замаскированы.
+     * Если маскировать нечего, возвращается исходная карта
+     */
+    private Map<String, String[]> maskParameters(Map<String, String[]> original) {
+        Map<String, String[]> masked = null;
+        for (Map.Entry<String, String[]> entry : original.entrySet()) {
+            String[] values = entry.getValue();
+            String[] copy = null;
+            for (int i = 0; i < values.length; i++) {
+                String value = maskingService.maskParameter(entry.getKey(), values[i]);
+                if (value != values[i]) {
+                    if (copy == null) {
+                        copy = values.clone();
+                    }
+                    copy[i] = value;
+                }
+            }
+            if (copy != null) {
+                if (masked == null) {
+                    masked = new LinkedHashMap<>(original);
+                }
+                masked.put(entry.getKey(), copy);
+            }
+        }
+        return masked == null ? original : Collections.unmodifiableMap(masked);
+    }
+}
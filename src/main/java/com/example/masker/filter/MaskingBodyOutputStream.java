@@ -0,0 +1,241 @@
+package com.example.masker.filter;
+
+import com.example.masker.service.BodyFormat;
+import com.example.masker.service.JsonMaskingService;
+import com.example.masker.service.MaskingOutputStream;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Маскирующий поток тела с учётом Content-Encoding для записи по мере поступления
+ * (потоковый ответ, неблокирующее чтение запроса, порции WebFlux).
+ *
+ * Записанные байты распаковываются {@link InflaterOutputStream}, маскируются
+ * {@link MaskingOutputStream} для формата тела и снова сжимаются той же кодировкой в target.
+ * Заголовок gzip разбирается здесь, контрольная сумма в хвосте не проверяется:
+ * выходной поток получает собственную. Несжатое тело идёт прямо в маскирующий поток.
+ */
+public final class MaskingBodyOutputStream extends OutputStream {
+    
+    private final OutputStream target;
+    private final MaskingOutputStream masking;
+    /** Сжимающий поток между маскировкой и target; null — тело не сжато */
+    private final OutputStream encoder;
+    private final Inflater inflater;
+    private final InflaterOutputStream decoder;
+    
+    /** Заголовок gzip перед сжатыми данными; null — кодировка не gzip */
+    private final GzipHeader gzipHeader;
+    private boolean finished;
+    
+    /**
+     * @param level  уровень повторного сжатия 0–9
+     * @param format формат тела, определяет маскирующий поток
+     */
+    public MaskingBodyOutputStream(JsonMaskingService maskingService, ContentCoding coding, OutputStream target,
+                                   int level, BodyFormat format) throws IOException {
+        this.target = target;
+        if (coding == ContentCoding.IDENTITY) {
+            this.encoder = null;
+            this.masking = maskingService.maskingOutputStream(format, target);
+            this.inflater = null;
+            this.decoder = null;
+            this.gzipHeader = null;
+            return;
+        }
+        this.encoder = coding.encode(StreamUtils.nonClosing(target), level);
+        this.masking = maskingService.maskingOutputStream(format, encoder);
+        this.inflater = new Inflater(coding == ContentCoding.GZIP);
+        this.decoder = new InflaterOutputStream(masking, inflater);
+        this.gzipHeader = coding == ContentCoding.GZIP ? new GzipHeader() : null;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (decoder == null) {
+            masking.write(b, off, len);
+            return;
+        }
+        if (gzipHeader != null && !gzipHeader.isComplete()) {
+            int consumed = gzipHeader.consume(b, off, len);
+            off += consumed;
+            len -= consumed;
+        }
+        if (len > 0) {
+            decoder.write(b, off, len);
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        if (decoder != null) {
+            decoder.flush();
+        }
+        masking.flush();
+    }
+    
+    /**
+     * Дописывает хвост документа и сжатого потока. Target не закрывается
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (decoder == null) {
+            masking.finish();
+            return;
+        }
+        try {
+            if (gzipHeader != null && !gzipHeader.isComplete()) {
+                throw new ZipException("Truncated gzip header");
+            }
+            decoder.finish();
+            masking.finish();
+            encoder.close();
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        finish();
+        target.close();
+    }
+    
+    /**
+     * Освобождает маскирующий поток, если тело не будет дописано. Target не закрывается
+     */
+    public void discard() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            masking.discard();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+    
+    /**
+     * Разбор заголовка gzip (RFC 1952), который может прийти по частям
+     */
+    private static final class GzipHeader {
+        
+        private static final int FIXED_SIZE = 10;
+        private static final int FHCRC = 0x02;
+        private static final int FEXTRA = 0x04;
+        private static final int FNAME = 0x08;
+        private static final int FCOMMENT = 0x10;
+        
+        /** Части заголовка в порядке следования */
+        private enum Step { FIXED, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HEADER_CRC, DONE }
+        
+        private final byte[] fixed = new byte[FIXED_SIZE];
+        private Step step = Step.FIXED;
+        private int flags;
+        /** Прочитано байт текущей части фиксированной длины */
+        private int read;
+        private int extraRemaining;
+        
+        boolean isComplete() {
+            return step == Step.DONE;
+        }
+        
+        /**
+         * @return сколько байт из b относится к заголовку
+         */
+        int consume(byte[] b, int off, int len) throws ZipException {
+            int start = off;
+            int end = off + len;
+            while (step != Step.DONE && off < end) {
+                switch (step) {
+                    case FIXED:
+                        int count = Math.min(FIXED_SIZE - read, end - off);
+                        System.arraycopy(b, off, fixed, read, count);
+                        read += count;
+                        off += count;
+                        if (read == FIXED_SIZE) {
+                            if ((fixed[0] & 0xFF) != 0x1F || (fixed[1] & 0xFF) != 0x8B || fixed[2] != 8) {
+                                throw new ZipException("Not in GZIP format");
+                            }
+                            flags = fixed[3] & 0xFF;
+                            advance();
+                        }
+                        break;
+                    case EXTRA_LENGTH:
+                        // Длина дополнительного поля — два байта little-endian
+                        extraRemaining |= (b[off++] & 0xFF) << (8 * read++);
+                        if (read == 2) {
+                            advance();
+                        }
+                        break;
+                    case EXTRA:
+                        int skipped = Math.min(extraRemaining, end - off);
+                        off += skipped;
+                        extraRemaining -= skipped;
+                        if (extraRemaining == 0) {
+                            advance();
+                        }
+                        break;
+                    case NAME:
+                    case COMMENT:
+                        if (b[off++] == 0) {
+                            advance();
+                        }
+                        break;
+                    case HEADER_CRC:
+                        off++;
+                        if (++read == 2) {
+                            advance();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return off - start;
+        }
+        
+        /**
+         * Переходит к следующей части, которая есть в этом заголовке
+         */
+        private void advance() {
+            read = 0;
+            do {
+                step = Step.values()[step.ordinal() + 1];
+            } while (!isPresent(step));
+        }
+        
+        private boolean isPresent(Step candidate) {
+            switch (candidate) {
+                case EXTRA_LENGTH:
+                    return (flags & FEXTRA) != 0;
+                case EXTRA:
+                    return (flags & FEXTRA) != 0 && extraRemaining > 0;
+                case NAME:
+                    return (flags & FNAME) != 0;
+                case COMMENT:
+                    return (flags & FCOMMENT) != 0;
+                case HEADER_CRC:
+                    return (flags & FHCRC) != 0;
+                default:
+                    return true;
+            }
+        }
+    }
+}
@@ -1,28 +1,108 @@
 package com.example.masker.filter;
 
+import com.example.masker.audit.AuditDispatcher;
+import com.example.masker.audit.AuditRecord;
 import com.example.masker.config.MaskingProperties;
+import com.example.masker.service.BodyFormat;
 import com.example.masker.service.JsonMaskingService;
+import com.example.masker.service.MediaTypeClassifier;
+import com.example.masker.service.RouteMasking;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.server.RequestPath;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Фильтр для маскировки данных в теле HTTP запросов и ответов
+ *
+ * В режиме {@link MaskingProperties.FilterMode#AUDIT} тела не подменяются: приложение
+ * и клиент получают исходные байты, а копия маскируется асинхронно в {@link AuditDispatcher}
  */
 public class MaskingFilter extends OncePerRequestFilter {
     
+    /**
+     * Атрибут запроса: тело запроса больше допустимого размера и передано без маскировки
+     */
+    public static final String REQUEST_NOT_MASKED_ATTRIBUTE = MaskingFilter.class.getName() + ".REQUEST_NOT_MASKED";
+    
+    /**
+     * Атрибут запроса: тело ответа больше допустимого размера и передано без маскировки
+     */
+    public static final String RESPONSE_NOT_MASKED_ATTRIBUTE = MaskingFilter.class.getName() + ".RESPONSE_NOT_MASKED";
+    
     private final MaskingProperties properties;
     private final JsonMaskingService jsonMaskingService;
+    private final SegmentPool bufferPool;
+    /** Какие тела маскируются и в каком формате, по Content-Type */
+    private final MediaTypeClassifier mediaTypes;
+    /** Очередь маскировки копий для аудита; null — режим REWRITE */
+    private final AuditDispatcher auditDispatcher;
     
     public MaskingFilter(MaskingProperties properties, JsonMaskingService jsonMaskingService) {
+        this(properties, jsonMaskingService, null);
+    }
+    
+    /**
+     * @param auditDispatcher обязателен в режиме {@link MaskingProperties.FilterMode#AUDIT}
+     */
+    public MaskingFilter(MaskingProperties properties, JsonMaskingService jsonMaskingService,
+                         AuditDispatcher auditDispatcher) {
+        if (properties.getFilterMode() == MaskingProperties.FilterMode.AUDIT && auditDispatcher == null) {
+            throw new IllegalArgumentException("AUDIT filter mode requires an AuditDispatcher");
+        }
+        if (properties.getCompressionLevel() < 0 || properties.getCompressionLevel() > 9) {
+            throw new IllegalArgumentException("compression-level must be between 0 and 9");
+        }
+        long segmentSize = properties.getBufferSegmentSize().toBytes();
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("buffer-segment-size must be between 1B and 2GB: "
+                    + properties.getBufferSegmentSize());
+        }
+        if (properties.getBufferPoolMaxSize().isNegative()) {
+            throw new IllegalArgumentException("buffer-pool-max-size must not be negative: "
+                    + properties.getBufferPoolMaxSize());
+        }
         this.properties = properties;
         this.jsonMaskingService = jsonMaskingService;
+        this.mediaTypes = MediaTypeClassifier.compile(properties);
+        this.auditDispatcher = properties.getFilterMode() == MaskingProperties.FilterMode.AUDIT
+                ? auditDispatcher
+                : null;
+        this.bufferPool = new SegmentPool((int) segmentSize,
+                (int) Math.min(properties.getBufferPoolMaxSize().toBytes() / segmentSize, Integer.MAX_VALUE));
+        this.bufferPool.bindMetrics(jsonMaskingService.getMetrics());
+    }
+    
+    /**
+     * Пул сегментов, из которых собираются буферы тел. Его счётчики показывают,
+     * насколько хорошо буферы переиспользуются между запросами
+     */
+    public SegmentPool getBufferPool() {
+        return bufferPool;
+    }
+    
+    /**
+     * Асинхронные ответы (DeferredResult, StreamingResponseBody) пишутся при повторном,
+     * асинхронном проходе — там их и нужно дописать
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
     }
     
     @Override
@@ -31,108 +111,464 @@ public class MaskingFilter extends OncePerRequestFilter {
             HttpServletResponse response, 
             FilterChain filterChain) throws ServletException, IOException {
         
+        if (auditDispatcher != null) {
+            filterAudit(request, response, filterChain);
+            return;
+        }
+        
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Обертки созданы при первом проходе и переданы в startAsync
+            filterAsyncDispatch(request, response, filterChain);
+            return;
+        }
+        
+        BodyLimits limits = BodyLimits.from(properties, bufferPool);
+        
+        // Правила маршрута; маршрут без правил обходится без оберток
+        RouteMasking routeMasking = maskingFor(request);
+        JsonMaskingService requestMasking = routeMasking.getRequest();
+        JsonMaskingService responseMasking = routeMasking.getResponse();
+        JsonMaskingService routeResponseMasking = responseMasking;
+        
         // Обработка запроса
-        HttpServletRequest processedRequest = processRequest(request);
+        HttpServletRequest processedRequest = processRequest(request, limits, requestMasking);
+        if (processedRequest == null) {
+            // Тело больше допустимого размера или сжато неподдерживаемой кодировкой, политика REJECT
+            response.sendError(requestCoding(request) == ContentCoding.UNSUPPORTED
+                    ? HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE
+                    : HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
         
         // Обработка ответа
-        MaskedBodyHttpServletResponse maskedResponse = processResponse(response);
-        
-        // Продолжаем цепочку фильтров
+        MaskedBodyHttpServletResponse maskedResponse = processResponse(response, limits, responseMasking);
+        HttpServletResponse processedResponse = response;
         if (maskedResponse != null) {
-            filterChain.doFilter(processedRequest, maskedResponse);
+            processedResponse = maskedResponse;
+            processedRequest = new AsyncCompletionHttpServletRequest(processedRequest, maskedResponse,
+                    complete -> completeAsync(request, maskedResponse, limits, routeResponseMasking, complete));
+        }
+        
+        boolean asyncStarted = false;
+        try {
+            // Продолжаем цепочку фильтров
+            filterChain.doFilter(processedRequest, processedResponse);
+            asyncStarted = request.isAsyncStarted();
+            if (!asyncStarted) {
+                completeResponse(processedRequest, response, maskedResponse, limits, responseMasking);
+            }
+        } finally {
+            if (!asyncStarted) {
+                release(processedRequest, maskedResponse);
+            }
+        }
+    }
+    
+    /**
+     * Сервисы с правилами маршрута запроса для обоих направлений. Путь разбирается
+     * и маршрут ищется один раз, и только если профили маршрутов заданы
+     */
+    private RouteMasking maskingFor(HttpServletRequest request) {
+        return jsonMaskingService.forRequest(request.getMethod(),
+                () -> RequestPath.parse(request.getRequestURI(), request.getContextPath()).pathWithinApplication());
+    }
+    
+    /**
+     * Режим аудита: исходные тела проходят без изменений, прочитанный запрос и записанный
+     * ответ копируются и после завершения обмена ставятся в очередь на маскировку.
+     * Асинхронный запрос уходит в очередь, когда завершится AsyncContext
+     */
+    private void filterAudit(HttpServletRequest request, HttpServletResponse response,
+                             FilterChain filterChain) throws ServletException, IOException {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Обертки и обработчик завершения установлены при первом проходе
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        Instant timestamp = Instant.now();
+        BodyLimits limits = BodyLimits.from(properties, bufferPool);
+        RouteMasking routeMasking = maskingFor(request);
+        JsonMaskingService requestMasking = routeMasking.getRequest();
+        JsonMaskingService responseMasking = routeMasking.getResponse();
+        AuditBodyCopy requestCopy = properties.isRequestEnabled() && !requestMasking.getPlan().isEmpty()
+                && mediaTypes.isMasked(request.getContentType()) && !limits.isOversized(request.getContentLengthLong())
+                ? new AuditBodyCopy(limits)
+                : null;
+        AuditBodyCopy responseCopy = properties.isResponseEnabled() && !responseMasking.getPlan().isEmpty()
+                ? new AuditBodyCopy(limits)
+                : null;
+        if (requestCopy == null && responseCopy == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        AuditCopyHttpServletResponse auditResponse = responseCopy != null
+                ? new AuditCopyHttpServletResponse(response, responseCopy, mediaTypes::isMasked)
+                : null;
+        HttpServletResponse processedResponse = auditResponse != null ? auditResponse : response;
+        HttpServletRequest processedRequest = new AuditCopyHttpServletRequest(request, requestCopy, processedResponse);
+        AtomicBoolean submitted = new AtomicBoolean();
+        Runnable submit = () -> {
+            if (submitted.compareAndSet(false, true)) {
+                if (auditResponse != null) {
+                    auditResponse.flushWriter();
+                }
+                submitAudit(request, response, timestamp, requestCopy, requestMasking, responseCopy, responseMasking);
+            }
+        };
+        
+        boolean asyncStarted = false;
+        try {
+            filterChain.doFilter(processedRequest, processedResponse);
+            asyncStarted = request.isAsyncStarted();
+        } finally {
+            if (asyncStarted) {
+                request.getAsyncContext().addListener(new AuditCompletionListener(submit));
+            } else {
+                submit.run();
+            }
+        }
+    }
+    
+    /**
+     * Ставит замаскированную копию обмена в очередь; тела маскируются в рабочем потоке
+     */
+    private void submitAudit(HttpServletRequest request, HttpServletResponse response, Instant timestamp,
+                             AuditBodyCopy requestCopy, JsonMaskingService requestMasking,
+                             AuditBodyCopy responseCopy, JsonMaskingService responseMasking) {
+        String method = request.getMethod();
+        String uri = request.getRequestURI();
+        int status = response.getStatus();
+        ContentCoding requestCoding = requestCoding(request);
+        ContentCoding responseCoding = ContentCoding.of(response.getHeader(ContentCoding.CONTENT_ENCODING_HEADER));
+        BodyFormat requestFormat = mediaTypes.classify(request.getContentType());
+        BodyFormat responseFormat = mediaTypes.classify(response.getContentType());
+        auditDispatcher.submit(
+                () -> new AuditRecord(method, uri, status,
+                        maskCopy(requestCopy, requestMasking, requestCoding, requestFormat),
+                        maskCopy(responseCopy, responseMasking, responseCoding, responseFormat),
+                        timestamp),
+                () -> {
+                    if (requestCopy != null) {
+                        requestCopy.release();
+                    }
+                    if (responseCopy != null) {
+                        responseCopy.release();
+                    }
+                });
+    }
+    
+    /**
+     * Маскирует копию тела; сжатая копия распаковывается. Неполная копия, тело
+     * в неподдерживаемой кодировке или тело, которое не удалось разобрать, в аудит
+     * не попадают: в них могут остаться незамаскированные данные
+     *
+     * @param format формат тела по Content-Type; null — тело не маскируется
+     */
+    private static String maskCopy(AuditBodyCopy copy, JsonMaskingService maskingService, ContentCoding coding,
+                                   BodyFormat format) {
+        if (copy == null || format == null || !copy.isComplete() || copy.getBuffer().size() == 0
+                || coding == ContentCoding.UNSUPPORTED) {
+            return null;
+        }
+        BodyBuffer body = copy.getBuffer();
+        try {
+            if (coding == ContentCoding.IDENTITY && isJsonText(format) && body.isInMemory()
+                    && !maskingService.mayContainMaskedField(body.chunks())) {
+                return new String(body.toByteArray(), StandardCharsets.UTF_8);
+            }
+            ByteArrayOutputStream masked = new ByteArrayOutputStream((int) Math.min(body.size(), Integer.MAX_VALUE));
+            try (InputStream input = coding.decode(body.openInputStream())) {
+                maskingService.mask(format, input, masked);
+            }
+            return masked.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Асинхронный проход: цепочка дописывает ответ в те же обертки, после чего он завершается
+     */
+    private void filterAsyncDispatch(HttpServletRequest request, HttpServletResponse response,
+                                     FilterChain filterChain) throws ServletException, IOException {
+        MaskedBodyHttpServletResponse maskedResponse =
+                WebUtils.getNativeResponse(response, MaskedBodyHttpServletResponse.class);
+        boolean asyncStarted = false;
+        try {
+            filterChain.doFilter(request, response);
+            asyncStarted = request.isAsyncStarted();
+            if (!asyncStarted && maskedResponse != null) {
+                completeResponse(request, (HttpServletResponse) maskedResponse.getResponse(), maskedResponse,
+                        BodyLimits.from(properties, bufferPool),
+                        maskedResponse.getMaskingService() != null
+                                ? maskedResponse.getMaskingService()
+                                : jsonMaskingService);
+            }
+        } finally {
+            if (!asyncStarted) {
+                release(request, maskedResponse);
+            }
+        }
+    }
+    
+    /**
+     * Сервлет вызвал AsyncContext.complete(): дописываем ответ и завершаем,
+     * когда клиент принял данные (в неблокирующем режиме — из onWritePossible)
+     */
+    private void completeAsync(HttpServletRequest request, MaskedBodyHttpServletResponse maskedResponse,
+                               BodyLimits limits, JsonMaskingService maskingService, Runnable complete) {
+        try {
+            completeResponse(request, (HttpServletResponse) maskedResponse.getResponse(), maskedResponse, limits,
+                    maskingService);
+            maskedResponse.whenDrained(complete);
+        } catch (IOException e) {
+            logger.warn("Failed to complete masked asynchronous response", e);
+            complete.run();
+        } finally {
+            try {
+                release(request, maskedResponse);
+            } catch (IOException e) {
+                logger.debug("Failed to release masking buffers", e);
+            }
+        }
+    }
+    
+    /**
+     * Дописывает ответ после выполнения цепочки: маскирует закэшированное тело
+     * или завершает потоковую маскировку. Повторный вызов ничего не делает
+     */
+    private void completeResponse(HttpServletRequest request, HttpServletResponse originalResponse,
+                                  MaskedBodyHttpServletResponse maskedResponse,
+                                  BodyLimits limits, JsonMaskingService maskingService) throws IOException {
+        if (maskedResponse != null && !maskedResponse.markCompleted()) {
+            return;
+        }
+        
+        MaskedBodyHttpServletRequest maskedRequest =
+                WebUtils.getNativeRequest(request, MaskedBodyHttpServletRequest.class);
+        if (maskedRequest != null && maskedRequest.isRejected()) {
+            // Тело запроса без заявленной длины оказалось больше допустимого, политика REJECT
+            if (!originalResponse.isCommitted()) {
+                originalResponse.reset();
+                originalResponse.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            }
+            return;
+        }
+        
+        if (maskedResponse == null) {
+            return;
+        }
+        maskedResponse.applyPendingContentLength();
+        if (maskedResponse.isMaskedOnTheFly() || maskedResponse.isStreaming() && !maskedResponse.isCached()) {
+            // Ответ уже замаскирован на лету, осталось дописать хвост
+            maskedResponse.finishStreaming();
+        } else if (maskedResponse.isOversized() || maskedResponse.isUnsupportedEncoding()) {
+            processNotMaskedResponse(request, originalResponse, limits);
+        } else if (!maskedResponse.isPassThrough()) {
             // После обработки маскируем ответ, если нужно
-            processResponseAfterFilter(maskedResponse, response);
-        } else {
-            filterChain.doFilter(processedRequest, response);
+            processResponseAfterFilter(maskedResponse, originalResponse, limits, maskingService);
+        }
+    }
+    
+    private void release(HttpServletRequest request, MaskedBodyHttpServletResponse maskedResponse)
+            throws IOException {
+        MaskedBodyHttpServletRequest maskedRequest =
+                WebUtils.getNativeRequest(request, MaskedBodyHttpServletRequest.class);
+        if (maskedRequest != null) {
+            maskedRequest.release();
+        }
+        if (maskedResponse != null) {
+            maskedResponse.release();
         }
     }
     
     /**
-     * Обрабатывает запрос: маскирует тело, если нужно
+     * Обрабатывает запрос: оборачивает его, чтобы тело маскировалось при чтении,
+     * а строка запроса, параметры и заголовки — при обращении к ним
      */
-    private HttpServletRequest processRequest(HttpServletRequest request) throws IOException {
-        if (!properties.isRequestEnabled()) {
+    private HttpServletRequest processRequest(HttpServletRequest request, BodyLimits limits,
+                                              JsonMaskingService maskingService) {
+        if (!properties.isRequestEnabled() || maskingService.getPlan().isEmpty()) {
             return request;
         }
         
-        if (!isJsonContent(request.getContentType())) {
+        HttpServletRequest processed = processRequestBody(request, limits, maskingService);
+        boolean maskParameters = properties.isQueryStringMasking();
+        boolean maskHeaders = properties.isHeaderMasking();
+        if (processed == null || !maskParameters && !maskHeaders || maskingService.getPlan().getRules().isEmpty()) {
+            return processed;
+        }
+        return new MaskedParametersHttpServletRequest(processed, maskingService, maskParameters, maskHeaders);
+    }
+    
+    /**
+     * Оборачивает запрос, тело которого маскируется; null — запрос отклоняется по политике REJECT
+     */
+    private HttpServletRequest processRequestBody(HttpServletRequest request, BodyLimits limits,
+                                                  JsonMaskingService maskingService) {
+        BodyFormat format = mediaTypes.classify(request.getContentType());
+        if (format == null) {
             return request;
         }
         
-        // Читаем оригинальное тело запроса
-        byte[] originalBodyBytes = StreamUtils.copyToByteArray(request.getInputStream());
-        
-        if (originalBodyBytes.length == 0) {
+        // Заявленный размер уже больше допустимого или кодировку не распаковать — тело даже не читаем
+        if (limits.isOversized(request.getContentLengthLong())
+                || requestCoding(request) == ContentCoding.UNSUPPORTED) {
+            if (limits.isReject()) {
+                return null;
+            }
+            request.setAttribute(REQUEST_NOT_MASKED_ATTRIBUTE, Boolean.TRUE);
             return request;
         }
         
-        // Преобразуем в строку и маскируем
-        String originalBody = new String(originalBodyBytes, StandardCharsets.UTF_8);
-        String maskedBody = jsonMaskingService.maskJson(originalBody);
-        
-        // Создаем обертку с замаскированным телом
-        return new MaskedBodyHttpServletRequest(request, maskedBody);
+        // Тело читается и маскируется при первом обращении: блокирующе целиком
+        // или по мере поступления, если приложение читает через ReadListener
+        return new MaskedBodyHttpServletRequest(request, maskingService, limits, format);
     }
     
     /**
-     * Обрабатывает ответ: создает обертку для кэширования тела
+     * Маскирует буферизованное тело потоково: сегменты в памяти или временный файл
+     * через отображение в память. Результат пишется в новый буфер из того же пула,
+     * который тоже переносится на диск сверх порога. Если в теле в памяти нет
+     * настроенных полей или тело не JSON, возвращается исходный буфер.
+     *
+     * Сжатое тело распаковывается, маскируется и снова сжимается за один проход.
+     * Тело NDJSON маскируется по записям: каждая строка — отдельный документ,
+     * тело XML — потоково через StAX, форма — сканером закодированных байтов
+     *
+     * @param format формат тела по Content-Type
      */
-    private MaskedBodyHttpServletResponse processResponse(HttpServletResponse response) {
-        if (!properties.isResponseEnabled()) {
+    static BodyBuffer maskBuffered(JsonMaskingService maskingService, BodyBuffer original, BodyLimits limits,
+                                   ContentCoding coding, BodyFormat format) throws IOException {
+        if (coding != ContentCoding.IDENTITY) {
+            return maskCompressed(maskingService, original, limits, coding, format);
+        }
+        // Предварительная проверка ищет ключи JSON в кавычках, к XML и формам она неприменима
+        if (isJsonText(format) && original.isInMemory()
+                && !maskingService.mayContainMaskedField(original.chunks())) {
+            return original;
+        }
+        BodyBuffer masked = limits.newBuffer();
+        try {
+            if (format == BodyFormat.JSON && maskingService.prefersByteBuffer(original.size())) {
+                // Параллельной маскировке и кэшу результатов нужно тело одним буфером
+                maskingService.maskJson(original.toByteBuffer(), masked);
+            } else {
+                try (InputStream input = original.openInputStream()) {
+                    maskingService.mask(format, input, masked);
+                }
+            }
+        } catch (IOException e) {
+            masked.close();
+            return original;
+        }
+        original.close();
+        return masked;
+    }
+    
+    /**
+     * Сжатое тело: быстрая проверка по сжатым байтам невозможна, поэтому тело всегда
+     * распаковывается потоком и маскируется, а результат сразу сжимается в новый буфер
+     */
+    private static BodyBuffer maskCompressed(JsonMaskingService maskingService, BodyBuffer original,
+                                             BodyLimits limits, ContentCoding coding,
+                                             BodyFormat format) throws IOException {
+        BodyBuffer masked = limits.newBuffer();
+        try (InputStream input = coding.decode(original.openInputStream());
+             OutputStream output = coding.encode(StreamUtils.nonClosing(masked), limits.getCompressionLevel())) {
+            maskingService.mask(format, input, output);
+        } catch (IOException e) {
+            masked.close();
+            return original;
+        }
+        original.close();
+        return masked;
+    }
+    
+    /**
+     * Тело из JSON-документов, к которому применима предварительная проверка ключей
+     */
+    private static boolean isJsonText(BodyFormat format) {
+        return format == BodyFormat.JSON || format == BodyFormat.NDJSON;
+    }
+    
+    private static ContentCoding requestCoding(HttpServletRequest request) {
+        return ContentCoding.of(request.getHeader(ContentCoding.CONTENT_ENCODING_HEADER));
+    }
+    
+    /**
+     * Обрабатывает ответ: создает обертку, которая кэширует только JSON-тела
+     */
+    private MaskedBodyHttpServletResponse processResponse(HttpServletResponse response, BodyLimits limits,
+                                                          JsonMaskingService maskingService) {
+        if (!properties.isResponseEnabled() || maskingService.getPlan().isEmpty()) {
             return null;
         }
-        return new MaskedBodyHttpServletResponse(response);
+        if (properties.getResponseMode() == MaskingProperties.ResponseMode.STREAMING) {
+            return new MaskedBodyHttpServletResponse(response, maskingService, mediaTypes::classify, limits);
+        }
+        return new MaskedBodyHttpServletResponse(response, mediaTypes::classify, limits, maskingService);
+    }
+    
+    /**
+     * Тело ответа превысило допустимый размер или сжато неподдерживаемой кодировкой:
+     * при PASS_THROUGH оно уже ушло клиенту без маскировки, при REJECT — отброшено
+     * и заменяется ошибкой
+     */
+    private void processNotMaskedResponse(HttpServletRequest request, HttpServletResponse originalResponse,
+                                          BodyLimits limits) throws IOException {
+        if (!limits.isReject()) {
+            request.setAttribute(RESPONSE_NOT_MASKED_ATTRIBUTE, Boolean.TRUE);
+            return;
+        }
+        if (!originalResponse.isCommitted()) {
+            originalResponse.reset();
+            originalResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
     }
     
     /**
      * Обрабатывает ответ после выполнения фильтров: маскирует и записывает обратно
      */
     private void processResponseAfterFilter(MaskedBodyHttpServletResponse maskedResponse, 
-                                           HttpServletResponse originalResponse) throws IOException {
+                                           HttpServletResponse originalResponse,
+                                           BodyLimits limits,
+                                           JsonMaskingService maskingService) throws IOException {
         if (!properties.isResponseEnabled()) {
             return;
         }
         
-        String responseBody = maskedResponse.getCachedBodyAsString();
-        if (responseBody == null || responseBody.isEmpty()) {
+        long bodySize = maskedResponse.getCachedBodySize();
+        if (bodySize == 0) {
             return;
         }
         
-        // Проверяем, является ли контент JSON
-        String contentType = maskedResponse.getContentType();
-        if (!isJsonContent(contentType)) {
+        // Проверяем, маскируется ли тело с таким Content-Type
+        BodyFormat format = mediaTypes.classify(maskedResponse.getContentType());
+        if (format == null) {
             // Если не JSON, просто копируем как есть
-            byte[] bodyBytes = maskedResponse.getCachedBodyAsBytes();
-            if (bodyBytes.length > 0 && !originalResponse.isCommitted()) {
-                originalResponse.setContentLength(bodyBytes.length);
-                originalResponse.getOutputStream().write(bodyBytes);
-                originalResponse.getOutputStream().flush();
+            if (!originalResponse.isCommitted()) {
+                originalResponse.setContentLengthLong(bodySize);
+                maskedResponse.writeCachedBody();
+                maskedResponse.originalOutput().flush();
             }
             return;
         }
         
-        // Маскируем JSON ответ
-        String maskedResponseBody = jsonMaskingService.maskJson(responseBody);
-        
-        // Записываем замаскированное тело обратно в оригинальный response
-        if (!originalResponse.isCommitted()) {
-            byte[] maskedBytes = maskedResponseBody.getBytes(StandardCharsets.UTF_8);
-            originalResponse.setContentLength(maskedBytes.length);
-            originalResponse.getOutputStream().write(maskedBytes);
-            originalResponse.getOutputStream().flush();
-        }
-    }
-    
-    /**
-     * Проверяет, является ли контент JSON
-     * Оптимизировано: быстрая проверка без лишних операций
-     */
-    private boolean isJsonContent(String contentType) {
-        if (contentType == null) {
-            return false;
+        // Маскируем JSON ответ из сегментов или временного файла, не копируя его в массив
+        BodyBuffer maskedBody = maskBuffered(maskingService, maskedResponse.takeCachedBody(), limits,
+                ContentCoding.of(maskedResponse.getHeader(ContentCoding.CONTENT_ENCODING_HEADER)), format);
+        if (originalResponse.isCommitted()) {
+            maskedBody.close();
+            return;
         }
-        // startsWith уже покрывает contains, поэтому достаточно одной проверки
-        return contentType.startsWith("application/json");
+        // Записываем замаскированное тело обратно в оригинальный response. Буфер закрывает
+        // обертка: в неблокирующем режиме он дописывается уже после выхода из фильтра
+        originalResponse.setContentLengthLong(maskedBody.size());
+        maskedResponse.writeBody(maskedBody);
+        maskedResponse.originalOutput().flush();
     }
     
     /**
@@ -140,8 +576,9 @@ public class MaskingFilter extends OncePerRequestFilter {
      * Может использоваться для логирования
      */
     public String getMaskedRequestBody(HttpServletRequest request) {
-        if (request instanceof MaskedBodyHttpServletRequest) {
-            MaskedBodyHttpServletRequest maskedRequest = (MaskedBodyHttpServletRequest) request;
+        MaskedBodyHttpServletRequest maskedRequest =
+                WebUtils.getNativeRequest(request, MaskedBodyHttpServletRequest.class);
+        if (maskedRequest != null) {
             try {
                 byte[] bodyBytes = StreamUtils.copyToByteArray(maskedRequest.getInputStream());
                 return new String(bodyBytes, StandardCharsets.UTF_8);
@@ -163,4 +600,35 @@ public class MaskingFilter extends OncePerRequestFilter {
         }
         return null;
     }
+    
+    /**
+     * Ставит копию асинхронного обмена в очередь аудита при его завершении
+     */
+    private static final class AuditCompletionListener implements AsyncListener {
+        
+        private final Runnable submit;
+        
+        AuditCompletionListener(Runnable submit) {
+            this.submit = submit;
+        }
+        
+        @Override
+        public void onComplete(AsyncEvent event) {
+            submit.run();
+        }
+        
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+        
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+        
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Повторный startAsync снимает слушателей, регистрируемся снова
+            event.getAsyncContext().addListener(this);
+        }
+    }
 }
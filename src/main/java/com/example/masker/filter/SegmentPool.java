@@ -0,0 +1,128 @@
+package com.example.masker.filter;
+
+import com.example.masker.metrics.MaskingMetrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный пул сегментов одинакового размера, из которых собираются буферы тел
+ * запросов и ответов.
+ *
+ * Пул общий для всех потоков и не использует ThreadLocal: с виртуальными потоками
+ * поток-локальный кэш создавался бы на каждый запрос и ничего бы не переиспользовал.
+ * Очередь неблокирующая, поэтому захват сегмента не закрепляет виртуальный поток
+ * за несущим. Если пул пуст, сегмент выделяется заново; если полон — возвращённый
+ * сегмент отдаётся сборщику мусора.
+ *
+ * Сегменты не очищаются при возврате: буфер читает только то, что записал сам.
+ */
+public final class SegmentPool {
+    
+    /** Размер сегмента по умолчанию */
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024;
+    
+    private final int segmentSize;
+    private final int maxPooledSegments;
+    private final Queue<byte[]> segments = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    /**
+     * @param segmentSize размер сегмента в байтах
+     * @param maxPooledSegments сколько свободных сегментов хранить; 0 — не переиспользовать
+     */
+    public SegmentPool(int segmentSize, int maxPooledSegments) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        if (maxPooledSegments < 0) {
+            throw new IllegalArgumentException("maxPooledSegments must not be negative: " + maxPooledSegments);
+        }
+        this.segmentSize = segmentSize;
+        this.maxPooledSegments = maxPooledSegments;
+    }
+    
+    /**
+     * Берёт свободный сегмент из пула или выделяет новый
+     */
+    byte[] acquire() {
+        byte[] segment = segments.poll();
+        if (segment != null) {
+            pooled.decrementAndGet();
+            hits.increment();
+            return segment;
+        }
+        misses.increment();
+        return new byte[segmentSize];
+    }
+    
+    /**
+     * Возвращает сегмент в пул. Сегмент чужого размера или сверх лимита отбрасывается
+     */
+    void release(byte[] segment) {
+        if (segment.length != segmentSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooledSegments) {
+            pooled.decrementAndGet();
+            return;
+        }
+        segments.offer(segment);
+    }
+    
+    /**
+     * Публикует счётчики пула через метрики
+     */
+    void bindMetrics(MaskingMetrics metrics) {
+        metrics.bindBufferPool(hits, misses, pooled, segmentSize);
+    }
+    
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+    
+    public int getMaxPooledSegments() {
+        return maxPooledSegments;
+    }
+    
+    /**
+     * Сколько свободных сегментов сейчас в пуле
+     */
+    public int getPooledSegments() {
+        return Math.max(pooled.get(), 0);
+    }
+    
+    /**
+     * Сколько байт занимают свободные сегменты пула
+     */
+    public long getPooledBytes() {
+        return (long) getPooledSegments() * segmentSize;
+    }
+    
+    /**
+     * Сколько раз сегмент взят из пула
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    /**
+     * Сколько раз сегмент пришлось выделить заново
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    /**
+     * Доля запросов сегмента, обслуженных пулом, от 0 до 1
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
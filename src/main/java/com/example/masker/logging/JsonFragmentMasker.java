@@ -0,0 +1,156 @@
+package com.example.masker.logging;
+
+import com.example.masker.service.JsonMaskingService;
+
+import java.util.Arrays;
+
+/**
+ * Маскирует JSON-фрагменты внутри произвольного текста, например строки лога
+ * {@code "POST /login body={"password":"secret"} took 12ms"}.
+ *
+ * Текст просматривается один раз: сбалансированные пары {@code {}} и {@code []}
+ * отслеживаются с учётом строк и escape-последовательностей, и каждый найденный
+ * фрагмент верхнего уровня маскируется на месте через {@link JsonMaskingService}.
+ * Текст между фрагментами копируется в выходной StringBuilder как есть, строка
+ * не разбивается на части и не склеивается заново.
+ *
+ * Если внешняя скобка так и не закрылась или закрылась не той скобкой, её уже
+ * закрытые вложенные фрагменты всё равно маскируются. Фрагменты, которые не являются
+ * JSON или не содержат настроенных полей, остаются без изменений.
+ *
+ * Экземпляр не хранит состояния между вызовами и потокобезопасен.
+ */
+public final class JsonFragmentMasker {
+
+    private final JsonMaskingService maskingService;
+
+    public JsonFragmentMasker(JsonMaskingService maskingService) {
+        this.maskingService = maskingService;
+    }
+
+    /**
+     * Маскирует фрагменты в тексте и возвращает результат
+     */
+    public String mask(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        mask(text, out);
+        return out.toString();
+    }
+
+    /**
+     * Маскирует фрагменты в тексте и дописывает результат в out. Буфер можно
+     * переиспользовать между вызовами, сбрасывая его через {@code setLength(0)}
+     */
+    public void mask(CharSequence text, StringBuilder out) {
+        Scan scan = new Scan(text, out);
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (scan.depth == 0) {
+                if (c == '{' || c == '[') {
+                    scan.open(i, c);
+                }
+                continue;
+            }
+            if (scan.inString) {
+                if (scan.escaped) {
+                    scan.escaped = false;
+                } else if (c == '\\') {
+                    scan.escaped = true;
+                } else if (c == '"') {
+                    scan.inString = false;
+                }
+                continue;
+            }
+            if (c == '"') {
+                scan.inString = true;
+            } else if (c == '{' || c == '[') {
+                scan.open(i, c);
+            } else if (c == '}' || c == ']') {
+                scan.close(i, c);
+            }
+        }
+        // Незакрытые скобки: маскируем то, что внутри успело закрыться
+        scan.abandon();
+        out.append(text, scan.copied, length);
+    }
+
+    /**
+     * Состояние одного прохода по тексту
+     */
+    private final class Scan {
+        final CharSequence text;
+        final StringBuilder out;
+        /** До какой позиции текст уже перенесён в out */
+        int copied;
+
+        /** Открытые скобки: позиция и ожидаемая закрывающая */
+        int[] starts = new int[8];
+        char[] closers = new char[8];
+        /** Сколько закрытых фрагментов было в pending при открытии скобки */
+        int[] pendingMarks = new int[8];
+        int depth;
+        boolean inString;
+        boolean escaped;
+
+        /** Закрытые фрагменты внутри ещё открытых скобок: пары начало / конец */
+        int[] pending = new int[8];
+        int pendingSize;
+
+        Scan(CharSequence text, StringBuilder out) {
+            this.text = text;
+            this.out = out;
+        }
+
+        void open(int position, char opener) {
+            if (depth == starts.length) {
+                starts = Arrays.copyOf(starts, depth * 2);
+                closers = Arrays.copyOf(closers, depth * 2);
+                pendingMarks = Arrays.copyOf(pendingMarks, depth * 2);
+            }
+            starts[depth] = position;
+            closers[depth] = opener == '{' ? '}' : ']';
+            pendingMarks[depth] = pendingSize;
+            depth++;
+        }
+
+        void close(int position, char closer) {
+            if (closers[depth - 1] != closer) {
+                abandon();
+                return;
+            }
+            depth--;
+            int start = starts[depth];
+            // Вложенные фрагменты входят в закрывшийся и отдельно не нужны
+            pendingSize = pendingMarks[depth];
+            if (depth == 0) {
+                emit(start, position + 1);
+                return;
+            }
+            if (pendingSize + 2 > pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[pendingSize++] = start;
+            pending[pendingSize++] = position + 1;
+        }
+
+        /**
+         * Отказ от открытых скобок: закрытые внутри них фрагменты маскируются по отдельности
+         */
+        void abandon() {
+            for (int i = 0; i < pendingSize; i += 2) {
+                emit(pending[i], pending[i + 1]);
+            }
+            pendingSize = 0;
+            depth = 0;
+            inString = false;
+            escaped = false;
+        }
+
+        private void emit(int start, int end) {
+            out.append(text, copied, start);
+            maskingService.maskJson(text, start, end, out);
+            copied = end;
+        }
+    }
+}
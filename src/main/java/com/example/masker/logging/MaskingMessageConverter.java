@@ -0,0 +1,141 @@
+package com.example.masker.logging;
+
+import ch.qos.logback.classic.pattern.MessageConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.example.masker.service.JsonMaskingService;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Конвертер Logback, который маскирует JSON-аргументы сообщений по правилам
+ * {@link JsonMaskingService}.
+ *
+ * Подключается в logback.xml вместо {@code %msg}:
+ * <pre>
+ * &lt;conversionRule conversionWord="maskedMsg"
+ *                 converterClass="com.example.masker.logging.MaskingMessageConverter"/&gt;
+ * &lt;pattern&gt;%d %-5level %logger - %maskedMsg{Request body={}, Response body={}}%n&lt;/pattern&gt;
+ * </pre>
+ * Опции задают шаблоны сообщений, аргументы которых маскируются полностью: строка,
+ * похожая на JSON, маскируется как JSON, остальные объекты (DTO, коллекции) сериализуются
+ * потоково через маскирующий генератор — без дерева и без незамаскированной копии.
+ * Простые значения (числа, даты, перечисления) не трогаются. Сообщения с другими
+ * шаблонами выводятся как есть.
+ *
+ * Без опций маскируются только строковые аргументы, похожие на JSON. Объекты
+ * не сериализуются: иначе менялся бы обычный вывод (URI, Map, сущности JPA), могла
+ * сработать ленивая загрузка, а каждое сообщение платило бы за сериализацию.
+ *
+ * Работа выполняется в {@link #convert}, то есть только когда аппендер действительно
+ * форматирует событие: отфильтрованные по уровню сообщения ничего не стоят.
+ *
+ * Logback создаёт конвертер сам, поэтому сервис передаётся через
+ * {@link #setMaskingService(JsonMaskingService)}. Пока сервис не задан,
+ * сообщение выводится как {@code %msg}.
+ */
+public class MaskingMessageConverter extends MessageConverter {
+
+    private static volatile JsonMaskingService maskingService;
+
+    /** Шаблоны сообщений, аргументы которых маскируются полностью; null — только JSON-строки */
+    private Set<String> templates;
+
+    /**
+     * Задаёт сервис, правила которого используют все конвертеры
+     */
+    public static void setMaskingService(JsonMaskingService service) {
+        maskingService = service;
+    }
+
+    @Override
+    public void start() {
+        List<String> options = getOptionList();
+        if (options != null && !options.isEmpty()) {
+            templates = new HashSet<>(options);
+        }
+        super.start();
+    }
+
+    @Override
+    public String convert(ILoggingEvent event) {
+        JsonMaskingService service = maskingService;
+        Object[] args = event.getArgumentArray();
+        String template = event.getMessage();
+        if (service == null || args == null || args.length == 0 || template == null) {
+            return event.getFormattedMessage();
+        }
+        boolean listed = templates != null && templates.contains(template);
+        if (templates != null && !listed) {
+            return event.getFormattedMessage();
+        }
+
+        // Шаблон форматируется заново из исходных аргументов, а не из готового сообщения
+        Object[] maskedArgs = null;
+        for (int i = 0; i < args.length; i++) {
+            Object masked = mask(service, args[i], listed);
+            if (masked != args[i]) {
+                if (maskedArgs == null) {
+                    maskedArgs = args.clone();
+                }
+                maskedArgs[i] = masked;
+            }
+        }
+        if (maskedArgs == null) {
+            return event.getFormattedMessage();
+        }
+        return MessageFormatter.arrayFormat(template, maskedArgs).getMessage();
+    }
+
+    /**
+     * Замаскированное представление аргумента или сам аргумент, если маскировать нечего
+     *
+     * @param serializeObjects сериализовать объекты, а не только JSON-строки
+     */
+    private static Object mask(JsonMaskingService service, Object arg, boolean serializeObjects) {
+        if (arg instanceof CharSequence) {
+            String text = arg.toString();
+            return looksLikeJson(text) ? service.maskJson(text) : arg;
+        }
+        if (arg == null || !serializeObjects || isPlainValue(arg)) {
+            return arg;
+        }
+        try {
+            return service.toMaskedJson(arg);
+        } catch (Exception e) {
+            // Объект не сериализуется в JSON — выводится как обычно
+            return arg;
+        }
+    }
+
+    private static boolean isPlainValue(Object arg) {
+        return arg instanceof Number || arg instanceof Boolean || arg instanceof Character
+                || arg instanceof Enum || arg instanceof Throwable || arg instanceof TemporalAccessor
+                || arg instanceof Date || arg instanceof UUID || arg instanceof Class;
+    }
+
+    /**
+     * Первый и последний непробельные символы — пара {@code {}} или {@code []}
+     */
+    private static boolean looksLikeJson(String text) {
+        int start = 0;
+        int end = text.length() - 1;
+        while (start <= end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end))) {
+            end--;
+        }
+        if (end <= start) {
+            return false;
+        }
+        char first = text.charAt(start);
+        char last = text.charAt(end);
+        return first == '{' && last == '}' || first == '[' && last == ']';
+    }
+}
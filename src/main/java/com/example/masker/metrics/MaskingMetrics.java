@@ -0,0 +1,61 @@
+package com.example.masker.metrics;
+
+import com.example.masker.config.MaskingProperties;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Источник метрик маскировки.
+ *
+ * Для каждой пары маршрут / направление выдаёт {@link MaskingRecorder}, через
+ * который сервис и фильтры сообщают о своей работе. Реализация по умолчанию
+ * {@link #NOOP} ничего не записывает; с Micrometer используется
+ * {@link MicrometerMaskingMetrics}. Интерфейс не зависит от Micrometer,
+ * поэтому зависимость остаётся опциональной.
+ */
+public interface MaskingMetrics {
+
+    /**
+     * Метрики отключены
+     */
+    MaskingMetrics NOOP = (route, direction) -> MaskingRecorder.NOOP;
+
+    /**
+     * Маршрут, который указывается, если запрос не попал ни в один профиль маршрута
+     */
+    String DEFAULT_ROUTE = "default";
+
+    /**
+     * Регистратор для маршрута и направления. Вызывается на каждый запрос,
+     * поэтому реализация должна кэшировать регистраторы
+     *
+     * @param route     шаблон маршрута или {@link #DEFAULT_ROUTE}
+     * @param direction направление; BOTH — вызов не из фильтра
+     */
+    MaskingRecorder recorder(String route, MaskingProperties.MaskingDirection direction);
+
+    /**
+     * Регистрирует показатели очереди аудита. Вызывается один раз при создании диспетчера;
+     * объекты принадлежат диспетчеру и живут, пока живёт он
+     *
+     * @param queue    очередь, её длина — текущая глубина
+     * @param dropped  сколько записей отброшено из-за переполнения
+     * @param failures сколько записей не удалось подготовить или доставить
+     */
+    default void bindAuditQueue(Collection<?> queue, LongAdder dropped, LongAdder failures) {
+    }
+
+    /**
+     * Регистрирует показатели пула сегментов буферов тел. Вызывается один раз при создании
+     * фильтра; объекты принадлежат пулу и живут, пока живёт он
+     *
+     * @param hits           сколько раз сегмент взят из пула
+     * @param misses         сколько раз сегмент пришлось выделить заново
+     * @param pooledSegments сколько свободных сегментов сейчас в пуле
+     * @param segmentSize    размер сегмента в байтах
+     */
+    default void bindBufferPool(LongAdder hits, LongAdder misses, AtomicInteger pooledSegments, int segmentSize) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.masker.metrics;
+
+/**
+ * Запись метрик одной пары маршрут / направление.
+ *
+ * Методы вызываются на горячем пути, поэтому реализация не должна выделять память
+ * и обращаться к реестру метрик при каждом вызове. По умолчанию методы ничего не делают.
+ */
+public interface MaskingRecorder {
+
+    /**
+     * Ничего не записывает
+     */
+    MaskingRecorder NOOP = new MaskingRecorder() {
+    };
+
+    /**
+     * Тело разобрано и замаскировано
+     *
+     * @param durationNanos время работы маскировщика; для потоковой маскировки — сумма
+     *                      времени внутри записи, без ожидания приложения
+     * @param bytesIn       размер исходного тела (для строк — в символах)
+     * @param bytesOut      размер результата (для строк — в символах)
+     */
+    default void recordMasking(long durationNanos, long bytesIn, long bytesOut) {
+    }
+
+    /**
+     * Значение замаскировано правилом
+     *
+     * @param rule имя поля или путь правила
+     */
+    default void recordFieldMasked(String rule) {
+    }
+
+    /**
+     * Тело пропущено без разбора: предварительная проверка не нашла настроенных полей
+     */
+    default void recordFastPathSkip() {
+    }
+
+    /**
+     * Тело не удалось разобрать, оно передано без маскировки или оборвано
+     */
+    default void recordParseFailure(Throwable cause) {
+    }
+
+    /**
+     * Результат маскировки взят из кэша одинаковых тел
+     */
+    default void recordCacheHit() {
+    }
+
+    /**
+     * Тела нет в кэше, оно разобрано
+     */
+    default void recordCacheMiss() {
+    }
+
+    /**
+     * Запись удалена из кэша
+     *
+     * @param cause {@code size} — вытеснена по размеру, {@code expired} — истекло время жизни
+     */
+    default void recordCacheEviction(String cause) {
+    }
+}
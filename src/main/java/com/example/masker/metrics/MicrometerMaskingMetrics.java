@@ -0,0 +1,191 @@
+package com.example.masker.metrics;
+
+import com.example.masker.config.MaskingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики маскировки в Micrometer.
+ *
+ * Все метры помечены тегами {@code route} и {@code direction}:
+ * <ul>
+ *   <li>{@code http.masking.duration} — время маскировки тела;</li>
+ *   <li>{@code http.masking.bytes.in} / {@code http.masking.bytes.out} — размер тела до и после;</li>
+ *   <li>{@code http.masking.fields} — замаскированные значения, тег {@code rule};</li>
+ *   <li>{@code http.masking.fast.path.skips} — тела, пропущенные без разбора;</li>
+ *   <li>{@code http.masking.parse.failures} — ошибки разбора, тег {@code cause};</li>
+ *   <li>{@code http.masking.cache.hits} / {@code http.masking.cache.misses} — обращения к кэшу результатов;</li>
+ *   <li>{@code http.masking.cache.evictions} — удалённые записи кэша, тег {@code cause}.</li>
+ * </ul>
+ *
+ * Очередь аудита описывается метрами без тегов маршрута: {@code http.masking.audit.queue.depth},
+ * {@code http.masking.audit.dropped} и {@code http.masking.audit.failures}.
+ *
+ * Метры создаются один раз на маршрут, направление и правило и кэшируются,
+ * поэтому на горячем пути остаются только поиск в хеш-таблице и инкремент.
+ */
+public class MicrometerMaskingMetrics implements MaskingMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<MaskingProperties.MaskingDirection, Map<String, Recorder>> recorders =
+            new EnumMap<>(MaskingProperties.MaskingDirection.class);
+
+    public MicrometerMaskingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (MaskingProperties.MaskingDirection direction : MaskingProperties.MaskingDirection.values()) {
+            recorders.put(direction, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public MaskingRecorder recorder(String route, MaskingProperties.MaskingDirection direction) {
+        Map<String, Recorder> byRoute = recorders.get(direction);
+        Recorder recorder = byRoute.get(route);
+        return recorder != null ? recorder : byRoute.computeIfAbsent(route, key -> new Recorder(key, direction));
+    }
+
+    @Override
+    public void bindAuditQueue(Collection<?> queue, LongAdder dropped, LongAdder failures) {
+        Gauge.builder("http.masking.audit.queue.depth", queue, Collection::size)
+                .description("Bodies waiting to be masked for audit")
+                .register(registry);
+        FunctionCounter.builder("http.masking.audit.dropped", dropped, LongAdder::sum)
+                .description("Audit records dropped because the queue was full")
+                .register(registry);
+        FunctionCounter.builder("http.masking.audit.failures", failures, LongAdder::sum)
+                .description("Audit records that could not be masked or delivered")
+                .register(registry);
+    }
+
+    @Override
+    public void bindBufferPool(LongAdder hits, LongAdder misses, AtomicInteger pooledSegments, int segmentSize) {
+        FunctionCounter.builder("http.masking.buffer.pool.hits", hits, LongAdder::sum)
+                .description("Body buffer segments taken from the pool")
+                .register(registry);
+        FunctionCounter.builder("http.masking.buffer.pool.misses", misses, LongAdder::sum)
+                .description("Body buffer segments allocated because the pool was empty")
+                .register(registry);
+        Gauge.builder("http.masking.buffer.pool.hit.rate", hits, h -> {
+                    long hitCount = h.sum();
+                    long total = hitCount + misses.sum();
+                    return total == 0 ? 0 : (double) hitCount / total;
+                })
+                .description("Share of segment requests served by the pool")
+                .register(registry);
+        Gauge.builder("http.masking.buffer.pool.size", pooledSegments,
+                        pooled -> (double) Math.max(pooled.get(), 0) * segmentSize)
+                .description("Bytes held by free segments in the pool")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private final class Recorder implements MaskingRecorder {
+        private final Tags tags;
+        private final Timer duration;
+        private final DistributionSummary bytesIn;
+        private final DistributionSummary bytesOut;
+        private final Counter fastPathSkips;
+        private final Counter cacheHits;
+        private final Counter cacheMisses;
+        private final Map<String, Counter> evictions = new ConcurrentHashMap<>();
+        private final Map<String, Counter> fields = new ConcurrentHashMap<>();
+        private final Map<Class<?>, Counter> failures = new ConcurrentHashMap<>();
+
+        Recorder(String route, MaskingProperties.MaskingDirection direction) {
+            this.tags = Tags.of("route", route, "direction", direction.name().toLowerCase(Locale.ROOT));
+            this.duration = Timer.builder("http.masking.duration")
+                    .description("Time spent masking a body")
+                    .tags(tags)
+                    .register(registry);
+            this.bytesIn = DistributionSummary.builder("http.masking.bytes.in")
+                    .description("Size of bodies before masking")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry);
+            this.bytesOut = DistributionSummary.builder("http.masking.bytes.out")
+                    .description("Size of bodies after masking")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry);
+            this.fastPathSkips = Counter.builder("http.masking.fast.path.skips")
+                    .description("Bodies passed through without parsing")
+                    .tags(tags)
+                    .register(registry);
+            this.cacheHits = Counter.builder("http.masking.cache.hits")
+                    .description("Bodies whose masked result was taken from the cache")
+                    .tags(tags)
+                    .register(registry);
+            this.cacheMisses = Counter.builder("http.masking.cache.misses")
+                    .description("Cacheable bodies that were not found in the cache")
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        @Override
+        public void recordMasking(long durationNanos, long in, long out) {
+            duration.record(durationNanos, TimeUnit.NANOSECONDS);
+            bytesIn.record(in);
+            bytesOut.record(out);
+        }
+
+        @Override
+        public void recordFieldMasked(String rule) {
+            Counter counter = fields.get(rule);
+            if (counter == null) {
+                counter = fields.computeIfAbsent(rule, key -> Counter.builder("http.masking.fields")
+                        .description("Values masked by a rule")
+                        .tags(tags)
+                        .tag("rule", key)
+                        .register(registry));
+            }
+            counter.increment();
+        }
+
+        @Override
+        public void recordFastPathSkip() {
+            fastPathSkips.increment();
+        }
+
+        @Override
+        public void recordParseFailure(Throwable cause) {
+            failures.computeIfAbsent(cause.getClass(), type -> Counter.builder("http.masking.parse.failures")
+                    .description("Bodies that could not be parsed and were not masked")
+                    .tags(tags)
+                    .tag("cause", type.getSimpleName())
+                    .register(registry)).increment();
+        }
+
+        @Override
+        public void recordCacheHit() {
+            cacheHits.increment();
+        }
+
+        @Override
+        public void recordCacheMiss() {
+            cacheMisses.increment();
+        }
+
+        @Override
+        public void recordCacheEviction(String cause) {
+            evictions.computeIfAbsent(cause, key -> Counter.builder("http.masking.cache.evictions")
+                    .description("Entries removed from the masked result cache")
+                    .tags(tags)
+                    .tag("cause", key)
+                    .register(registry)).increment();
+        }
+    }
+}
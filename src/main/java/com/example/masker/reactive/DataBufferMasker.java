@@ -0,0 +1,138 @@
+package com.example.masker.reactive;
+
+import com.example.masker.filter.ContentCoding;
+import com.example.masker.filter.MaskingBodyOutputStream;
+import com.example.masker.service.BodyFormat;
+import com.example.masker.service.JsonMaskingService;
+import com.example.masker.service.MaskingJsonOutputStream;
+import com.example.masker.service.MaskingNdjsonOutputStream;
+import com.example.masker.service.MaskingXmlOutputStream;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Маскирует поток {@link DataBuffer} по частям.
+ *
+ * Каждая входящая порция передаётся маскирующему потоку для формата тела
+ * ({@link MaskingJsonOutputStream} для JSON); всё, что к этому моменту замаскировано, сразу
+ * уходит дальше одной выходной порцией. JSON-тело целиком не собирается, поэтому
+ * backpressure сохраняется, а память ограничена недочитанным токеном и отложенными
+ * объектами code / codeValue.
+ *
+ * NDJSON маскируется {@link MaskingNdjsonOutputStream} по записям: порция уходит
+ * дальше, как только в ней завершилась хотя бы одна запись.
+ *
+ * Исключение — XML: StAX не умеет разбирать документ по порциям, поэтому
+ * {@link MaskingXmlOutputStream} накапливает тело (сверх max-in-memory-body-size —
+ * во временном файле) и отдаёт результат одной порцией в конце. Тело больше
+ * max-body-size обрабатывается по oversize-policy. Если поток оборвался ошибкой
+ * или отменой, накопленное освобождается.
+ *
+ * Тело с Content-Encoding gzip или deflate проходит через {@link MaskingBodyOutputStream},
+ * как в сервлетном фильтре: порции распаковываются, маскируются и снова сжимаются
+ * по мере поступления.
+ */
+final class DataBufferMasker {
+
+    private final MaskingBodyOutputStream maskingStream;
+    private final ByteArrayOutputStream masked = new ByteArrayOutputStream();
+    private final DataBufferFactory bufferFactory;
+
+    private DataBufferMasker(JsonMaskingService maskingService, DataBufferFactory bufferFactory,
+                             BodyFormat format, ContentCoding coding, int compressionLevel) throws IOException {
+        this.maskingStream = new MaskingBodyOutputStream(maskingService, coding, masked, compressionLevel, format);
+        this.bufferFactory = bufferFactory;
+    }
+
+    /**
+     * Возвращает замаскированный поток. Состояние разбора создаётся на каждую подписку
+     *
+     * @param format           формат тела, определяет маскирующий поток
+     * @param coding           кодировка тела из Content-Encoding, кроме UNSUPPORTED
+     * @param compressionLevel уровень повторного сжатия 0–9
+     */
+    static Flux<DataBuffer> mask(Publisher<? extends DataBuffer> body, JsonMaskingService maskingService,
+                                 DataBufferFactory bufferFactory, BodyFormat format, ContentCoding coding,
+                                 int compressionLevel) {
+        return Flux.defer(() -> {
+            DataBufferMasker masker;
+            try {
+                masker = new DataBufferMasker(maskingService, bufferFactory, format, coding, compressionLevel);
+            } catch (IOException e) {
+                return Flux.error(e);
+            }
+            return Flux.from(body)
+                    .<DataBuffer>handle((buffer, sink) -> {
+                        try {
+                            DataBuffer output = masker.write(buffer);
+                            if (output != null) {
+                                sink.next(output);
+                            }
+                        } catch (IOException e) {
+                            sink.error(e);
+                        }
+                    })
+                    .concatWith(Mono.fromCallable(masker::finish))
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            masker.discard();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Передаёт порцию маскировщику и возвращает то, что уже замаскировано (или null)
+     */
+    private DataBuffer write(DataBuffer buffer) throws IOException {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            maskingStream.write(bytes, 0, bytes.length);
+            maskingStream.flush();
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return drain();
+    }
+
+    /**
+     * Завершает документ и возвращает его хвост. Mono.fromCallable не пропускает null,
+     * поэтому пустой хвост — пустая порция
+     */
+    private DataBuffer finish() {
+        try {
+            maskingStream.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        DataBuffer tail = drain();
+        return tail != null ? tail : bufferFactory.allocateBuffer(0);
+    }
+
+    private void discard() {
+        try {
+            maskingStream.discard();
+        } catch (IOException e) {
+            // Временный файл не удалился; на результат это не влияет
+        }
+    }
+
+    private DataBuffer drain() {
+        if (masked.size() == 0) {
+            return null;
+        }
+        DataBuffer output = bufferFactory.wrap(masked.toByteArray());
+        masked.reset();
+        return output;
+    }
+}
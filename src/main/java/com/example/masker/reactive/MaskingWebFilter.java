@@ -0,0 +1,274 @@
+package com.example.masker.reactive;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.filter.ContentCoding;
+import com.example.masker.service.BodyFormat;
+import com.example.masker.service.JsonMaskingService;
+import com.example.masker.service.MediaTypeClassifier;
+import com.example.masker.service.RouteMasking;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.FormHttpMessageReader;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Реактивный аналог {@link com.example.masker.filter.MaskingFilter} для Spring WebFlux.
+ *
+ * Тела запросов и ответов маскируются по мере прохождения порций {@link DataBuffer}
+ * неблокирующим парсером по тем же правилам {@link JsonMaskingService}. Тело целиком
+ * не собирается, поэтому backpressure и память на запрос не зависят от размера тела.
+ * Content-Length замаскированных тел не передаётся: длина может измениться.
+ * Профили маршрутов выбираются так же, как в сервлетном фильтре.
+ *
+ * Тела с Content-Encoding gzip и deflate распаковываются, маскируются и снова сжимаются
+ * по порциям. Тело в кодировке, которую распаковать нельзя, как и в сервлетном фильтре,
+ * обрабатывается по oversize-policy: передаётся без маскировки с атрибутом
+ * {@link #REQUEST_NOT_MASKED_ATTRIBUTE} / {@link #RESPONSE_NOT_MASKED_ATTRIBUTE}
+ * или отклоняется (415 для запроса, 500 для ответа).
+ *
+ * Данные формы ({@link ServerWebExchange#getFormData()}, привязка {@code @ModelAttribute})
+ * разбираются из замаскированного тела, как и в сервлетном фильтре, где
+ * getParameter*() видят замаскированные значения.
+ */
+public class MaskingWebFilter implements WebFilter {
+
+    /**
+     * Атрибут обмена: тело запроса сжато кодировкой, которую нельзя распаковать,
+     * и передано без маскировки
+     */
+    public static final String REQUEST_NOT_MASKED_ATTRIBUTE = MaskingWebFilter.class.getName() + ".REQUEST_NOT_MASKED";
+
+    /**
+     * Атрибут обмена: тело ответа сжато кодировкой, которую нельзя распаковать,
+     * и передано без маскировки
+     */
+    public static final String RESPONSE_NOT_MASKED_ATTRIBUTE = MaskingWebFilter.class.getName() + ".RESPONSE_NOT_MASKED";
+
+    private static final ResolvableType FORM_DATA_TYPE =
+            ResolvableType.forClassWithGenerics(MultiValueMap.class, String.class, String.class);
+    private static final FormHttpMessageReader FORM_READER = new FormHttpMessageReader();
+
+    private final MaskingProperties properties;
+    private final JsonMaskingService jsonMaskingService;
+    /** Какие тела маскируются и в каком формате, по Content-Type */
+    private final MediaTypeClassifier mediaTypes;
+
+    public MaskingWebFilter(MaskingProperties properties, JsonMaskingService jsonMaskingService) {
+        this.properties = properties;
+        this.jsonMaskingService = jsonMaskingService;
+        this.mediaTypes = MediaTypeClassifier.compile(properties);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerWebExchange.Builder builder = exchange.mutate();
+
+        // Правила маршрута; маршрут без правил обходится без декораторов
+        ServerHttpRequest request = exchange.getRequest();
+        RouteMasking routeMasking = jsonMaskingService.forRequest(request.getMethod().name(),
+                () -> request.getPath().pathWithinApplication());
+        JsonMaskingService requestMasking = routeMasking.getRequest();
+        JsonMaskingService responseMasking = routeMasking.getResponse();
+
+        // Обработка запроса
+        BodyFormat requestFormat = bodyFormat(request.getHeaders());
+        boolean maskRequest = properties.isRequestEnabled() && !requestMasking.getPlan().isEmpty()
+                && requestFormat != null;
+        ContentCoding requestCoding = ContentCoding.of(request.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        if (maskRequest && requestCoding == ContentCoding.UNSUPPORTED) {
+            // Кодировку не распаковать: по политике отклоняем запрос или пропускаем тело с атрибутом
+            if (isReject()) {
+                exchange.getResponse().setStatusCode(HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+                return exchange.getResponse().setComplete();
+            }
+            exchange.getAttributes().put(REQUEST_NOT_MASKED_ATTRIBUTE, Boolean.TRUE);
+            maskRequest = false;
+        }
+        if (maskRequest) {
+            builder.request(new MaskingRequest(request, requestMasking, exchange.getResponse().bufferFactory(),
+                    requestFormat, requestCoding));
+        }
+
+        // Обработка ответа
+        if (properties.isResponseEnabled() && !responseMasking.getPlan().isEmpty()) {
+            builder.response(new MaskingResponse(exchange.getResponse(), responseMasking, exchange.getAttributes()));
+        }
+
+        ServerWebExchange filtered = builder.build();
+        if (maskRequest && requestFormat == BodyFormat.FORM && isUrlEncoded(request.getHeaders())) {
+            filtered = new MaskedFormExchange(filtered);
+        }
+        return chain.filter(filtered);
+    }
+
+    /**
+     * Тело в кодировке, которую нельзя распаковать, отклоняется, а не передаётся без маскировки
+     */
+    private boolean isReject() {
+        return properties.getOversizePolicy() == MaskingProperties.OversizePolicy.REJECT;
+    }
+
+    /**
+     * Формат тела по заголовку Content-Type или null, если тело не маскируется
+     */
+    private BodyFormat bodyFormat(HttpHeaders headers) {
+        return mediaTypes.classify(headers.getFirst(HttpHeaders.CONTENT_TYPE));
+    }
+
+    /**
+     * Разбирает ли WebFlux тело с таким Content-Type в getFormData()
+     */
+    private static boolean isUrlEncoded(HttpHeaders headers) {
+        try {
+            MediaType contentType = headers.getContentType();
+            return contentType != null && MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Обмен, данные формы которого разбираются из замаскированного тела. mutate() оставляет
+     * getFormData() за исходным обменом, а тот читает исходное тело — без этой обертки
+     * привязка {@code @ModelAttribute} видела бы значения без маскировки
+     */
+    private static final class MaskedFormExchange extends ServerWebExchangeDecorator {
+        private final Mono<MultiValueMap<String, String>> formData;
+
+        MaskedFormExchange(ServerWebExchange delegate) {
+            super(delegate);
+            this.formData = FORM_READER.readMono(FORM_DATA_TYPE, delegate.getRequest(), Collections.emptyMap())
+                    .switchIfEmpty(Mono.fromSupplier(LinkedMultiValueMap::new))
+                    .cache();
+        }
+
+        @Override
+        public Mono<MultiValueMap<String, String>> getFormData() {
+            return formData;
+        }
+    }
+
+    /**
+     * Запрос, тело которого маскируется при чтении
+     */
+    private final class MaskingRequest extends ServerHttpRequestDecorator {
+        private final HttpHeaders headers;
+        private final JsonMaskingService maskingService;
+        private final DataBufferFactory bufferFactory;
+        private final BodyFormat format;
+        private final ContentCoding coding;
+
+        MaskingRequest(ServerHttpRequest delegate, JsonMaskingService maskingService,
+                       DataBufferFactory bufferFactory, BodyFormat format, ContentCoding coding) {
+            super(delegate);
+            this.maskingService = maskingService;
+            this.bufferFactory = bufferFactory;
+            this.format = format;
+            this.coding = coding;
+            HttpHeaders copy = new HttpHeaders();
+            copy.putAll(delegate.getHeaders());
+            copy.remove(HttpHeaders.CONTENT_LENGTH);
+            this.headers = HttpHeaders.readOnlyHttpHeaders(copy);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return DataBufferMasker.mask(super.getBody(), maskingService, bufferFactory, format, coding,
+                    properties.getCompressionLevel());
+        }
+    }
+
+    /**
+     * Ответ, JSON-тело которого маскируется при записи. Решение принимается
+     * при записи тела, когда Content-Type уже выставлен
+     */
+    private final class MaskingResponse extends ServerHttpResponseDecorator {
+        private final JsonMaskingService maskingService;
+        private final Map<String, Object> attributes;
+
+        MaskingResponse(ServerHttpResponse delegate, JsonMaskingService maskingService,
+                        Map<String, Object> attributes) {
+            super(delegate);
+            this.maskingService = maskingService;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            BodyFormat format = bodyFormat(getHeaders());
+            if (format == null) {
+                return super.writeWith(body);
+            }
+            ContentCoding coding = ContentCoding.of(getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            if (coding == ContentCoding.UNSUPPORTED) {
+                return isReject() ? reject(Flux.from(body)) : super.writeWith(passUnmasked(body));
+            }
+            getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+            return super.writeWith(DataBufferMasker.mask(body, maskingService, bufferFactory(), format, coding,
+                    properties.getCompressionLevel()));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            BodyFormat format = bodyFormat(getHeaders());
+            if (format == null) {
+                return super.writeAndFlushWith(body);
+            }
+            ContentCoding coding = ContentCoding.of(getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            if (coding == ContentCoding.UNSUPPORTED) {
+                return isReject() ? reject(Flux.from(body).concatMap(Flux::from))
+                        : super.writeAndFlushWith(passUnmasked(body));
+            }
+            getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+            // Порции с явным flush образуют один документ: маскируем их общим потоком
+            Flux<DataBuffer> masked = DataBufferMasker.mask(Flux.from(body).concatMap(Flux::from),
+                    maskingService, bufferFactory(), format, coding, properties.getCompressionLevel());
+            return super.writeAndFlushWith(masked.map(Mono::just));
+        }
+
+        /**
+         * Кодировку нельзя распаковать, политика PASS_THROUGH: тело уходит как есть с атрибутом
+         */
+        private <T> T passUnmasked(T body) {
+            attributes.put(RESPONSE_NOT_MASKED_ATTRIBUTE, Boolean.TRUE);
+            return body;
+        }
+
+        /**
+         * Кодировку нельзя распаковать, политика REJECT: тело отбрасывается, ответ заменяется ошибкой
+         */
+        private Mono<Void> reject(Flux<? extends DataBuffer> body) {
+            getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+            getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            getHeaders().remove(HttpHeaders.CONTENT_TYPE);
+            setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
+            return body.doOnNext(DataBufferUtils::release).then(Mono.defer(this::setComplete));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.masker.service;
+
+/**
+ * Формат тела: от него зависит, как тело маскируется.
+ * Определяется по Content-Type через {@link MediaTypeClassifier}
+ */
+public enum BodyFormat {
+    /** Один JSON-документ */
+    JSON,
+
+    /** JSON-записи по одной в строке (NDJSON, JSON Lines) */
+    NDJSON,
+
+    /** XML-документ, в том числе SOAP-конверт */
+    XML,
+
+    /** Параметры формы application/x-www-form-urlencoded */
+    FORM
+}
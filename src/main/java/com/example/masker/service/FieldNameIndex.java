@@ -0,0 +1,68 @@
+package com.example.masker.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Поиск правила по имени поля, записанному байтами UTF-8, без создания строк.
+ *
+ * Открытая адресация: таблица вдвое больше числа имён, хеш FNV-1a считается прямо
+ * по диапазону массива, совпадение проверяется побайтовым сравнением. Используется
+ * сканером форм, которому имена параметров приходят в сыром виде. Неизменяем,
+ * потокобезопасен.
+ */
+final class FieldNameIndex {
+
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final byte[][] names;
+    private final FieldRule[] rules;
+    private final int mask;
+
+    private FieldNameIndex(byte[][] names, FieldRule[] rules) {
+        this.names = names;
+        this.rules = rules;
+        this.mask = names.length - 1;
+    }
+
+    static FieldNameIndex compile(Map<String, FieldRule> rules) {
+        int capacity = Integer.highestOneBit(Math.max(rules.size(), 1) * 2 + 1) << 1;
+        byte[][] names = new byte[capacity][];
+        FieldRule[] values = new FieldRule[capacity];
+        for (Map.Entry<String, FieldRule> entry : rules.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int slot = hash(name, 0, name.length) & (capacity - 1);
+            while (names[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            names[slot] = name;
+            values[slot] = entry.getValue();
+        }
+        return new FieldNameIndex(names, values);
+    }
+
+    /**
+     * Правило для имени {@code b[offset, offset + length)} или null
+     */
+    FieldRule find(byte[] b, int offset, int length) {
+        int slot = hash(b, offset, length) & mask;
+        byte[] name;
+        while ((name = names[slot]) != null) {
+            if (Arrays.equals(name, 0, name.length, b, offset, offset + length)) {
+                return rules[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(byte[] b, int offset, int length) {
+        int hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (b[i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import lombok.Getter;
+
+/**
+ * Скомпилированное правило маскировки поля.
+ *
+ * Символ маскировки и диапазон вычисляются один раз при построении
+ * {@link MaskingPlan}, поэтому применение правила — только цикл по символам.
+ */
+@Getter
+public final class FieldRule {
+
+    /**
+     * Способ маскировки значения
+     */
+    public enum Strategy {
+        /** Маскируется всё значение */
+        FULL,
+        /** Маскируется диапазон [startIndex, endIndex) */
+        RANGE
+    }
+
+    /**
+     * Имя поля или путь, для которого задано правило
+     */
+    private final String fieldName;
+    private final Strategy strategy;
+    private final char maskChar;
+
+    /**
+     * Начальный индекс маскировки (включительно, 0-based)
+     */
+    private final int startIndex;
+
+    /**
+     * Конечный индекс маскировки (исключительно); {@link Integer#MAX_VALUE} — до конца строки
+     */
+    private final int endIndex;
+
+    private FieldRule(String fieldName, Strategy strategy, char maskChar, int startIndex, int endIndex) {
+        this.fieldName = fieldName;
+        this.strategy = strategy;
+        this.maskChar = maskChar;
+        this.startIndex = startIndex;
+        this.endIndex = endIndex;
+    }
+
+    /**
+     * Компилирует правило из конфигурации поля
+     */
+    static FieldRule compile(MaskingProperties.FieldMaskingConfig config, char defaultMaskChar) {
+        char maskChar = config.getMaskChar() != null ? config.getMaskChar() : defaultMaskChar;
+        String fieldName = config.getPath() != null ? config.getPath() : config.getFieldName();
+        if (config.isMaskAll()) {
+            return new FieldRule(fieldName, Strategy.FULL, maskChar, 0, Integer.MAX_VALUE);
+        }
+        Integer cfgStart = config.getMaskStartIndex();
+        Integer cfgEnd = config.getMaskEndIndex();
+        int startIndex = cfgStart != null ? Math.max(0, cfgStart) : 0;
+        int endIndex = cfgEnd != null ? cfgEnd : Integer.MAX_VALUE;
+        return new FieldRule(fieldName, Strategy.RANGE, maskChar, startIndex, endIndex);
+    }
+
+    /**
+     * Маскирует первые length символов буфера на месте
+     *
+     * @return true, если хотя бы один символ был заменён
+     */
+    public boolean mask(char[] value, int length) {
+        int start = startIndex;
+        int end = Math.min(length, endIndex);
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            value[i] = maskChar;
+        }
+        return true;
+    }
+
+    /**
+     * Маскирует строку
+     */
+    public String mask(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        char[] chars = value.toCharArray();
+        return mask(chars, chars.length) ? new String(chars) : value;
+    }
+}
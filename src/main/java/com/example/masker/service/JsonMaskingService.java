@@ -1,28 +1,147 @@
 package com.example.masker.service;
 
 import com.example.masker.config.MaskingProperties;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.example.masker.metrics.MaskingMetrics;
+import com.example.masker.metrics.MaskingRecorder;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.springframework.http.server.PathContainer;
 
-import java.util.HashMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * Сервис для маскировки данных в JSON на основе конфигурации
+ *
+ * Правила компилируются в неизменяемый {@link MaskingPlan} при создании сервиса.
+ * План заменяется атомарно через {@link #reload()}, поэтому поля можно добавлять
+ * без перезапуска: каждый вызов маскировки работает с одним и тем же планом
+ * от начала до конца.
+ *
+ * Метрики пишутся через {@link MaskingMetrics}; регистратор выбирается по маршруту
+ * и направлению в {@link #forRequest}, {@link #forRoute} и {@link #forDirection}.
  */
-@RequiredArgsConstructor
 public class JsonMaskingService {
     
-    private static final String CODE_FIELD = "code";
-    private static final String CODE_VALUE_FIELD = "codeValue";
-    
     private final MaskingProperties properties;
     private final ObjectMapper objectMapper;
-    private Map<String, MaskingProperties.FieldMaskingConfig> fieldConfigMap;
+    private final AtomicReference<MaskingPlan> plan;
+    /** Сервис, из плана которого выбран маршрут; null — это корневой сервис */
+    private final JsonMaskingService parent;
+    
+    private final LongAdder preScanHits;
+    private final LongAdder preScanMisses;
+    
+    private final MaskingMetrics metrics;
+    private final MaskingRecorder recorder;
+    
+    /** Параллельная маскировка массивов; создаётся корневым сервисом при первом использовании */
+    private volatile ParallelArrayMasker parallelMasker;
+    
+    /** Кэш результатов для одинаковых тел; null — кэш выключен. Общий с сервисами маршрутов */
+    private final MaskedBodyCache resultCache;
+    
+    public JsonMaskingService(MaskingProperties properties, ObjectMapper objectMapper) {
+        this(properties, objectMapper, MaskingMetrics.NOOP);
+    }
+    
+    public JsonMaskingService(MaskingProperties properties, ObjectMapper objectMapper, MaskingMetrics metrics) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.plan = new AtomicReference<>(MaskingPlan.compile(properties));
+        this.parent = null;
+        this.preScanHits = new LongAdder();
+        this.preScanMisses = new LongAdder();
+        this.metrics = metrics;
+        this.recorder = metrics.recorder(MaskingMetrics.DEFAULT_ROUTE, MaskingProperties.MaskingDirection.BOTH);
+        this.resultCache = properties.isResultCacheEnabled()
+                ? new MaskedBodyCache(properties.getResultCacheMaxSize().toBytes(),
+                        properties.getResultCacheMaxEntrySize().toBytes(), properties.getResultCacheTtl(), recorder)
+                : null;
+    }
+    
+    /**
+     * Сервис с зафиксированным планом маршрута; счётчики общие с корневым сервисом
+     */
+    private JsonMaskingService(JsonMaskingService parent, MaskingPlan routePlan, MaskingRecorder recorder) {
+        this.properties = parent.properties;
+        this.objectMapper = parent.objectMapper;
+        this.plan = new AtomicReference<>(routePlan);
+        this.parent = parent;
+        this.preScanHits = parent.preScanHits;
+        this.preScanMisses = parent.preScanMisses;
+        this.metrics = parent.metrics;
+        this.recorder = recorder;
+        this.resultCache = parent.resultCache;
+    }
+    
+    /**
+     * Сервис с правилами маршрута, под который подходит запрос. Если маршрут не найден,
+     * возвращается этот же сервис; если маршрут не маскирует это направление —
+     * сервис с пустым планом ({@code getPlan().isEmpty()})
+     *
+     * @param path путь внутри приложения
+     */
+    public JsonMaskingService forRoute(String method, PathContainer path,
+                                       MaskingProperties.MaskingDirection direction) {
+        return forRoute(plan.get().match(method, path), direction);
+    }
+    
+    /**
+     * Сервисы для запроса и ответа одного HTTP-запроса. Маршрут ищется один раз на оба
+     * направления, а путь разбирается, только если в плане есть профили маршрутов
+     *
+     * @param path путь внутри приложения
+     */
+    public RouteMasking forRequest(String method, Supplier<PathContainer> path) {
+        MaskingPlan currentPlan = plan.get();
+        MaskingPlan.Route route = currentPlan.hasRoutes() ? currentPlan.match(method, path.get()) : null;
+        return new RouteMasking(forRoute(route, MaskingProperties.MaskingDirection.REQUEST),
+                forRoute(route, MaskingProperties.MaskingDirection.RESPONSE));
+    }
+    
+    private JsonMaskingService forRoute(MaskingPlan.Route route, MaskingProperties.MaskingDirection direction) {
+        if (route == null) {
+            return forDirection(direction);
+        }
+        MaskingPlan routePlan = route.planFor(direction);
+        String name = routePlan.getRoute() != null ? routePlan.getRoute() : MaskingMetrics.DEFAULT_ROUTE;
+        return new JsonMaskingService(this, routePlan, metrics.recorder(name, direction));
+    }
+    
+    /**
+     * Сервис, метрики которого помечены направлением. Без метрик возвращается этот же сервис
+     */
+    public JsonMaskingService forDirection(MaskingProperties.MaskingDirection direction) {
+        if (metrics == MaskingMetrics.NOOP) {
+            return this;
+        }
+        return new JsonMaskingService(this, plan.get(), metrics.recorder(MaskingMetrics.DEFAULT_ROUTE, direction));
+    }
+    
+    /**
+     * Метрики, в которые пишет сервис; ими же пользуются фильтры
+     */
+    public MaskingMetrics getMetrics() {
+        return metrics;
+    }
     
     /**
      * Маскирует JSON строку на основе конфигурации полей
@@ -32,226 +151,616 @@ public class JsonMaskingService {
             return json;
         }
         
-        // Инициализируем Map для быстрого поиска конфигураций
-        initializeFieldConfigMap();
+        MaskingPlan currentPlan = plan.get();
         
         // Если нет полей для маскировки, возвращаем исходную строку
-        if (fieldConfigMap.isEmpty()) {
+        if (currentPlan.isEmpty()) {
             return json;
         }
         
-        try {
-            JsonNode rootNode = objectMapper.readTree(json);
-            JsonNode maskedNode = maskJsonNode(rootNode);
-            return objectMapper.writeValueAsString(maskedNode);
+        // Быстрый путь: ни одно настроенное поле не встречается — парсинг не нужен
+        if (!preScan(currentPlan.getKeyPreScanner().mayContainKey(json))) {
+            return json;
+        }
+        
+        // Токены копируются из парсера в генератор без построения дерева
+        long start = System.nanoTime();
+        JsonFactory factory = objectMapper.getFactory();
+        StringWriter writer = new StringWriter(json.length());
+        try (JsonParser parser = factory.createParser(json);
+             JsonGenerator generator = factory.createGenerator(writer)) {
+            mask(currentPlan, parser, generator);
         } catch (Exception e) {
             // Если не удалось распарсить JSON, возвращаем исходную строку
+            recorder.recordParseFailure(e);
             return json;
         }
+        String masked = writer.toString();
+        recorder.recordMasking(System.nanoTime() - start, json.length(), masked.length());
+        return masked;
+    }
+    
+    /**
+     * Маскирует JSON в кодировке UTF-8 без промежуточного преобразования в String.
+     * Если JSON невалиден, возвращается исходный массив
+     */
+    public byte[] maskJsonBytes(byte[] json) {
+        return maskJsonBytes(plan.get(), json);
     }
     
     /**
-     * Инициализирует Map для быстрого поиска конфигураций полей
+     * Маскирует массив по заданному плану: поток NDJSON маскирует все записи одним планом
      */
-    private void initializeFieldConfigMap() {
-        if (fieldConfigMap == null) {
-            fieldConfigMap = new HashMap<>();
-            for (MaskingProperties.FieldMaskingConfig config : properties.getFields()) {
-                if (config.getFieldName() != null) {
-                    fieldConfigMap.put(config.getFieldName(), config);
+    byte[] maskJsonBytes(MaskingPlan currentPlan, byte[] json) {
+        if (json == null || json.length == 0) {
+            return json;
+        }
+        
+        if (currentPlan.isEmpty()) {
+            return json;
+        }
+        
+        if (!preScan(currentPlan.getKeyPreScanner().mayContainKey(json))) {
+            return json;
+        }
+        
+        if (resultCache == null || !resultCache.accepts(json.length)) {
+            return maskBytes(currentPlan, json);
+        }
+        ByteBuffer body = ByteBuffer.wrap(json);
+        long hash = MaskedBodyCache.hash(body);
+        byte[] cached = cachedResult(currentPlan, body, hash);
+        if (cached != null) {
+            // Копия: вызывающий код может изменить возвращённый массив
+            return cached.clone();
+        }
+        byte[] masked = maskBytes(currentPlan, json);
+        if (masked != json) {
+            resultCache.put(currentPlan, body, hash, masked.clone());
+        }
+        return masked;
+    }
+    
+    /**
+     * Маскирует массив параллельно или последовательно; при ошибке возвращает json
+     */
+    private byte[] maskBytes(MaskingPlan currentPlan, byte[] json) {
+        if (currentPlan.getParallelArrayThreshold() > 0) {
+            try (ByteArrayBuilder output = new ByteArrayBuilder(json.length)) {
+                if (maskParallel(currentPlan, ByteBuffer.wrap(json), output)) {
+                    return output.toByteArray();
                 }
+            } catch (IOException e) {
+                return json;
             }
         }
+        
+        long start = System.nanoTime();
+        JsonFactory factory = objectMapper.getFactory();
+        byte[] masked;
+        try (ByteArrayBuilder output = new ByteArrayBuilder(json.length);
+             JsonParser parser = factory.createParser(json);
+             JsonGenerator generator = factory.createGenerator(output, JsonEncoding.UTF8)) {
+            mask(currentPlan, parser, generator);
+            masked = output.toByteArray();
+        } catch (Exception e) {
+            recorder.recordParseFailure(e);
+            return json;
+        }
+        recorder.recordMasking(System.nanoTime() - start, json.length, masked.length);
+        return masked;
+    }
+    
+    /**
+     * Маскирует фрагмент {@code text[start, end)} и дописывает результат в out.
+     * Если фрагмент не является JSON или в нём нечего маскировать, дописывается
+     * исходный текст. Подстрока создаётся, только если фрагмент нужно разбирать
+     */
+    public void maskJson(CharSequence text, int start, int end, StringBuilder out) {
+        MaskingPlan currentPlan = plan.get();
+        
+        if (currentPlan.isEmpty() || !preScan(currentPlan.getKeyPreScanner().mayContainKey(text, start, end))) {
+            out.append(text, start, end);
+            return;
+        }
+        
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = text.charAt(i);
+        }
+        long startNanos = System.nanoTime();
+        int mark = out.length();
+        JsonFactory factory = objectMapper.getFactory();
+        try (JsonParser parser = factory.createParser(chars);
+             JsonGenerator generator = factory.createGenerator(new StringBuilderWriter(out))) {
+            mask(currentPlan, parser, generator);
+        } catch (Exception e) {
+            // Откатываем частично записанный результат
+            recorder.recordParseFailure(e);
+            out.setLength(mark);
+            out.append(text, start, end);
+            return;
+        }
+        recorder.recordMasking(System.nanoTime() - startNanos, chars.length, out.length() - mark);
+    }
+    
+    /**
+     * Маскирует JSON из входного потока и пишет результат в выходной поток (UTF-8).
+     * Потоки не закрываются. В отличие от остальных перегрузок, невалидный JSON
+     * приводит к IOException: часть результата к этому моменту уже может быть записана
+     */
+    public void maskJson(InputStream json, OutputStream out) throws IOException {
+        maskStream(plan.get(), json, out);
     }
     
     /**
-     * Рекурсивно маскирует JSON узел
+     * Маскирует JSON из буфера (например, отображённого в память файла) и пишет результат
+     * в out. Если включена параллельная маскировка, большой массив верхнего уровня
+     * маскируется по частям в нескольких потоках; если включён кэш результатов,
+     * повторное тело берётся из кэша. Как и потоковая перегрузка, при невалидном
+     * JSON бросает IOException
      */
-    private JsonNode maskJsonNode(JsonNode node) {
-        if (node == null || node.isNull()) {
-            return node;
+    public void maskJson(ByteBuffer json, OutputStream out) throws IOException {
+        MaskingPlan currentPlan = plan.get();
+        if (currentPlan.isEmpty() || resultCache == null || !resultCache.accepts(json.remaining())) {
+            maskBuffer(currentPlan, json, out);
+            return;
         }
-
-        if (node.isObject()) {
-            ObjectNode objectNode = (ObjectNode) node;
-
-            // Если это «динамическое» DTO с полями code / codeValue – обрабатываем отдельно
-            if (isDynamicDto(objectNode)) {
-                return maskDynamicDtoNode(objectNode);
+        long hash = MaskedBodyCache.hash(json);
+        byte[] masked = cachedResult(currentPlan, json, hash);
+        if (masked == null) {
+            try (ByteArrayBuilder output = new ByteArrayBuilder(json.remaining())) {
+                maskBuffer(currentPlan, json, output);
+                masked = output.toByteArray();
             }
-
-            // Обычный POJO-объект
-            return maskPojoNode(objectNode);
-
-        } else if (node.isArray()) {
-            ArrayNode maskedArray = objectMapper.createArrayNode();
-            for (JsonNode element : node) {
-                if (element.isObject() || element.isArray()) {
-                    maskedArray.add(maskJsonNode(element));
-                } else {
-                    maskedArray.add(element);
-                }
-            }
-            return maskedArray;
+            resultCache.put(currentPlan, json, hash, masked);
         }
-
-        return node;
+        out.write(masked);
     }
-
+    
     /**
-     * Маскировка обычных POJO-объектов (без dynamic code / codeValue логики)
+     * Маскирует тело в заданном формате из входного потока и пишет результат в out.
+     * Потоки не закрываются. Невалидный JSON- или XML-документ приводит к IOException,
+     * как в {@link #maskJson(InputStream, OutputStream)}
      */
-    private JsonNode maskPojoNode(ObjectNode node) {
-        ObjectNode maskedObject = objectMapper.createObjectNode();
-
-        var fieldsIterator = node.fields();
-        while (fieldsIterator.hasNext()) {
-            var entry = fieldsIterator.next();
-            String fieldName = entry.getKey();
-            JsonNode fieldValue = entry.getValue();
-
-            // Проверяем, нужно ли маскировать это поле (быстрый поиск через Map)
-            MaskingProperties.FieldMaskingConfig config = fieldConfigMap.get(fieldName);
-
-            if (config != null && fieldValue.isTextual()) {
-                // Маскируем текстовое значение
-                String maskedValue = maskValue(fieldValue.asText(), config);
-                maskedObject.put(fieldName, maskedValue);
-            } else if (fieldValue.isObject() || fieldValue.isArray()) {
-                // Рекурсивно обрабатываем вложенные объекты и массивы
-                maskedObject.set(fieldName, maskJsonNode(fieldValue));
-            } else {
-                // Оставляем значение без изменений
-                maskedObject.set(fieldName, fieldValue);
-            }
+    public void mask(BodyFormat format, InputStream body, OutputStream out) throws IOException {
+        switch (format) {
+            case JSON:
+                maskJson(body, out);
+                return;
+            case NDJSON:
+                maskNdjson(body, out);
+                return;
+            case XML:
+                maskXml(body, out);
+                return;
+            case FORM:
+                maskForm(body, out);
+                return;
+            default:
+                throw new IllegalArgumentException("Unsupported body format: " + format);
         }
-
-        return maskedObject;
     }
-
+    
     /**
-     * Маскировка «динамических» DTO, где схема задаётся полем code, а значение — в codeValue.
+     * Стоит ли передавать тело такого размера в {@link #maskJson(ByteBuffer, OutputStream)}
+     * вместо потоковой перегрузки: для него включена параллельная маскировка или кэш результатов
      */
-    private JsonNode maskDynamicDtoNode(ObjectNode node) {
-        ObjectNode maskedObject = objectMapper.createObjectNode();
-
-        // Определяем конфигурацию для пары code / codeValue
-        String codeValue = null;
-        MaskingProperties.FieldMaskingConfig codeValueConfig = null;
-
-        JsonNode codeNode = node.get(CODE_FIELD);
-        JsonNode codeValueNode = node.get(CODE_VALUE_FIELD);
-
-        if (codeNode != null && codeNode.isTextual() && codeValueNode != null && codeValueNode.isTextual()) {
-            String codeFieldName = codeNode.asText();
-            MaskingProperties.FieldMaskingConfig config = fieldConfigMap.get(codeFieldName);
-            if (config != null) {
-                codeValue = codeValueNode.asText();
-                codeValueConfig = config;
-            }
+    public boolean prefersByteBuffer(long size) {
+        return size <= Integer.MAX_VALUE
+                && (plan.get().getParallelArrayThreshold() > 0 || resultCache != null && resultCache.accepts(size));
+    }
+    
+    private void maskBuffer(MaskingPlan currentPlan, ByteBuffer json, OutputStream out) throws IOException {
+        if (currentPlan.getParallelArrayThreshold() > 0 && !currentPlan.isEmpty()
+                && maskParallel(currentPlan, json, out)) {
+            return;
         }
-
-        // Обрабатываем все поля
-        var fieldsIterator = node.fields();
-        while (fieldsIterator.hasNext()) {
-            var entry = fieldsIterator.next();
-            String fieldName = entry.getKey();
-            JsonNode fieldValue = entry.getValue();
-
-            // Специальная обработка для codeValue
-            if (CODE_VALUE_FIELD.equals(fieldName) && codeValueConfig != null && codeValue != null) {
-                String maskedValue = maskValue(codeValue, codeValueConfig);
-                maskedObject.put(fieldName, maskedValue);
-                continue;
-            }
-
-            // Пропускаем code - копируем как есть
-            if (CODE_FIELD.equals(fieldName)) {
-                maskedObject.set(fieldName, fieldValue);
-                continue;
-            }
-
-            // Для всех остальных полей используем обычную логику POJO
-            MaskingProperties.FieldMaskingConfig config = fieldConfigMap.get(fieldName);
-            if (config != null && fieldValue.isTextual()) {
-                String maskedValue = maskValue(fieldValue.asText(), config);
-                maskedObject.put(fieldName, maskedValue);
-            } else if (fieldValue.isObject() || fieldValue.isArray()) {
-                maskedObject.set(fieldName, maskJsonNode(fieldValue));
-            } else {
-                maskedObject.set(fieldName, fieldValue);
+        maskStream(currentPlan, new ByteBufferBackedInputStream(json.duplicate()), out);
+    }
+    
+    private void maskStream(MaskingPlan currentPlan, InputStream json, OutputStream out) throws IOException {
+        if (currentPlan.isEmpty()) {
+            json.transferTo(out);
+            return;
+        }
+        
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long bytesIn;
+        JsonFactory factory = objectMapper.getFactory();
+        try (JsonParser parser = factory.createParser(json);
+             JsonGenerator generator = factory.createGenerator(counted, JsonEncoding.UTF8)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            mask(currentPlan, parser, generator);
+            bytesIn = parser.currentLocation().getByteOffset();
+        } catch (IOException e) {
+            recorder.recordParseFailure(e);
+            throw e;
+        }
+        recorder.recordMasking(System.nanoTime() - start, bytesIn, counted.getCount());
+    }
+    
+    /**
+     * Быстрая проверка тела, хранящегося частями (например, в сегментах пула):
+     * false — ни одно настроенное поле в теле точно не встречается и парсинг не нужен.
+     * Части должны быть буферами в куче. Учитывается в счётчиках быстрого пути
+     */
+    public boolean mayContainMaskedField(Iterable<ByteBuffer> chunks) {
+        MaskingPlan currentPlan = plan.get();
+        if (currentPlan.isEmpty()) {
+            return false;
+        }
+        
+        KeyPreScanner scanner = currentPlan.getKeyPreScanner();
+        int state = KeyPreScanner.INITIAL_STATE;
+        for (ByteBuffer chunk : chunks) {
+            state = scanner.advance(state, chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            if (state == KeyPreScanner.MATCH) {
+                return preScan(true);
             }
         }
-
-        return maskedObject;
+        return preScan(false);
     }
-
+    
     /**
-     * Проверяет, является ли объект «динамическим» DTO с полями code и codeValue.
+     * Создаёт поток, который маскирует записываемый в него JSON и сразу передаёт
+     * результат в target. По окончании записи нужно вызвать
+     * {@link MaskingJsonOutputStream#finish()}
      */
-    private boolean isDynamicDto(ObjectNode node) {
-        return node.has(CODE_FIELD) && node.has(CODE_VALUE_FIELD);
+    public MaskingJsonOutputStream maskingOutputStream(OutputStream target) throws IOException {
+        return new MaskingJsonOutputStream(plan.get(), objectMapper.getFactory(), target, recorder);
     }
     
     /**
-     * Маскирует значение строки на основе конфигурации
+     * Создаёт маскирующий поток для тела в заданном формате
      */
-    private String maskValue(String value, MaskingProperties.FieldMaskingConfig config) {
-        if (value == null || value.isEmpty()) {
-            return value;
+    public MaskingOutputStream maskingOutputStream(BodyFormat format, OutputStream target) throws IOException {
+        switch (format) {
+            case JSON:
+                return maskingOutputStream(target);
+            case NDJSON:
+                return maskingNdjsonOutputStream(target);
+            case XML:
+                return new MaskingXmlOutputStream(this, plan.get(), target, properties);
+            case FORM:
+                return new MaskingFormOutputStream(plan.get(), target, recorder);
+            default:
+                throw new IllegalArgumentException("Unsupported body format: " + format);
+        }
+    }
+    
+    /**
+     * Создаёт поток, который маскирует записываемый в него NDJSON (JSON Lines) по записям
+     * и передаёт каждую завершённую запись в target, сбрасывая его. По окончании записи
+     * нужно вызвать {@link MaskingNdjsonOutputStream#finish()}
+     */
+    public MaskingNdjsonOutputStream maskingNdjsonOutputStream(OutputStream target) {
+        return new MaskingNdjsonOutputStream(this, plan.get(), target, true);
+    }
+    
+    /**
+     * Маскирует NDJSON из входного потока по записям и пишет результат в out.
+     * Потоки не закрываются. Записи, которые не являются JSON, передаются как есть
+     */
+    public void maskNdjson(InputStream ndjson, OutputStream out) throws IOException {
+        MaskingPlan currentPlan = plan.get();
+        if (currentPlan.isEmpty()) {
+            ndjson.transferTo(out);
+            return;
+        }
+        MaskingNdjsonOutputStream records = new MaskingNdjsonOutputStream(this, currentPlan, out, false);
+        ndjson.transferTo(records);
+        records.finish();
+    }
+    
+    /**
+     * Маскирует XML из входного потока и пишет результат в out: текст элементов
+     * и значения атрибутов, чьи локальные имена совпадают с настроенными полями,
+     * и пары code / codeValue. Документ читается потоково через StAX, поэтому память
+     * не зависит от его размера. Потоки не закрываются. Невалидный XML приводит
+     * к IOException; часть результата к этому моменту уже может быть записана
+     */
+    public void maskXml(InputStream xml, OutputStream out) throws IOException {
+        maskXml(plan.get(), xml, out);
+    }
+    
+    void maskXml(MaskingPlan currentPlan, InputStream xml, OutputStream out) throws IOException {
+        if (currentPlan.isEmpty() || currentPlan.getRules().isEmpty()) {
+            xml.transferTo(out);
+            return;
         }
         
-        char maskChar = config.getMaskChar() != null 
-                ? config.getMaskChar() 
-                : properties.getDefaultMaskChar();
-        
-        // Полная маскировка
-        if (config.isMaskAll()) {
-            return maskString(value, maskChar, 0, value.length());
+        long start = System.nanoTime();
+        CountingInputStream countedIn = new CountingInputStream(xml);
+        CountingOutputStream counted = new CountingOutputStream(out);
+        try {
+            new XmlStreamMasker(currentPlan, recorder).mask(countedIn, counted);
+        } catch (IOException e) {
+            recorder.recordParseFailure(e);
+            throw e;
+        }
+        recorder.recordMasking(System.nanoTime() - start, countedIn.getCount(), counted.getCount());
+    }
+    
+    /**
+     * Маскирует тело application/x-www-form-urlencoded из входного потока и пишет
+     * результат в out. Сканер работает с закодированными байтами: раскодируются
+     * и переписываются только значения параметров, для имён которых есть правило.
+     * Потоки не закрываются
+     */
+    public void maskForm(InputStream form, OutputStream out) throws IOException {
+        MaskingPlan currentPlan = plan.get();
+        if (currentPlan.getRules().isEmpty()) {
+            form.transferTo(out);
+            return;
         }
         
-        // Маскировка по индексам.
-        // Здесь индексы трактуются как 0-based:
-        //  - maskStartIndex: индекс первого символа для маскирования (включительно)
-        //  - maskEndIndex:   индекс окончания маскирования (исключительно)
-        // Такой подход согласован с комментариями в тестах
-        Integer cfgStart = config.getMaskStartIndex();
-        Integer cfgEnd = config.getMaskEndIndex();
-
-        int startIndex = cfgStart != null
-                ? Math.max(0, cfgStart)
-                : 0;
-
-        int endIndex = cfgEnd != null
-                ? Math.min(value.length(), cfgEnd)
-                : value.length();
-
-        // Валидация индексов
-        if (startIndex >= endIndex || startIndex >= value.length()) {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        MaskingFormOutputStream masking = new MaskingFormOutputStream(currentPlan, counted, recorder);
+        long bytesIn = form.transferTo(masking);
+        masking.finish();
+        recorder.recordMasking(System.nanoTime() - start, bytesIn, counted.getCount());
+    }
+    
+    /**
+     * Маскирует строку запроса ({@code a=1&password=secret}) тем же сканером, что и форму.
+     * Если маскировать нечего, возвращается та же строка
+     */
+    public String maskQueryString(String query) {
+        MaskingPlan currentPlan = plan.get();
+        if (query == null || query.isEmpty() || currentPlan.getRules().isEmpty()) {
+            return query;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(query.length());
+        MaskingFormOutputStream masking = new MaskingFormOutputStream(currentPlan, out, recorder);
+        try {
+            masking.write(query.getBytes(StandardCharsets.UTF_8));
+            masking.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return masking.isMasked() ? out.toString(StandardCharsets.UTF_8) : query;
+    }
+    
+    /**
+     * Маскирует уже раскодированное значение параметра запроса по правилу для его имени
+     */
+    public String maskParameter(String name, String value) {
+        return maskValue(plan.get().getRule(name), value);
+    }
+    
+    /**
+     * Маскирует значение заголовка; имя заголовка сравнивается с именами полей без учёта регистра
+     */
+    public String maskHeader(String name, String value) {
+        return maskValue(plan.get().getHeaderRule(name), value);
+    }
+    
+    private String maskValue(FieldRule rule, String value) {
+        if (rule == null || value == null) {
             return value;
         }
+        String masked = rule.mask(value);
+        if (masked != value) {
+            recorder.recordFieldMasked(rule.getFieldName());
+        }
+        return masked;
+    }
+    
+    /**
+     * Маскирует независимые записи NDJSON; результаты — в исходном порядке
+     */
+    List<byte[]> maskRecords(MaskingPlan currentPlan, List<byte[]> records) throws IOException {
+        if (records.size() > 1 && currentPlan.isNdjsonParallel() && !currentPlan.isEmpty()) {
+            return parallelMasker().maskAll(records, record -> maskJsonBytes(currentPlan, record));
+        }
+        List<byte[]> masked = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            masked.add(maskJsonBytes(currentPlan, record));
+        }
+        return masked;
+    }
+    
+    /**
+     * Оборачивает генератор так, что всё записанное в него маскируется на лету.
+     * Подходит для {@code objectMapper.writeValue(generator, value)}
+     */
+    public MaskingJsonGenerator maskingGenerator(JsonGenerator target) {
+        return new MaskingJsonGenerator(plan.get(), objectMapper.getFactory(), target, recorder);
+    }
+    
+    /**
+     * Сериализует объект в JSON сразу с маскировкой: токены от сериализатора идут
+     * через {@link MaskingJsonGenerator}, без дерева и без промежуточной
+     * незамаскированной строки
+     */
+    public String toMaskedJson(Object value) throws IOException {
+        MaskingPlan currentPlan = plan.get();
+        if (currentPlan.isEmpty()) {
+            return objectMapper.writeValueAsString(value);
+        }
         
-        return maskString(value, maskChar, startIndex, endIndex);
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = new MaskingJsonGenerator(currentPlan, objectMapper.getFactory(),
+                objectMapper.getFactory().createGenerator(writer), recorder)) {
+            objectMapper.writeValue(generator, value);
+        }
+        return writer.toString();
+    }
+    
+    /**
+     * Останавливает пул параллельной маскировки, если он был создан.
+     * Spring вызывает метод при закрытии контекста для бина, объявленного через {@code @Bean}
+     */
+    public void shutdown() {
+        ParallelArrayMasker masker = parallelMasker;
+        if (parent == null && masker != null) {
+            masker.shutdown();
+        }
+    }
+    
+    /**
+     * Текущий скомпилированный план маскировки
+     */
+    public MaskingPlan getPlan() {
+        return plan.get();
+    }
+    
+    /**
+     * Перекомпилирует план из текущего состояния {@link MaskingProperties}
+     * (например, после перепривязки свойств) и атомарно подменяет его
+     */
+    public void reload() {
+        reload(properties);
+    }
+    
+    /**
+     * Компилирует план из переданной конфигурации и атомарно подменяет текущий.
+     * Запросы, которые уже выполняются, дорабатывают со старым планом
+     */
+    public void reload(MaskingProperties newProperties) {
+        if (parent != null) {
+            throw new IllegalStateException("Route-scoped masking service cannot be reloaded, reload the root service");
+        }
+        plan.set(MaskingPlan.compile(newProperties));
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+    }
+    
+    /**
+     * Количество тел, в которых предварительная проверка нашла настроенное поле
+     * (тело было распарсено)
+     */
+    public long getPreScanHits() {
+        return preScanHits.sum();
+    }
+    
+    /**
+     * Количество тел, пропущенных без парсинга по быстрому пути
+     */
+    public long getPreScanMisses() {
+        return preScanMisses.sum();
+    }
+    
+    /**
+     * Количество тел, результат маскировки которых взят из кэша
+     */
+    public long getResultCacheHits() {
+        return resultCache != null ? resultCache.getHits() : 0;
+    }
+    
+    /**
+     * Количество тел, подходящих для кэша, но не найденных в нём
+     */
+    public long getResultCacheMisses() {
+        return resultCache != null ? resultCache.getMisses() : 0;
+    }
+    
+    /**
+     * Количество записей, вытесненных из кэша по размеру или времени жизни
+     */
+    public long getResultCacheEvictions() {
+        return resultCache != null ? resultCache.getEvictions() : 0;
+    }
+    
+    private byte[] cachedResult(MaskingPlan currentPlan, ByteBuffer body, long hash) {
+        byte[] cached = resultCache.get(currentPlan, body, hash);
+        if (cached != null) {
+            recorder.recordCacheHit();
+        } else {
+            recorder.recordCacheMiss();
+        }
+        return cached;
+    }
+    
+    private boolean preScan(boolean mayContainKey) {
+        if (mayContainKey) {
+            preScanHits.increment();
+        } else {
+            preScanMisses.increment();
+            recorder.recordFastPathSkip();
+        }
+        return mayContainKey;
     }
     
     /**
-     * Маскирует часть строки от startIndex до endIndex
-     * Оптимизировано для производительности
+     * Параллельная маскировка массива верхнего уровня
+     *
+     * @return false — документ не массив или элементов меньше порога, в out ничего не записано
      */
-    private String maskString(String value, char maskChar, int startIndex, int endIndex) {
-        int length = value.length();
-        int actualEnd = Math.min(endIndex, length);
+    private boolean maskParallel(MaskingPlan currentPlan, ByteBuffer json, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        try {
+            if (!parallelMasker().mask(currentPlan, recorder, json, counted)) {
+                return false;
+            }
+        } catch (IOException e) {
+            recorder.recordParseFailure(e);
+            throw e;
+        }
+        recorder.recordMasking(System.nanoTime() - start, json.remaining(), counted.getCount());
+        return true;
+    }
+    
+    private ParallelArrayMasker parallelMasker() {
+        if (parent != null) {
+            return parent.parallelMasker();
+        }
+        ParallelArrayMasker masker = parallelMasker;
+        if (masker == null) {
+            synchronized (this) {
+                masker = parallelMasker;
+                if (masker == null) {
+                    masker = new ParallelArrayMasker(Math.max(properties.getParallelPoolSize(), 1),
+                            objectMapper.getFactory());
+                    parallelMasker = masker;
+                }
+            }
+        }
+        return masker;
+    }
+    
+    private void mask(MaskingPlan currentPlan, JsonParser parser, JsonGenerator generator) throws IOException {
+        new JsonStreamMasker(currentPlan, objectMapper.getFactory(), generator, recorder).copy(parser);
+        generator.flush();
+    }
+    
+    /**
+     * Writer, который дописывает символы прямо в StringBuilder
+     */
+    private static final class StringBuilderWriter extends Writer {
+        private final StringBuilder out;
         
-        if (startIndex >= actualEnd) {
-            return value;
+        StringBuilderWriter(StringBuilder out) {
+            this.out = out;
+        }
+        
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            out.append(cbuf, off, len);
         }
         
-        // Используем char[] для более эффективной работы со строками
-        char[] chars = value.toCharArray();
-        for (int i = startIndex; i < actualEnd; i++) {
-            chars[i] = maskChar;
+        @Override
+        public void write(String str, int off, int len) {
+            out.append(str, off, off + len);
+        }
+        
+        @Override
+        public void write(int c) {
+            out.append((char) c);
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
         }
-        return new String(chars);
     }
 }
-
@@ -0,0 +1,444 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+
+/**
+ * Потоковый маскировщик JSON.
+ *
+ * Принимает токены (из {@link JsonParser} или от сериализатора) и сразу пишет их
+ * в {@link JsonGenerator}, подменяя только значения настроенных полей.
+ * Дерево документа не строится: состояние — это стек открытых контейнеров.
+ *
+ * Каждый открытый контейнер хранит состояние {@link PathMatcher}, поэтому правило
+ * по пути находится одним переходом на ключ. Контейнер, в который не ведёт ни один
+ * путь, при отсутствии правил по имени копируется целиком без проверки ключей.
+ *
+ * JSON, вложенный в строковое значение без правила, маскируется отдельным
+ * маскировщиком по правилам по имени. Разбор дорогой, поэтому ему предшествуют
+ * дешёвые проверки: глубина и длина строки, первый и последний непробельный символ,
+ * поиск настроенных ключей. Если во вложенном JSON ничего не замаскировано,
+ * строка пишется как есть.
+ *
+ * Семантика «динамических» DTO (code / codeValue) сохранена. Если codeValue
+ * встречается раньше code, значение и последующие поля объекта откладываются
+ * в {@link TokenBuffer} до появления code или конца объекта, поэтому память
+ * ограничена размером одного такого объекта, а не всего тела.
+ *
+ * Экземпляр хранит состояние одного документа и не потокобезопасен.
+ */
+final class JsonStreamMasker {
+
+    private static final String CODE_FIELD = "code";
+    private static final String CODE_VALUE_FIELD = "codeValue";
+
+    private final MaskingPlan plan;
+    private final PathMatcher pathMatcher;
+    private final JsonFactory factory;
+    private final JsonGenerator out;
+    private final MaskingRecorder recorder;
+    /** Глубина вложенного JSON: 0 — документ верхнего уровня */
+    private final int embeddedDepth;
+    /** Состояние пути для корня; во вложенном JSON пути не действуют */
+    private final int rootState;
+
+    private Frame top;
+    private char[] maskBuffer = new char[64];
+
+    /** Глубина контейнера, который копируется целиком; 0 — копирования нет */
+    private int skipDepth;
+    private JsonGenerator skipTarget;
+
+    /** Было ли замаскировано хотя бы одно значение */
+    private boolean masked;
+
+    JsonStreamMasker(MaskingPlan plan, JsonFactory factory, JsonGenerator out) {
+        this(plan, factory, out, MaskingRecorder.NOOP);
+    }
+
+    JsonStreamMasker(MaskingPlan plan, JsonFactory factory, JsonGenerator out, MaskingRecorder recorder) {
+        this(plan, factory, out, recorder, 0);
+    }
+
+    private JsonStreamMasker(MaskingPlan plan, JsonFactory factory, JsonGenerator out, MaskingRecorder recorder,
+                             int embeddedDepth) {
+        this.plan = plan;
+        this.pathMatcher = plan.getPathMatcher();
+        this.factory = factory;
+        this.out = out;
+        this.recorder = recorder;
+        this.embeddedDepth = embeddedDepth;
+        this.rootState = embeddedDepth == 0 ? pathMatcher.root() : PathMatcher.DEAD;
+    }
+
+    /**
+     * Копирует все оставшиеся токены парсера в генератор с маскировкой
+     */
+    void copy(JsonParser parser) throws IOException {
+        while (parser.nextToken() != null) {
+            copyCurrentToken(parser);
+        }
+    }
+
+    /**
+     * Обрабатывает текущий токен парсера
+     */
+    void copyCurrentToken(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == null) {
+            return;
+        }
+        if (skipDepth > 0) {
+            copySkipped(parser, token);
+            return;
+        }
+        switch (token) {
+            case START_OBJECT, START_ARRAY -> {
+                if (plan.isUnreachable(childState())) {
+                    // Ни одно правило не может сработать внутри — копируем без разбора ключей
+                    skipTarget = beginValue();
+                    skipDepth = 1;
+                    skipTarget.copyCurrentEvent(parser);
+                } else if (token == JsonToken.START_OBJECT) {
+                    writeStartObject();
+                } else {
+                    writeStartArray();
+                }
+            }
+            case END_OBJECT -> writeEndObject();
+            case END_ARRAY -> writeEndArray();
+            case FIELD_NAME -> writeFieldName(parser.currentName());
+            case VALUE_STRING -> writeString(
+                    parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            case NOT_AVAILABLE -> {
+                // Неблокирующий парсер ждёт следующую порцию данных
+            }
+            default -> scalarTarget().copyCurrentEvent(parser);
+        }
+    }
+
+    private void copySkipped(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case NOT_AVAILABLE -> {
+                return;
+            }
+            case START_OBJECT, START_ARRAY -> skipDepth++;
+            case END_OBJECT, END_ARRAY -> skipDepth--;
+            default -> {
+            }
+        }
+        skipTarget.copyCurrentEvent(parser);
+        if (skipDepth == 0) {
+            skipTarget = null;
+        }
+    }
+
+    void writeStartObject() throws IOException {
+        int pathState = childState();
+        JsonGenerator target = beginValue();
+        target.writeStartObject();
+        top = new Frame(top, true, target, pathState);
+    }
+
+    void writeEndObject() throws IOException {
+        Frame frame = top;
+        if (frame.pendingName != null) {
+            resolvePending(frame, false);
+        }
+        frame.target.writeEndObject();
+        top = frame.parent;
+    }
+
+    void writeStartArray() throws IOException {
+        int pathState = childState();
+        JsonGenerator target = beginValue();
+        target.writeStartArray();
+        top = new Frame(top, false, target, pathState);
+        top.valueState = pathMatcher.onElement(pathState);
+    }
+
+    void writeEndArray() throws IOException {
+        Frame frame = top;
+        frame.target.writeEndArray();
+        top = frame.parent;
+    }
+
+    void writeFieldName(String name) {
+        Frame frame = top;
+        frame.fieldName = name;
+        frame.valueState = pathMatcher.onField(frame.pathState, name);
+    }
+
+    /**
+     * Обрабатывает строковое значение — единственный тип значений, который маскируется
+     */
+    void writeString(char[] text, int offset, int length) throws IOException {
+        Frame frame = top;
+        if (frame == null) {
+            out.writeString(text, offset, length);
+            return;
+        }
+
+        // Правило по пути важнее правила по имени и пары code / codeValue
+        FieldRule pathRule = pathMatcher.getRule(frame.valueState);
+        if (!frame.object) {
+            writeValue(frame.sink, text, offset, length, pathRule);
+            return;
+        }
+
+        String fieldName = frame.fieldName;
+        if (CODE_VALUE_FIELD.equals(fieldName)) {
+            frame.codeValueSeen = true;
+            if (frame.pendingName != null) {
+                resolvePending(frame, CODE_FIELD.equals(frame.pendingName));
+            }
+            if (pathRule != null || frame.codeSeen) {
+                writeField(frame.sink, fieldName, text, offset, length,
+                        pathRule != null ? pathRule : codeValueRule(frame, true));
+            } else {
+                // code ещё не встречался — решение откладываем
+                defer(frame, fieldName, new String(text, offset, length));
+            }
+            return;
+        }
+
+        if (CODE_FIELD.equals(fieldName)) {
+            frame.codeSeen = true;
+            frame.codeText = new String(text, offset, length);
+            if (frame.pendingName != null) {
+                resolvePending(frame, CODE_VALUE_FIELD.equals(frame.pendingName));
+            }
+            if (pathRule == null && !frame.codeValueSeen && plan.hasRule(CODE_FIELD)) {
+                // Маскировать ли code, зависит от наличия codeValue дальше в объекте
+                defer(frame, fieldName, frame.codeText);
+            } else {
+                // В динамическом DTO code копируется как есть
+                writeField(frame.sink, fieldName, text, offset, length, pathRule);
+            }
+            return;
+        }
+
+        writeField(frame.sink, fieldName, text, offset, length,
+                pathRule != null ? pathRule : plan.getRule(fieldName));
+    }
+
+    /**
+     * Возвращает генератор для записи нестрокового скалярного значения
+     */
+    JsonGenerator scalarTarget() throws IOException {
+        return beginValue();
+    }
+
+    /**
+     * Готовит запись нестрокового значения (скаляра или контейнера):
+     * учитывает пару code / codeValue и пишет имя поля
+     */
+    private JsonGenerator beginValue() throws IOException {
+        Frame frame = top;
+        if (frame == null || !frame.object) {
+            return sink();
+        }
+
+        String fieldName = frame.fieldName;
+        if (CODE_VALUE_FIELD.equals(fieldName)) {
+            frame.codeValueSeen = true;
+            if (frame.pendingName != null) {
+                resolvePending(frame, CODE_FIELD.equals(frame.pendingName));
+            }
+        } else if (CODE_FIELD.equals(fieldName)) {
+            frame.codeSeen = true;
+            frame.codeText = null;
+            if (frame.pendingName != null) {
+                resolvePending(frame, CODE_VALUE_FIELD.equals(frame.pendingName));
+            }
+        }
+
+        frame.sink.writeFieldName(fieldName);
+        return frame.sink;
+    }
+
+    private JsonGenerator sink() {
+        return top == null ? out : top.sink;
+    }
+
+    /**
+     * Состояние пути для следующего значения: корень или текущее поле / элемент
+     */
+    private int childState() {
+        return top == null ? rootState : top.valueState;
+    }
+
+    /**
+     * Откладывает запись поля: всё, что идёт за ним в объекте, пишется в хвостовой буфер
+     */
+    private void defer(Frame frame, String fieldName, String text) {
+        frame.pendingName = fieldName;
+        frame.pendingText = text;
+        frame.tail = new TokenBuffer((ObjectCodec) null, false);
+        frame.sink = frame.tail;
+    }
+
+    /**
+     * Записывает отложенное поле и воспроизводит накопленный хвост объекта
+     *
+     * @param dynamic найдена ли парная часть code / codeValue
+     */
+    private void resolvePending(Frame frame, boolean dynamic) throws IOException {
+        String fieldName = frame.pendingName;
+        String text = frame.pendingText;
+        TokenBuffer tail = frame.tail;
+
+        frame.pendingName = null;
+        frame.pendingText = null;
+        frame.tail = null;
+        frame.sink = frame.target;
+
+        FieldRule rule;
+        if (CODE_VALUE_FIELD.equals(fieldName)) {
+            rule = codeValueRule(frame, dynamic);
+        } else {
+            rule = dynamic ? null : plan.getRule(fieldName);
+        }
+
+        char[] chars = text.toCharArray();
+        writeField(frame.target, fieldName, chars, 0, chars.length, rule);
+        tail.serialize(frame.target);
+    }
+
+    /**
+     * Правило для codeValue: по значению code в динамическом DTO,
+     * иначе — обычное правило поля codeValue
+     */
+    private FieldRule codeValueRule(Frame frame, boolean dynamic) {
+        if (dynamic && frame.codeText != null) {
+            FieldRule rule = plan.getRule(frame.codeText);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return plan.getRule(CODE_VALUE_FIELD);
+    }
+
+    private void writeField(JsonGenerator target, String fieldName,
+                            char[] text, int offset, int length,
+                            FieldRule rule) throws IOException {
+        target.writeFieldName(fieldName);
+        writeValue(target, text, offset, length, rule);
+    }
+
+    private void writeValue(JsonGenerator target, char[] text, int offset, int length,
+                            FieldRule rule) throws IOException {
+        if (rule == null || length == 0) {
+            if (rule != null || !writeEmbedded(target, text, offset, length)) {
+                target.writeString(text, offset, length);
+            }
+            return;
+        }
+        writeMasked(target, text, offset, length, rule);
+    }
+
+    /**
+     * Маскирует JSON, вложенный в строку
+     *
+     * @return true, если значение записано; false — строку нужно записать как есть
+     */
+    private boolean writeEmbedded(JsonGenerator target, char[] text, int offset, int length) throws IOException {
+        if (embeddedDepth >= plan.getEmbeddedJsonMaxDepth() || length < 2
+                || length > plan.getEmbeddedJsonMaxSize() || plan.getRules().isEmpty()) {
+            return false;
+        }
+
+        int first = offset;
+        int last = offset + length - 1;
+        while (first < last && isWhitespace(text[first])) {
+            first++;
+        }
+        while (last > first && isWhitespace(text[last])) {
+            last--;
+        }
+        boolean container = text[first] == '{' && text[last] == '}' || text[first] == '[' && text[last] == ']';
+        if (!container || !plan.getKeyPreScanner().mayContainKey(CharBuffer.wrap(text, offset, length))) {
+            return false;
+        }
+
+        StringWriter embedded = new StringWriter(length);
+        try (JsonParser parser = factory.createParser(text, offset, length);
+             JsonGenerator generator = factory.createGenerator(embedded)) {
+            JsonStreamMasker masker = new JsonStreamMasker(plan, factory, generator, recorder, embeddedDepth + 1);
+            masker.copy(parser);
+            if (!masker.masked) {
+                return false;
+            }
+        } catch (IOException e) {
+            // Похоже на JSON, но не JSON — обычная строка
+            return false;
+        }
+        target.writeString(embedded.toString());
+        masked = true;
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Маскирует значение по правилу и пишет его без промежуточных строк
+     */
+    private void writeMasked(JsonGenerator target, char[] text, int offset, int length,
+                             FieldRule rule) throws IOException {
+        if (maskBuffer.length < length) {
+            maskBuffer = new char[Math.max(length, maskBuffer.length * 2)];
+        }
+        System.arraycopy(text, offset, maskBuffer, 0, length);
+        if (rule.mask(maskBuffer, length)) {
+            masked = true;
+            recorder.recordFieldMasked(rule.getFieldName());
+            target.writeString(maskBuffer, 0, length);
+        } else {
+            target.writeString(text, offset, length);
+        }
+    }
+
+    /**
+     * Открытый контейнер (объект или массив)
+     */
+    private static final class Frame {
+        final Frame parent;
+        final boolean object;
+        /** Состояние пути самого контейнера */
+        final int pathState;
+        /** Состояние пути текущего поля или элемента */
+        int valueState = PathMatcher.DEAD;
+        /** Куда пишутся начало и конец контейнера */
+        final JsonGenerator target;
+        /** Куда пишутся поля: target либо хвост отложенного поля */
+        JsonGenerator sink;
+
+        String fieldName;
+        boolean codeSeen;
+        String codeText;
+        boolean codeValueSeen;
+
+        String pendingName;
+        String pendingText;
+        TokenBuffer tail;
+
+        Frame(Frame parent, boolean object, JsonGenerator target, int pathState) {
+            this.parent = parent;
+            this.object = object;
+            this.pathState = pathState;
+            this.target = target;
+            this.sink = target;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.masker.service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Быстрая предварительная проверка тела на наличие настроенных полей.
+ *
+ * Из имён полей строится автомат Ахо-Корасик над байтами UTF-8, который ищет
+ * строки в кавычках: {@code "name"} и {@code "name\} (ключ внутри JSON, вложенного
+ * в строку). Совпадение может оказаться и значением, а не ключом — это нужно
+ * для пары code / codeValue, где имя поля приходит значением code.
+ *
+ * Проверка консервативна: шаблоны строятся из имени в том виде, в каком его
+ * экранирует Jackson, а любое другое написание того же символа считается совпадением.
+ * Таких последовательностей две: {@code \}{@code u} (любой символ) и {@code \/}
+ * (косая черта, которую Jackson не экранирует). Остальные escape-последовательности
+ * ({@code \"}, {@code \\}, {@code \n} и т. п.) Jackson пишет сам, и они уже входят
+ * в шаблоны. Отрицательный ответ гарантирует, что ни одно настроенное поле не встречается.
+ *
+ * Экземпляр неизменяем и потокобезопасен.
+ */
+public final class KeyPreScanner {
+
+    /**
+     * Результат {@link #advance}, означающий совпадение
+     */
+    public static final int MATCH = -1;
+
+    /**
+     * Начальное состояние автомата
+     */
+    public static final int INITIAL_STATE = 0;
+
+    private final int[] byteClasses;
+    private final int classCount;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private KeyPreScanner(int[] byteClasses, int classCount, int[] transitions, boolean[] accepting) {
+        this.byteClasses = byteClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Компилирует автомат для набора имён полей
+     */
+    public static KeyPreScanner compile(Collection<String> fieldNames) {
+        List<byte[]> patterns = new ArrayList<>();
+        // Ключ, записанный не так, как его экранирует Jackson, совпадает с любым именем
+        patterns.add(new byte[] {'\\', 'u'});
+        patterns.add(new byte[] {'\\', '/'});
+        for (String fieldName : fieldNames) {
+            byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(fieldName);
+            patterns.add(quoted(escaped, '"'));
+            patterns.add(quoted(escaped, '\\'));
+        }
+
+        // Сжимаем алфавит: класс 0 — байты, которых нет ни в одном шаблоне
+        int[] byteClasses = new int[256];
+        int classCount = 1;
+        for (byte[] pattern : patterns) {
+            for (byte b : pattern) {
+                if (byteClasses[b & 0xFF] == 0) {
+                    byteClasses[b & 0xFF] = classCount++;
+                }
+            }
+        }
+
+        // Бор
+        List<int[]> gotos = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        gotos.add(newRow(classCount));
+        terminal.add(false);
+        for (byte[] pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern) {
+                int cls = byteClasses[b & 0xFF];
+                if (gotos.get(state)[cls] < 0) {
+                    gotos.get(state)[cls] = gotos.size();
+                    gotos.add(newRow(classCount));
+                    terminal.add(false);
+                }
+                state = gotos.get(state)[cls];
+            }
+            terminal.set(state, true);
+        }
+
+        // Достраиваем переходы по суффиксным ссылкам до полного ДКА
+        int stateCount = gotos.size();
+        int[] transitions = new int[stateCount * classCount];
+        boolean[] accepting = new boolean[stateCount];
+        int[] fail = new int[stateCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        accepting[0] = terminal.get(0);
+        for (int cls = 0; cls < classCount; cls++) {
+            int next = gotos.get(0)[cls];
+            if (next < 0) {
+                transitions[cls] = 0;
+            } else {
+                transitions[cls] = next;
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] = terminal.get(state) || accepting[fail[state]];
+            for (int cls = 0; cls < classCount; cls++) {
+                int next = gotos.get(state)[cls];
+                if (next < 0) {
+                    transitions[state * classCount + cls] = transitions[fail[state] * classCount + cls];
+                } else {
+                    transitions[state * classCount + cls] = next;
+                    fail[next] = transitions[fail[state] * classCount + cls];
+                    queue.add(next);
+                }
+            }
+        }
+
+        return new KeyPreScanner(byteClasses, classCount, transitions, accepting);
+    }
+
+    /**
+     * Может ли тело содержать хотя бы одно настроенное поле
+     */
+    public boolean mayContainKey(byte[] data) {
+        return advance(INITIAL_STATE, data, 0, data.length) == MATCH;
+    }
+
+    /**
+     * Проверка строки: символы переводятся в UTF-8 на лету, без копирования.
+     * Все шаблоны заканчиваются ASCII-байтом, поэтому совпадение достаточно
+     * проверять после каждого символа
+     */
+    public boolean mayContainKey(CharSequence text) {
+        return mayContainKey(text, 0, text.length());
+    }
+
+    /**
+     * Проверка части строки {@code [start, end)} без выделения подстроки
+     */
+    public boolean mayContainKey(CharSequence text, int start, int end) {
+        int state = INITIAL_STATE;
+        int length = end;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                state = step(state, c);
+            } else if (c < 0x800) {
+                state = step(step(state, 0xC0 | (c >> 6)), 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                state = step(state, 0xF0 | (codePoint >> 18));
+                state = step(state, 0x80 | ((codePoint >> 12) & 0x3F));
+                state = step(state, 0x80 | ((codePoint >> 6) & 0x3F));
+                state = step(state, 0x80 | (codePoint & 0x3F));
+            } else {
+                state = step(state, 0xE0 | (c >> 12));
+                state = step(state, 0x80 | ((c >> 6) & 0x3F));
+                state = step(state, 0x80 | (c & 0x3F));
+            }
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Инкрементальная проверка фрагмента: позволяет сканировать тело, пришедшее частями
+     *
+     * @param state состояние после предыдущего фрагмента ({@link #INITIAL_STATE} для первого)
+     * @return новое состояние или {@link #MATCH}, если найдено совпадение
+     */
+    public int advance(int state, byte[] data, int offset, int length) {
+        int[] classes = byteClasses;
+        int[] delta = transitions;
+        int width = classCount;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            state = delta[state * width + classes[data[i] & 0xFF]];
+            if (accepting[state]) {
+                return MATCH;
+            }
+        }
+        return state;
+    }
+
+    private int step(int state, int b) {
+        return transitions[state * classCount + byteClasses[b & 0xFF]];
+    }
+
+    private static byte[] quoted(byte[] escaped, char terminator) {
+        ByteArrayOutputStream pattern = new ByteArrayOutputStream(escaped.length + 2);
+        pattern.write('"');
+        pattern.write(escaped, 0, escaped.length);
+        pattern.write(terminator);
+        return pattern.toByteArray();
+    }
+
+    private static int[] newRow(int classCount) {
+        int[] row = new int[classCount];
+        Arrays.fill(row, -1);
+        return row;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш результатов маскировки для повторяющихся одинаковых тел.
+ *
+ * Ключ — план маскировки, 64-битный некриптографический хеш тела и его длина.
+ * Запись хранит и исходное тело: при совпадении ключа содержимое сравнивается
+ * побайтно, поэтому коллизия хеша не может выдать замаскированное чужое тело.
+ *
+ * Кэш разбит на независимые сегменты, у каждого своя блокировка и LRU-очередь.
+ * Размер записи — исходное и замаскированное тело; при превышении лимита сегмента
+ * вытесняются самые давно использованные записи, просроченные удаляются при чтении.
+ * Смена правил ({@link JsonMaskingService#reload}) очищает кэш целиком.
+ */
+final class MaskedBodyCache {
+
+    private static final int STRIPES = 16;
+
+    /** Примерные накладные расходы на запись: ключ, запись, узел LinkedHashMap */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private final Stripe[] stripes;
+    private final long maxEntrySize;
+    private final long ttlNanos;
+    private final MaskingRecorder recorder;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize      суммарный размер записей в байтах
+     * @param maxEntrySize тела больше этого размера не кэшируются
+     * @param recorder     куда сообщать о вытеснении записей
+     */
+    MaskedBodyCache(long maxSize, long maxEntrySize, Duration ttl, MaskingRecorder recorder) {
+        this.stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(maxSize / STRIPES, 0));
+        }
+        this.maxEntrySize = maxEntrySize;
+        this.ttlNanos = ttl.toNanos();
+        this.recorder = recorder;
+    }
+
+    /**
+     * Подходит ли тело такого размера для кэша
+     */
+    boolean accepts(long size) {
+        return size > 0 && size <= maxEntrySize;
+    }
+
+    /**
+     * Замаскированное тело из кэша или null. Возвращаемый массив нельзя изменять
+     *
+     * @param body исходное тело от position до limit; позиция не меняется
+     * @param hash {@link #hash(ByteBuffer)} этого тела
+     */
+    byte[] get(MaskingPlan plan, ByteBuffer body, long hash) {
+        Key key = new Key(plan, hash, body.remaining());
+        Stripe stripe = stripe(hash);
+        Entry entry;
+        boolean expired = false;
+        synchronized (stripe) {
+            entry = stripe.entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdNanos > ttlNanos) {
+                stripe.remove(key, entry);
+                entry = null;
+                expired = true;
+            }
+        }
+        if (expired) {
+            evicted("expired", 1);
+        }
+        if (entry == null || !ByteBuffer.wrap(entry.original).equals(body)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.masked;
+    }
+
+    /**
+     * Сохраняет результат маскировки. Исходное тело копируется, masked хранится
+     * как есть и не должен изменяться после вызова
+     */
+    void put(MaskingPlan plan, ByteBuffer body, long hash, byte[] masked) {
+        byte[] original = new byte[body.remaining()];
+        body.duplicate().get(original);
+        Key key = new Key(plan, hash, original.length);
+        Entry entry = new Entry(original, masked, System.nanoTime());
+        Stripe stripe = stripe(hash);
+        int evictedCount = 0;
+        synchronized (stripe) {
+            if (entry.weight > stripe.maxWeight) {
+                return;
+            }
+            Entry previous = stripe.entries.put(key, entry);
+            stripe.weight += entry.weight - (previous != null ? previous.weight : 0);
+            Iterator<Entry> eldest = stripe.entries.values().iterator();
+            while (stripe.weight > stripe.maxWeight) {
+                Entry victim = eldest.next();
+                eldest.remove();
+                stripe.weight -= victim.weight;
+                evictedCount++;
+            }
+        }
+        evicted("size", evictedCount);
+    }
+
+    /**
+     * Удаляет все записи
+     */
+    void invalidateAll() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.entries.clear();
+                stripe.weight = 0;
+            }
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 64-битный хеш тела от position до limit: цикл обработки хвоста XXH64,
+     * применённый ко всему телу (по 8 байт за шаг), и его финальное перемешивание
+     */
+    static long hash(ByteBuffer body) {
+        ByteBuffer data = body.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int position = data.position();
+        int limit = data.limit();
+        long hash = PRIME_5 + (limit - position);
+        for (; position + Long.BYTES <= limit; position += Long.BYTES) {
+            long k = Long.rotateLeft(data.getLong(position) * PRIME_2, 31) * PRIME_1;
+            hash = Long.rotateLeft(hash ^ k, 27) * PRIME_1 + PRIME_4;
+        }
+        for (; position < limit; position++) {
+            hash = Long.rotateLeft(hash ^ (data.get(position) & 0xFF) * PRIME_5, 11) * PRIME_1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ (hash >>> 32);
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> 60) & (STRIPES - 1)];
+    }
+
+    private void evicted(String cause, int count) {
+        for (int i = 0; i < count; i++) {
+            evictions.increment();
+            recorder.recordCacheEviction(cause);
+        }
+    }
+
+    /**
+     * Сегмент кэша: LRU-порядок обеспечивает LinkedHashMap с порядком доступа
+     */
+    private static final class Stripe {
+        final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final long maxWeight;
+        long weight;
+
+        Stripe(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        void remove(Key key, Entry entry) {
+            if (entries.remove(key, entry)) {
+                weight -= entry.weight;
+            }
+        }
+    }
+
+    /**
+     * План сравнивается по ссылке: у каждой версии правил свои записи
+     */
+    private static final class Key {
+        final MaskingPlan plan;
+        final long hash;
+        final int length;
+
+        Key(MaskingPlan plan, long hash, int length) {
+            this.plan = plan;
+            this.hash = hash;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.plan == plan && key.hash == hash && key.length == length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + System.identityHashCode(plan);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] original;
+        final byte[] masked;
+        final long createdNanos;
+        final long weight;
+
+        Entry(byte[] original, byte[] masked, long createdNanos) {
+            this.original = original;
+            this.masked = masked;
+            this.createdNanos = createdNanos;
+            this.weight = (long) original.length + masked.length + ENTRY_OVERHEAD;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Выходной поток, который маскирует тело application/x-www-form-urlencoded
+ * (и строку запроса) прямо в закодированном виде.
+ *
+ * Сканер идёт по байтам: копит только имя текущего параметра, ищет правило
+ * по сырым байтам через {@link FieldNameIndex} и, если правила нет, передаёт
+ * значение в target без копирования, порциями до следующего '&amp;'. Декодируются
+ * лишь имена с '%' или '+' и значения параметров с правилом: такое значение
+ * копится до конца, раскодируется как UTF-8, маскируется и кодируется обратно.
+ * Остальные байты, включая порядок и разделители, не меняются.
+ *
+ * Экземпляр не потокобезопасен.
+ */
+public class MaskingFormOutputStream extends MaskingOutputStream {
+
+    private final FieldNameIndex fieldNames;
+    private final MaskingRecorder recorder;
+    private final OutputStream target;
+
+    private State state = State.NAME;
+    private byte[] name = new byte[64];
+    private int nameLength;
+    private byte[] value = new byte[64];
+    private int valueLength;
+    /** Правило значения, которое сейчас копится */
+    private FieldRule rule;
+    /** Раскодированное имя или значение */
+    private byte[] scratch = new byte[64];
+
+    private final byte[] singleByte = new byte[1];
+    private boolean masked;
+    private boolean finished;
+
+    MaskingFormOutputStream(MaskingPlan plan, OutputStream target, MaskingRecorder recorder) {
+        this.fieldNames = plan.getFieldNameIndex();
+        this.recorder = recorder;
+        this.target = target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Form stream is already finished");
+        }
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            switch (state) {
+                case NAME:
+                    i = scanName(b, i, end);
+                    break;
+                case COPY_VALUE:
+                    i = copyValue(b, i, end);
+                    break;
+                default:
+                    i = collectValue(b, i, end);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    /**
+     * Дописывает последний параметр. Target не закрывается
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (state == State.MASK_VALUE) {
+            writeMaskedValue();
+        } else if (state == State.NAME) {
+            target.write(name, 0, nameLength);
+        }
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        target.close();
+    }
+
+    /**
+     * Было ли замаскировано хотя бы одно значение
+     */
+    boolean isMasked() {
+        return masked;
+    }
+
+    private int scanName(byte[] b, int from, int end) throws IOException {
+        for (int i = from; i < end; i++) {
+            byte c = b[i];
+            if (c == '=' || c == '&') {
+                name = append(name, nameLength, b, from, i - from);
+                nameLength += i - from;
+                target.write(name, 0, nameLength);
+                target.write(c);
+                if (c == '=') {
+                    rule = findRule();
+                    state = rule != null ? State.MASK_VALUE : State.COPY_VALUE;
+                }
+                nameLength = 0;
+                return i + 1;
+            }
+        }
+        name = append(name, nameLength, b, from, end - from);
+        nameLength += end - from;
+        return end;
+    }
+
+    private int copyValue(byte[] b, int from, int end) throws IOException {
+        int separator = indexOf(b, from, end);
+        int stop = separator < 0 ? end : separator + 1;
+        target.write(b, from, stop - from);
+        if (separator >= 0) {
+            state = State.NAME;
+        }
+        return stop;
+    }
+
+    private int collectValue(byte[] b, int from, int end) throws IOException {
+        int separator = indexOf(b, from, end);
+        int stop = separator < 0 ? end : separator;
+        value = append(value, valueLength, b, from, stop - from);
+        valueLength += stop - from;
+        if (separator < 0) {
+            return end;
+        }
+        writeMaskedValue();
+        target.write('&');
+        state = State.NAME;
+        return separator + 1;
+    }
+
+    private FieldRule findRule() {
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] == '%' || name[i] == '+') {
+                return fieldNames.find(scratch, 0, decode(name, nameLength));
+            }
+        }
+        return fieldNames.find(name, 0, nameLength);
+    }
+
+    private void writeMaskedValue() throws IOException {
+        String decoded = new String(scratch, 0, decode(value, valueLength), StandardCharsets.UTF_8);
+        String result = rule.mask(decoded);
+        if (result == decoded) {
+            target.write(value, 0, valueLength);
+        } else {
+            masked = true;
+            recorder.recordFieldMasked(rule.getFieldName());
+            target.write(URLEncoder.encode(result, StandardCharsets.UTF_8).getBytes(StandardCharsets.US_ASCII));
+        }
+        valueLength = 0;
+        rule = null;
+    }
+
+    /**
+     * Раскодирует '+' и %XX в scratch; неверные последовательности остаются как есть
+     *
+     * @return длина раскодированных байтов
+     */
+    private int decode(byte[] b, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(scratch.length * 2, length)];
+        }
+        int out = 0;
+        for (int i = 0; i < length; i++) {
+            byte c = b[i];
+            if (c == '+') {
+                c = ' ';
+            } else if (c == '%' && i + 2 < length) {
+                int high = Character.digit(b[i + 1], 16);
+                int low = Character.digit(b[i + 2], 16);
+                if (high >= 0 && low >= 0) {
+                    c = (byte) (high << 4 | low);
+                    i += 2;
+                }
+            }
+            scratch[out++] = c;
+        }
+        return out;
+    }
+
+    private static int indexOf(byte[] b, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (b[i] == '&') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] append(byte[] buffer, int length, byte[] b, int from, int count) {
+        if (length + count > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + count)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        System.arraycopy(b, from, buffer, length, count);
+        return buffer;
+    }
+
+    private enum State {
+        /** Копится имя параметра */
+        NAME,
+        /** Значение без правила передаётся как есть */
+        COPY_VALUE,
+        /** Значение с правилом копится для маскировки */
+        MASK_VALUE
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Генератор, который маскирует JSON по мере записи.
+ *
+ * Сериализатор (например, {@code ObjectMapper.writeValue(generator, dto)}) пишет токены
+ * сюда, а они через {@link JsonStreamMasker} сразу уходят в целевой генератор с
+ * подменёнными значениями настроенных полей. Ни дерево, ни промежуточная строка
+ * с незамаскированным JSON не создаются.
+ *
+ * Экземпляр хранит состояние одного документа и не потокобезопасен.
+ */
+public class MaskingJsonGenerator extends JsonGeneratorDelegate {
+
+    private final JsonStreamMasker masker;
+
+    MaskingJsonGenerator(MaskingPlan plan, JsonFactory factory, JsonGenerator target, MaskingRecorder recorder) {
+        // writeObject / writeTree / copyCurrentEvent должны идти через этот генератор
+        super(target, false);
+        this.masker = new JsonStreamMasker(plan, factory, target, recorder);
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        masker.writeStartObject();
+    }
+
+    @Override
+    public void writeStartObject(Object forValue) throws IOException {
+        masker.writeStartObject();
+    }
+
+    @Override
+    public void writeStartObject(Object forValue, int size) throws IOException {
+        masker.writeStartObject();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        masker.writeEndObject();
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        masker.writeStartArray();
+    }
+
+    @Override
+    public void writeStartArray(int size) throws IOException {
+        masker.writeStartArray();
+    }
+
+    @Override
+    public void writeStartArray(Object forValue) throws IOException {
+        masker.writeStartArray();
+    }
+
+    @Override
+    public void writeStartArray(Object forValue, int size) throws IOException {
+        masker.writeStartArray();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        masker.writeEndArray();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        masker.writeFieldName(name);
+    }
+
+    @Override
+    public void writeFieldName(SerializableString name) throws IOException {
+        masker.writeFieldName(name.getValue());
+    }
+
+    @Override
+    public void writeFieldId(long id) throws IOException {
+        masker.writeFieldName(Long.toString(id));
+    }
+
+    @Override
+    public void writeArray(int[] array, int offset, int length) throws IOException {
+        masker.writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        masker.writeEndArray();
+    }
+
+    @Override
+    public void writeArray(long[] array, int offset, int length) throws IOException {
+        masker.writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        masker.writeEndArray();
+    }
+
+    @Override
+    public void writeArray(double[] array, int offset, int length) throws IOException {
+        masker.writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        masker.writeEndArray();
+    }
+
+    @Override
+    public void writeArray(String[] array, int offset, int length) throws IOException {
+        masker.writeStartArray();
+        for (int i = offset; i < offset + length; i++) {
+            writeString(array[i]);
+        }
+        masker.writeEndArray();
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        if (text == null) {
+            writeNull();
+            return;
+        }
+        char[] chars = text.toCharArray();
+        masker.writeString(chars, 0, chars.length);
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int length) throws IOException {
+        masker.writeString(text, offset, length);
+    }
+
+    @Override
+    public void writeString(SerializableString text) throws IOException {
+        writeString(text.getValue());
+    }
+
+    @Override
+    public void writeString(Reader reader, int length) throws IOException {
+        StringBuilder text = new StringBuilder(Math.max(length, 16));
+        char[] buffer = new char[1024];
+        int remaining = length < 0 ? Integer.MAX_VALUE : length;
+        int read;
+        while (remaining > 0 && (read = reader.read(buffer, 0, Math.min(buffer.length, remaining))) != -1) {
+            text.append(buffer, 0, read);
+            remaining -= read;
+        }
+        writeString(text.toString());
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException {
+        writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void writeRawValue(String text) throws IOException {
+        masker.scalarTarget().writeRawValue(text);
+    }
+
+    @Override
+    public void writeRawValue(String text, int offset, int length) throws IOException {
+        masker.scalarTarget().writeRawValue(text, offset, length);
+    }
+
+    @Override
+    public void writeRawValue(char[] text, int offset, int length) throws IOException {
+        masker.scalarTarget().writeRawValue(text, offset, length);
+    }
+
+    @Override
+    public void writeBinary(Base64Variant variant, byte[] data, int offset, int length) throws IOException {
+        masker.scalarTarget().writeBinary(variant, data, offset, length);
+    }
+
+    @Override
+    public int writeBinary(Base64Variant variant, InputStream data, int dataLength) throws IOException {
+        return masker.scalarTarget().writeBinary(variant, data, dataLength);
+    }
+
+    @Override
+    public void writeNumber(short value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(BigInteger value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(BigDecimal value) throws IOException {
+        masker.scalarTarget().writeNumber(value);
+    }
+
+    @Override
+    public void writeNumber(String encodedValue) throws IOException {
+        masker.scalarTarget().writeNumber(encodedValue);
+    }
+
+    @Override
+    public void writeNumber(char[] encodedValue, int offset, int length) throws IOException {
+        masker.scalarTarget().writeNumber(encodedValue, offset, length);
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        masker.scalarTarget().writeBoolean(state);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        masker.scalarTarget().writeNull();
+    }
+
+    @Override
+    public void writeEmbeddedObject(Object object) throws IOException {
+        masker.scalarTarget().writeEmbeddedObject(object);
+    }
+}
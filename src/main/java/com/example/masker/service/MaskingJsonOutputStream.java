@@ -0,0 +1,180 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.exc.StreamReadException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Выходной поток, который маскирует JSON по мере записи.
+ *
+ * Байты UTF-8 передаются неблокирующему парсеру Jackson, токены сразу проходят
+ * через {@link JsonStreamMasker}, а результат пишется в целевой поток через
+ * буфер генератора. Тело целиком не накапливается: объём памяти ограничен
+ * буфером генератора, недочитанным токеном и отложенными объектами code / codeValue.
+ *
+ * Если ошибка разбора случилась до первого токена (тело — не JSON), исходные байты
+ * передаются в целевой поток без изменений, как и в буферизованном режиме.
+ * Если документ оборвался позже, клиент получает уже замаскированную часть,
+ * а остаток отбрасывается, чтобы незамаскированные данные не ушли дальше.
+ *
+ * Экземпляр не потокобезопасен.
+ */
+public class MaskingJsonOutputStream extends MaskingOutputStream {
+    
+    private final OutputStream target;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final JsonGenerator generator;
+    private final JsonStreamMasker masker;
+    
+    private final MaskingRecorder recorder;
+    /** Счётчик байт результата; null, если метрики не записываются */
+    private final CountingOutputStream counted;
+    private long bytesIn;
+    /** Время внутри write / finish, без ожидания приложения */
+    private long maskingNanos;
+    
+    /** Исходные байты до первого токена — для прозрачной передачи не-JSON тела */
+    private byte[] leadingBytes = new byte[64];
+    private int leadingLength;
+    private boolean tokenSeen;
+    
+    private final byte[] singleByte = new byte[1];
+    private State state = State.MASKING;
+    
+    private enum State { MASKING, PASS_THROUGH, TRUNCATED, FINISHED }
+    
+    MaskingJsonOutputStream(MaskingPlan plan, JsonFactory factory, OutputStream target,
+                            MaskingRecorder recorder) throws IOException {
+        this.target = target;
+        this.recorder = recorder;
+        this.counted = recorder != MaskingRecorder.NOOP ? new CountingOutputStream(target) : null;
+        this.parser = factory.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.generator = factory.createGenerator(counted != null ? counted : target, JsonEncoding.UTF8);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        this.masker = new JsonStreamMasker(plan, factory, generator, recorder);
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        switch (state) {
+            case PASS_THROUGH -> target.write(b, off, len);
+            case TRUNCATED -> {
+                // Остаток оборванного документа не передаём
+            }
+            case FINISHED -> throw new IOException("Stream already finished");
+            case MASKING -> {
+                if (len == 0) {
+                    return;
+                }
+                if (!tokenSeen) {
+                    rememberLeadingBytes(b, off, len);
+                }
+                long start = counted != null ? System.nanoTime() : 0;
+                bytesIn += len;
+                try {
+                    feeder.feedInput(b, off, off + len);
+                    drain();
+                } catch (StreamReadException e) {
+                    fail(e);
+                }
+                if (counted != null) {
+                    maskingNanos += System.nanoTime() - start;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Сбрасывает в целевой поток всё, что уже замаскировано
+     */
+    @Override
+    public void flush() throws IOException {
+        if (state == State.MASKING) {
+            generator.flush();
+        }
+        target.flush();
+    }
+    
+    /**
+     * Завершает документ: дочитывает последние токены и сбрасывает генератор.
+     * Целевой поток не закрывается
+     */
+    @Override
+    public void finish() throws IOException {
+        if (state == State.FINISHED) {
+            return;
+        }
+        long start = counted != null ? System.nanoTime() : 0;
+        if (state == State.MASKING) {
+            try {
+                feeder.endOfInput();
+                drain();
+            } catch (StreamReadException e) {
+                fail(e);
+            }
+        }
+        if (state == State.MASKING) {
+            generator.flush();
+            if (counted != null && tokenSeen) {
+                recorder.recordMasking(maskingNanos + System.nanoTime() - start, bytesIn, counted.getCount());
+            }
+        }
+        state = State.FINISHED;
+        generator.close();
+        parser.close();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        finish();
+        target.close();
+    }
+    
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            tokenSeen = true;
+            leadingBytes = null;
+            masker.copyCurrentToken(parser);
+        }
+    }
+    
+    private void fail(StreamReadException cause) throws IOException {
+        recorder.recordParseFailure(cause);
+        if (!tokenSeen) {
+            // Тело оказалось не JSON: отдаём его как есть
+            state = State.PASS_THROUGH;
+            target.write(leadingBytes, 0, leadingLength);
+            leadingBytes = null;
+        } else {
+            state = State.TRUNCATED;
+            generator.flush();
+        }
+    }
+    
+    private void rememberLeadingBytes(byte[] b, int off, int len) {
+        if (leadingLength + len > leadingBytes.length) {
+            leadingBytes = Arrays.copyOf(leadingBytes, Math.max(leadingLength + len, leadingBytes.length * 2));
+        }
+        System.arraycopy(b, off, leadingBytes, leadingLength, len);
+        leadingLength += len;
+    }
+}
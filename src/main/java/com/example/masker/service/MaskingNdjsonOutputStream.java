@@ -0,0 +1,160 @@
+package com.example.masker.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Выходной поток, который маскирует NDJSON (JSON Lines) по записям.
+ *
+ * Записи разделяются байтом '\n': в JSON он встречается только как пробельный
+ * символ между токенами, а в UTF-8 не входит в многобайтовые символы. Недописанная
+ * запись копится в буфере, поэтому память ограничена самой длинной записью.
+ * Каждая завершённая запись маскируется независимо, как
+ * {@link JsonMaskingService#maskJsonBytes(byte[])}: запись, которая не является JSON
+ * или в которой нет настроенных полей, передаётся как есть. Разделители
+ * ('\n' или "\r\n") и пустые строки сохраняются.
+ *
+ * Если поток создан для передачи по мере поступления, после каждой порции,
+ * завершившей хотя бы одну запись, target сбрасывается, чтобы события долгоживущего
+ * потока не задерживались в буферах. Записи одной порции могут маскироваться
+ * параллельно ({@link MaskingPlan#isNdjsonParallel()}), порядок вывода сохраняется.
+ *
+ * Экземпляр не потокобезопасен.
+ */
+public class MaskingNdjsonOutputStream extends MaskingOutputStream {
+
+    private final JsonMaskingService service;
+    private final MaskingPlan plan;
+    private final OutputStream target;
+    private final boolean flushRecords;
+
+    /** Начало записи, конец которой ещё не пришёл */
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+
+    /** Записи, завершённые текущей порцией, без разделителей */
+    private final List<byte[]> completed = new ArrayList<>();
+    /** Какие из завершённых записей оканчивались на "\r\n" */
+    private final BitSet crlf = new BitSet();
+
+    private final byte[] singleByte = new byte[1];
+    private boolean finished;
+
+    /**
+     * @param flushRecords сбрасывать target после каждой порции с завершёнными записями
+     */
+    MaskingNdjsonOutputStream(JsonMaskingService service, MaskingPlan plan, OutputStream target,
+                              boolean flushRecords) {
+        this.service = service;
+        this.plan = plan;
+        this.target = target;
+        this.flushRecords = flushRecords;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("NDJSON stream is already finished");
+        }
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                completeRecord(b, start, i);
+                start = i + 1;
+            }
+        }
+        append(b, start, end - start);
+        if (!completed.isEmpty()) {
+            writeCompleted();
+            if (flushRecords) {
+                target.flush();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    /**
+     * Маскирует последнюю запись, если после неё не было перевода строки.
+     * Target не закрывается
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (pendingLength > 0) {
+            byte[] record = new byte[pendingLength];
+            System.arraycopy(pending, 0, record, 0, pendingLength);
+            pendingLength = 0;
+            target.write(service.maskJsonBytes(plan, record));
+        }
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        target.close();
+    }
+
+    /**
+     * Собирает запись из накопленного начала и {@code b[from, to)}; '\r' перед
+     * переводом строки в запись не входит
+     */
+    private void completeRecord(byte[] b, int from, int to) {
+        int length = pendingLength + (to - from);
+        boolean cr = to > from ? b[to - 1] == '\r' : pendingLength > 0 && pending[pendingLength - 1] == '\r';
+        if (cr) {
+            length--;
+        }
+        byte[] record = new byte[length];
+        int head = Math.min(pendingLength, length);
+        System.arraycopy(pending, 0, record, 0, head);
+        System.arraycopy(b, from, record, head, length - head);
+        pendingLength = 0;
+
+        crlf.set(completed.size(), cr);
+        completed.add(record);
+    }
+
+    private void append(byte[] b, int from, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (pendingLength + length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(b, from, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private void writeCompleted() throws IOException {
+        List<byte[]> masked = service.maskRecords(plan, completed);
+        for (int i = 0; i < masked.size(); i++) {
+            target.write(masked.get(i));
+            if (crlf.get(i)) {
+                target.write('\r');
+            }
+            target.write('\n');
+        }
+        completed.clear();
+        crlf.clear();
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.masker.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Выходной поток, который маскирует записываемое в него тело и передаёт результат
+ * в целевой поток. Создаётся {@link JsonMaskingService#maskingOutputStream(BodyFormat, OutputStream)}
+ */
+public abstract class MaskingOutputStream extends OutputStream {
+
+    /**
+     * Дописывает хвост тела после окончания записи. Целевой поток не закрывается
+     */
+    public abstract void finish() throws IOException;
+
+    /**
+     * Освобождает ресурсы, если тело не будет дописано (ошибка, отмена). По умолчанию
+     * ничего не делает: держать ресурсы нужно только потокам, которые копят тело
+     */
+    public void discard() throws IOException {
+    }
+}
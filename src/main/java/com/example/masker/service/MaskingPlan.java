@@ -0,0 +1,281 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Неизменяемый скомпилированный план маскировки.
+ *
+ * Строится один раз из {@link MaskingProperties}: правила полей с уже вычисленными
+ * символом и диапазоном маскировки, автомат правил с путём и автомат
+ * предварительной проверки. Профили маршрутов компилируются в собственные планы
+ * вместе с уже разобранными шаблонами URL.
+ * План можно безопасно разделять между потоками; при изменении настроек
+ * строится новый план, а текущие запросы дорабатывают со старым.
+ */
+public final class MaskingPlan {
+
+    /**
+     * План без правил: маршрут, на котором маскировка отключена
+     */
+    private static final MaskingPlan EMPTY = compile(List.of(), new MaskingProperties(), List.of(), null);
+
+    private final Map<String, FieldRule> rules;
+    /** Правила по имени для сырых байтов: имена параметров форм и строки запроса */
+    private final FieldNameIndex fieldNameIndex;
+    /** Правила по имени без учёта регистра: имена заголовков в нижнем регистре */
+    private final Map<String, FieldRule> headerRules;
+    private final PathMatcher pathMatcher;
+    private final KeyPreScanner keyPreScanner;
+    private final List<Route> routes;
+    private final int embeddedJsonMaxDepth;
+    private final int embeddedJsonMaxSize;
+    /** Порог параллельной маскировки массивов; 0 — выключена */
+    private final int parallelArrayThreshold;
+    /** Маскировать записи NDJSON одной порции параллельно */
+    private final boolean ndjsonParallel;
+    /** Шаблон маршрута, для которого скомпилирован план; null — корневой план */
+    private final String route;
+
+    private MaskingPlan(Map<String, FieldRule> rules, Map<String, FieldRule> headerRules, PathMatcher pathMatcher,
+                        KeyPreScanner keyPreScanner, List<Route> routes, int embeddedJsonMaxDepth,
+                        int embeddedJsonMaxSize, int parallelArrayThreshold, boolean ndjsonParallel, String route) {
+        this.rules = rules;
+        this.fieldNameIndex = FieldNameIndex.compile(rules);
+        this.headerRules = headerRules;
+        this.pathMatcher = pathMatcher;
+        this.keyPreScanner = keyPreScanner;
+        this.routes = routes;
+        this.embeddedJsonMaxDepth = embeddedJsonMaxDepth;
+        this.embeddedJsonMaxSize = embeddedJsonMaxSize;
+        this.parallelArrayThreshold = parallelArrayThreshold;
+        this.ndjsonParallel = ndjsonParallel;
+        this.route = route;
+    }
+
+    /**
+     * Компилирует план из конфигурации.
+     * При повторяющихся именах полей или путях действует последнее правило
+     *
+     * @throws IllegalArgumentException если путь или шаблон маршрута записан неверно
+     */
+    public static MaskingPlan compile(MaskingProperties properties) {
+        List<Route> routes = new ArrayList<>();
+        for (MaskingProperties.RouteConfig route : properties.getRoutes()) {
+            routes.add(Route.compile(route, properties));
+        }
+        return compile(properties.getFields(), properties, List.copyOf(routes), null);
+    }
+
+    /**
+     * Компилирует план для набора полей; остальные настройки берутся из properties
+     */
+    private static MaskingPlan compile(List<MaskingProperties.FieldMaskingConfig> fields,
+                                       MaskingProperties properties, List<Route> routes, String route) {
+        char defaultMaskChar = properties.getDefaultMaskChar();
+        Map<String, FieldRule> rules = new HashMap<>();
+        Map<String, FieldRule> pathRules = new LinkedHashMap<>();
+        for (MaskingProperties.FieldMaskingConfig config : fields) {
+            if (config.getPath() != null) {
+                pathRules.remove(config.getPath());
+                pathRules.put(config.getPath(), FieldRule.compile(config, defaultMaskChar));
+            } else if (config.getFieldName() != null) {
+                rules.put(config.getFieldName(), FieldRule.compile(config, defaultMaskChar));
+            }
+        }
+
+        Map<String, FieldRule> headerRules = new HashMap<>();
+        for (Map.Entry<String, FieldRule> rule : rules.entrySet()) {
+            headerRules.put(rule.getKey().toLowerCase(Locale.ROOT), rule.getValue());
+        }
+
+        // Правило по пути может сработать, только если в теле есть последнее имя из пути
+        Set<String> keys = new HashSet<>(rules.keySet());
+        for (String path : pathRules.keySet()) {
+            keys.add(PathMatcher.lastFieldName(path));
+        }
+        return new MaskingPlan(Collections.unmodifiableMap(rules), Map.copyOf(headerRules),
+                PathMatcher.compile(pathRules),
+                KeyPreScanner.compile(keys), routes,
+                Math.max(properties.getEmbeddedJsonMaxDepth(), 0),
+                (int) Math.min(properties.getEmbeddedJsonMaxSize().toBytes(), Integer.MAX_VALUE),
+                properties.isParallelArrayMasking() ? Math.max(properties.getParallelArrayThreshold(), 1) : 0,
+                properties.isNdjsonParallel(), route);
+    }
+
+    /**
+     * Есть ли профили маршрутов. Без них путь запроса можно не разбирать
+     */
+    public boolean hasRoutes() {
+        return !routes.isEmpty();
+    }
+
+    /**
+     * План для запроса: план первого подходящего маршрута (пустой, если маршрут
+     * не маскирует это направление) или этот план, если маршрут не найден
+     *
+     * @param path путь внутри приложения
+     */
+    public MaskingPlan resolve(String method, PathContainer path, MaskingProperties.MaskingDirection direction) {
+        Route route = match(method, path);
+        return route == null ? this : route.planFor(direction);
+    }
+
+    /**
+     * Первый маршрут, под который подходит запрос, или null
+     */
+    Route match(String method, PathContainer path) {
+        for (Route route : routes) {
+            if (route.matches(method, path)) {
+                return route;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Нет ни одного правила — маскировать нечего
+     */
+    public boolean isEmpty() {
+        return rules.isEmpty() && pathMatcher.isEmpty();
+    }
+
+    /**
+     * Можно ли скопировать контейнер в этом состоянии пути целиком, не проверяя ключи:
+     * ни один путь в него не ведёт, а правил по имени нет
+     */
+    public boolean isUnreachable(int pathState) {
+        return pathState == PathMatcher.DEAD && rules.isEmpty();
+    }
+
+    /**
+     * Правило для поля или null
+     */
+    public FieldRule getRule(String fieldName) {
+        return rules.get(fieldName);
+    }
+
+    public boolean hasRule(String fieldName) {
+        return rules.containsKey(fieldName);
+    }
+
+    public Map<String, FieldRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Правило для заголовка: имя сравнивается с именами полей без учёта регистра
+     */
+    public FieldRule getHeaderRule(String headerName) {
+        return headerRules.isEmpty() ? null : headerRules.get(headerName.toLowerCase(Locale.ROOT));
+    }
+
+    FieldNameIndex getFieldNameIndex() {
+        return fieldNameIndex;
+    }
+
+    /**
+     * Максимальная глубина вложенного в строки JSON; 0 — не разбирать
+     */
+    public int getEmbeddedJsonMaxDepth() {
+        return embeddedJsonMaxDepth;
+    }
+
+    /**
+     * Максимальная длина строки в символах, которая разбирается как вложенный JSON
+     */
+    public int getEmbeddedJsonMaxSize() {
+        return embeddedJsonMaxSize;
+    }
+
+    public PathMatcher getPathMatcher() {
+        return pathMatcher;
+    }
+
+    public KeyPreScanner getKeyPreScanner() {
+        return keyPreScanner;
+    }
+
+    /**
+     * С какого числа элементов массив верхнего уровня маскируется параллельно;
+     * 0 — параллельная маскировка выключена
+     */
+    public int getParallelArrayThreshold() {
+        return parallelArrayThreshold;
+    }
+
+    /**
+     * Маскируются ли записи NDJSON, пришедшие одной порцией, параллельно
+     */
+    public boolean isNdjsonParallel() {
+        return ndjsonParallel;
+    }
+
+    /**
+     * Шаблон маршрута, для которого скомпилирован план, или null для корневого плана
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Скомпилированный профиль маршрута
+     */
+    static final class Route {
+        private final PathPattern pattern;
+        /** Методы в верхнем регистре; пустое множество — любой метод */
+        private final Set<String> methods;
+        private final MaskingProperties.MaskingDirection direction;
+        private final MaskingPlan plan;
+
+        private Route(PathPattern pattern, Set<String> methods, MaskingProperties.MaskingDirection direction,
+                      MaskingPlan plan) {
+            this.pattern = pattern;
+            this.methods = methods;
+            this.direction = direction;
+            this.plan = plan;
+        }
+
+        static Route compile(MaskingProperties.RouteConfig config, MaskingProperties properties) {
+            if (config.getPattern() == null) {
+                throw new IllegalArgumentException("Route pattern must not be empty");
+            }
+            Set<String> methods = new HashSet<>();
+            for (String method : config.getMethods()) {
+                methods.add(method.toUpperCase(Locale.ROOT));
+            }
+            return new Route(
+                    PathPatternParser.defaultInstance.parse(config.getPattern()),
+                    Set.copyOf(methods),
+                    config.getDirection(),
+                    MaskingPlan.compile(config.getFields(), properties, List.of(), config.getPattern()));
+        }
+
+        boolean matches(String method, PathContainer path) {
+            return (methods.isEmpty() || methods.contains(method)) && pattern.matches(path);
+        }
+
+        boolean appliesTo(MaskingProperties.MaskingDirection requested) {
+            return direction == MaskingProperties.MaskingDirection.BOTH || direction == requested;
+        }
+
+        /**
+         * План маршрута или пустой план, если маршрут не маскирует это направление
+         */
+        MaskingPlan planFor(MaskingProperties.MaskingDirection requested) {
+            return appliesTo(requested) ? plan : EMPTY;
+        }
+    }
+}
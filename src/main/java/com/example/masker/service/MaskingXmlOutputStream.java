@@ -0,0 +1,163 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Выходной поток, который маскирует записываемый в него XML.
+ *
+ * StAX читает документ только блокирующе, из {@link java.io.InputStream}, поэтому
+ * тело, поступающее порциями (неблокирующее чтение запроса, WebFlux), накапливается
+ * и маскируется целиком в {@link #finish()}. В памяти держится не больше
+ * max-in-memory-body-size, дальше тело переносится во временный файл. Тело больше
+ * max-body-size по oversize-policy либо передаётся в target без маскировки
+ * (PASS_THROUGH), либо обрывается с IOException (REJECT). Там, где тело уже лежит
+ * в буфере, используется {@link JsonMaskingService#maskXml}, память которого
+ * не зависит от размера документа.
+ *
+ * Экземпляр не потокобезопасен. Если тело не будет дописано, поток нужно
+ * освободить через {@link #discard()}, чтобы удалить временный файл.
+ */
+public class MaskingXmlOutputStream extends MaskingOutputStream {
+
+    private static final String TEMP_FILE_PREFIX = "masking-xml-";
+
+    private final JsonMaskingService service;
+    private final MaskingPlan plan;
+    private final OutputStream target;
+    private final long maxInMemorySize;
+    private final long maxBodySize;
+    private final boolean reject;
+
+    private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+    /** Тело превысило max-body-size и передаётся в target как есть */
+    private boolean passThrough;
+    private boolean finished;
+
+    MaskingXmlOutputStream(JsonMaskingService service, MaskingPlan plan, OutputStream target,
+                           MaskingProperties properties) {
+        this.service = service;
+        this.plan = plan;
+        this.target = target;
+        this.maxInMemorySize = properties.getMaxInMemoryBodySize().toBytes();
+        this.maxBodySize = properties.getMaxBodySize().toBytes();
+        this.reject = properties.getOversizePolicy() == MaskingProperties.OversizePolicy.REJECT;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("XML stream is already finished");
+        }
+        if (passThrough) {
+            target.write(b, off, len);
+            return;
+        }
+        if (size + len > maxBodySize) {
+            overflow();
+            target.write(b, off, len);
+            return;
+        }
+        if (file == null && size + len > maxInMemorySize) {
+            spill();
+        }
+        (file != null ? fileOut : memory).write(b, off, len);
+        size += len;
+    }
+
+    /**
+     * Маскирует накопленный документ и пишет результат в target. Target не закрывается
+     *
+     * @throws IOException если документ не является корректным XML
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (!passThrough) {
+                try (InputStream body = openBody()) {
+                    service.maskXml(plan, body, target);
+                }
+            }
+        } finally {
+            discard();
+        }
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        target.close();
+    }
+
+    @Override
+    public void discard() throws IOException {
+        finished = true;
+        memory.reset();
+        if (file != null) {
+            try {
+                fileOut.close();
+            } finally {
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        }
+    }
+
+    private InputStream openBody() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(memory.toByteArray());
+        }
+        fileOut.close();
+        return new BufferedInputStream(Files.newInputStream(file));
+    }
+
+    /**
+     * Тело превысило max-body-size: по политике отдаёт накопленное как есть или обрывает запись
+     */
+    private void overflow() throws IOException {
+        if (reject) {
+            discard();
+            throw new IOException("XML body exceeds the configured max-body-size");
+        }
+        passThrough = true;
+        try (InputStream body = openBody()) {
+            body.transferTo(target);
+        } finally {
+            // discard() помечает поток завершённым, а дописывать ещё нужно
+            memory.reset();
+            if (file != null) {
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        file = Files.createTempFile(TEMP_FILE_PREFIX, ".tmp");
+        fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+        memory.writeTo(fileOut);
+        memory.reset();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Определяет по Content-Type, маскируется ли тело и в каком {@link BodyFormat}.
+ *
+ * Правила из {@link MaskingProperties} компилируются один раз. Правило — тип
+ * ({@code application/json}), шаблон подтипа ({@code text/*}) или шаблон с суффиксом
+ * структурированного синтаксиса ({@code application/*+json}, RFC 6839). Регистр, пробелы
+ * и параметры вроде charset на результат не влияют. Точные типы проверяются раньше
+ * шаблонов, среди равных действует порядок в конфигурации.
+ *
+ * Результат для каждой встреченной строки Content-Type кэшируется, поэтому
+ * на запрос приходится один поиск в хеш-таблице. Экземпляр потокобезопасен.
+ */
+public final class MediaTypeClassifier {
+
+    /** Сколько разных строк Content-Type кэшировать; остальные разбираются каждый раз */
+    private static final int MAX_CACHED = 256;
+
+    private final List<Rule> rules;
+    private final ConcurrentHashMap<String, Optional<BodyFormat>> cache = new ConcurrentHashMap<>();
+
+    private MediaTypeClassifier(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Компилирует правила из конфигурации
+     *
+     * @throws IllegalArgumentException если тип записан неверно или у него шаблонный тип ({@code *}/...)
+     */
+    public static MediaTypeClassifier compile(MaskingProperties properties) {
+        List<Rule> exact = new ArrayList<>();
+        List<Rule> patterns = new ArrayList<>();
+        addRules(properties.getNdjsonMediaTypes(), BodyFormat.NDJSON, exact, patterns);
+        addRules(properties.getJsonMediaTypes(), BodyFormat.JSON, exact, patterns);
+        addRules(properties.getXmlMediaTypes(), BodyFormat.XML, exact, patterns);
+        addRules(properties.getFormMediaTypes(), BodyFormat.FORM, exact, patterns);
+        exact.addAll(patterns);
+        return new MediaTypeClassifier(List.copyOf(exact));
+    }
+
+    /**
+     * Формат тела с таким Content-Type или null, если тело не маскируется
+     */
+    public BodyFormat classify(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Optional<BodyFormat> format = cache.get(contentType);
+        if (format == null) {
+            format = Optional.ofNullable(match(contentType));
+            if (cache.size() < MAX_CACHED) {
+                cache.putIfAbsent(contentType, format);
+            }
+        }
+        return format.orElse(null);
+    }
+
+    /**
+     * Маскируется ли тело с таким Content-Type
+     */
+    public boolean isMasked(String contentType) {
+        return classify(contentType) != null;
+    }
+
+    private BodyFormat match(String contentType) {
+        MimeType mimeType;
+        try {
+            mimeType = MimeTypeUtils.parseMimeType(contentType);
+        } catch (InvalidMimeTypeException e) {
+            return null;
+        }
+        // Content-Type с шаблоном не описывает конкретное тело
+        if (mimeType.isWildcardType() || mimeType.isWildcardSubtype()) {
+            return null;
+        }
+        for (Rule rule : rules) {
+            if (rule.mediaType.includes(mimeType)) {
+                return rule.format;
+            }
+        }
+        return null;
+    }
+
+    private static void addRules(List<String> mediaTypes, BodyFormat format, List<Rule> exact, List<Rule> patterns) {
+        for (String value : mediaTypes) {
+            MimeType mediaType;
+            try {
+                mediaType = MimeTypeUtils.parseMimeType(value);
+            } catch (InvalidMimeTypeException e) {
+                throw new IllegalArgumentException("Invalid media type '" + value + "': " + e.getMessage(), e);
+            }
+            if (mediaType.isWildcardType()) {
+                throw new IllegalArgumentException("Media type '" + value + "' must have a concrete type");
+            }
+            (mediaType.isWildcardSubtype() ? patterns : exact).add(new Rule(mediaType, format));
+        }
+    }
+
+    private static final class Rule {
+        final MimeType mediaType;
+        final BodyFormat format;
+
+        Rule(MimeType mediaType, BodyFormat format) {
+            this.mediaType = mediaType;
+            this.format = format;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.UnaryOperator;
+
+/**
+ * Параллельная маскировка большого JSON-массива верхнего уровня.
+ *
+ * Один проход по байтам (с учётом строк и экранирования) находит границы элементов
+ * массива. Если элементов не меньше порога, массив делится на части по границам
+ * элементов, каждая часть маскируется отдельным {@link JsonStreamMasker} в
+ * {@link ForkJoinPool}, а результаты пишутся в выходной поток по порядку, как
+ * только готова очередная часть. Части читаются из исходного буфера без копирования.
+ *
+ * Состояние пути у частей то же, что у целого документа (корень — массив),
+ * поэтому правила по пути вида {@code [*].password} работают как обычно.
+ *
+ * В том же пуле маскируются записи NDJSON, пришедшие одной порцией ({@link #maskAll}).
+ */
+final class ParallelArrayMasker {
+
+    private static final byte[] OPEN = {'['};
+    private static final byte[] CLOSE = {']'};
+
+    /** Частей на поток: небольшой запас сглаживает разную длину элементов */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final JsonFactory factory;
+
+    /**
+     * @param parallelism число потоков выделенного пула
+     */
+    ParallelArrayMasker(int parallelism, JsonFactory factory) {
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("json-masking-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.factory = factory;
+    }
+
+    /**
+     * Останавливает потоки пула; уже начатые части дорабатывают
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Маскирует массив параллельно, если корень документа — массив, в котором
+     * не меньше порога элементов
+     *
+     * @return false — документ не подходит, в out ничего не записано
+     * @throws IOException если часть документа не удалось разобрать; в out к этому
+     *                     моменту могут быть записаны предыдущие части
+     */
+    boolean mask(MaskingPlan plan, MaskingRecorder recorder, ByteBuffer json, OutputStream out) throws IOException {
+        Boundaries boundaries = Boundaries.scan(json, plan.getParallelArrayThreshold());
+        if (boundaries == null) {
+            return false;
+        }
+
+        int elements = boundaries.separatorCount + 1;
+        int segments = Math.min(elements, pool.getParallelism() * SEGMENTS_PER_THREAD);
+        int perSegment = (elements + segments - 1) / segments;
+        segments = (elements + perSegment - 1) / perSegment;
+
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            int first = i * perSegment;
+            int last = Math.min(first + perSegment, elements) - 1;
+            int start = first == 0 ? boundaries.open + 1 : boundaries.separators[first - 1] + 1;
+            int end = last == elements - 1 ? boundaries.close : boundaries.separators[last];
+            ByteBuffer slice = json.duplicate();
+            slice.limit(end).position(start);
+            tasks.add(pool.submit(() -> maskSegment(plan, recorder, slice)));
+        }
+
+        try {
+            out.write('[');
+            for (int i = 0; i < tasks.size(); i++) {
+                byte[] masked = tasks.get(i).get();
+                if (i > 0) {
+                    out.write(',');
+                }
+                // Без скобок, которыми часть была обёрнута для разбора
+                out.write(masked, 1, masked.length - 2);
+            }
+            out.write(']');
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(false));
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Parallel masking failed", e.getCause());
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while masking array segments");
+        }
+        return true;
+    }
+
+    /**
+     * Маскирует независимые записи (строки NDJSON) в том же пуле
+     *
+     * @return результаты в порядке записей
+     */
+    List<byte[]> maskAll(List<byte[]> records, UnaryOperator<byte[]> mask) throws IOException {
+        List<ForkJoinTask<byte[]>> tasks = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            tasks.add(pool.submit(() -> mask.apply(record)));
+        }
+        List<byte[]> masked = new ArrayList<>(records.size());
+        try {
+            for (ForkJoinTask<byte[]> task : tasks) {
+                masked.add(task.get());
+            }
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(false));
+            throw new IOException("Parallel masking failed", e.getCause());
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while masking records");
+        }
+        return masked;
+    }
+
+    /**
+     * Маскирует элементы части, обернув их в массив
+     */
+    private byte[] maskSegment(MaskingPlan plan, MaskingRecorder recorder, ByteBuffer slice) throws IOException {
+        InputStream input = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(OPEN),
+                new ByteBufferBackedInputStream(slice),
+                new ByteArrayInputStream(CLOSE))));
+        try (ByteArrayBuilder output = new ByteArrayBuilder(slice.remaining() + 2);
+             JsonParser parser = factory.createParser(input);
+             JsonGenerator generator = factory.createGenerator(output, JsonEncoding.UTF8)) {
+            new JsonStreamMasker(plan, factory, generator, recorder).copy(parser);
+            generator.flush();
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Позиции скобок массива верхнего уровня и запятых между его элементами
+     */
+    private static final class Boundaries {
+        final int open;
+        final int close;
+        final int[] separators;
+        final int separatorCount;
+
+        private Boundaries(int open, int close, int[] separators, int separatorCount) {
+            this.open = open;
+            this.close = close;
+            this.separators = separators;
+            this.separatorCount = separatorCount;
+        }
+
+        /**
+         * Находит границы элементов; null — корень не массив, документ оборван
+         * или элементов меньше порога
+         */
+        static Boundaries scan(ByteBuffer json, int threshold) {
+            int position = json.position();
+            int limit = json.limit();
+            while (position < limit && isWhitespace(json.get(position))) {
+                position++;
+            }
+            if (position == limit || json.get(position) != '[') {
+                return null;
+            }
+
+            int open = position;
+            int[] separators = new int[Math.min(threshold, 1 << 16)];
+            int count = 0;
+            int depth = 0;
+            boolean inString = false;
+            boolean escaped = false;
+            for (int i = open; i < limit; i++) {
+                byte b = json.get(i);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '[' || b == '{') {
+                    depth++;
+                } else if (b == ']' || b == '}') {
+                    if (--depth == 0) {
+                        return count + 1 >= threshold && hasOnlyWhitespace(json, i + 1, limit)
+                                ? new Boundaries(open, i, separators, count)
+                                : null;
+                    }
+                } else if (b == ',' && depth == 1) {
+                    if (count == separators.length) {
+                        separators = Arrays.copyOf(separators, count * 2);
+                    }
+                    separators[count++] = i;
+                }
+            }
+            return null;
+        }
+
+        private static boolean hasOnlyWhitespace(ByteBuffer json, int from, int limit) {
+            for (int i = from; i < limit; i++) {
+                if (!isWhitespace(json.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.masker.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Автомат для правил с путём от корня документа: {@code customer.card.number},
+ * {@code items[*].password}, {@code *.token}.
+ *
+ * Пути собираются в бор, а бор с шаблонами {@code *} (любое поле) и {@code [*]}
+ * (любой элемент массива) детерминизируется при компиляции. Во время обхода
+ * состояние хранится в каждом открытом контейнере и продвигается одним
+ * поиском в хеш-таблице на ключ, независимо от числа правил.
+ *
+ * Состояние {@link #DEAD} означает, что ни один путь из этой точки уже не совпадёт.
+ *
+ * Экземпляр неизменяем и потокобезопасен.
+ */
+public final class PathMatcher {
+
+    /**
+     * Состояние, из которого не достижимо ни одно правило
+     */
+    public static final int DEAD = -1;
+
+    private static final String ANY_FIELD = "*";
+    private static final String ANY_ELEMENT = "[*]";
+
+    private static final PathMatcher EMPTY = new PathMatcher(
+            Collections.emptyList(), new int[0], new int[0], new FieldRule[0]);
+
+    /** Переходы по именам полей для каждого состояния */
+    private final List<Map<String, Integer>> fieldTransitions;
+    /** Переход по полю, которого нет в fieldTransitions */
+    private final int[] otherFieldTransitions;
+    /** Переход по элементу массива */
+    private final int[] elementTransitions;
+    /** Правило, которое действует для значения в этом состоянии */
+    private final FieldRule[] rules;
+
+    private PathMatcher(List<Map<String, Integer>> fieldTransitions, int[] otherFieldTransitions,
+                        int[] elementTransitions, FieldRule[] rules) {
+        this.fieldTransitions = fieldTransitions;
+        this.otherFieldTransitions = otherFieldTransitions;
+        this.elementTransitions = elementTransitions;
+        this.rules = rules;
+    }
+
+    /**
+     * Компилирует автомат. При одинаковых путях действует последнее правило;
+     * если значению соответствуют несколько путей, побеждает путь с меньшим
+     * числом шаблонов
+     *
+     * @param pathRules правила в порядке конфигурации, ключ — путь
+     * @throws IllegalArgumentException если путь записан неверно
+     */
+    public static PathMatcher compile(Map<String, FieldRule> pathRules) {
+        if (pathRules.isEmpty()) {
+            return EMPTY;
+        }
+
+        Node root = new Node(0);
+        int order = 0;
+        for (Map.Entry<String, FieldRule> entry : pathRules.entrySet()) {
+            Node node = root;
+            for (String segment : parse(entry.getKey())) {
+                node = node.child(segment);
+            }
+            node.rule = entry.getValue();
+            node.order = order++;
+        }
+
+        // Детерминизация: состояние — множество узлов бора
+        List<Node> nodes = new ArrayList<>();
+        root.collect(nodes);
+        Map<TreeSet<Integer>, Integer> stateIds = new HashMap<>();
+        List<TreeSet<Integer>> states = new ArrayList<>();
+        List<Map<String, Integer>> fieldTransitions = new ArrayList<>();
+        List<Integer> otherFieldTransitions = new ArrayList<>();
+        List<Integer> elementTransitions = new ArrayList<>();
+        List<FieldRule> rules = new ArrayList<>();
+
+        TreeSet<Integer> initial = new TreeSet<>();
+        initial.add(root.id);
+        stateIds.put(initial, 0);
+        states.add(initial);
+        for (int state = 0; state < states.size(); state++) {
+            TreeSet<Integer> current = states.get(state);
+
+            TreeSet<Integer> anyField = new TreeSet<>();
+            TreeSet<Integer> anyElement = new TreeSet<>();
+            Map<String, TreeSet<Integer>> byName = new LinkedHashMap<>();
+            Node best = null;
+            for (int id : current) {
+                Node node = nodes.get(id);
+                if (node.anyField != null) {
+                    anyField.add(node.anyField.id);
+                }
+                if (node.anyElement != null) {
+                    anyElement.add(node.anyElement.id);
+                }
+                for (Map.Entry<String, Node> child : node.fields.entrySet()) {
+                    byName.computeIfAbsent(child.getKey(), key -> new TreeSet<>()).add(child.getValue().id);
+                }
+                if (node.rule != null && (best == null || node.beats(best))) {
+                    best = node;
+                }
+            }
+
+            Map<String, Integer> transitions = new HashMap<>();
+            for (Map.Entry<String, TreeSet<Integer>> target : byName.entrySet()) {
+                // Поле с именем совпадает и с шаблоном *
+                target.getValue().addAll(anyField);
+                transitions.put(target.getKey(), stateId(target.getValue(), stateIds, states));
+            }
+            fieldTransitions.add(transitions);
+            otherFieldTransitions.add(stateId(anyField, stateIds, states));
+            elementTransitions.add(stateId(anyElement, stateIds, states));
+            rules.add(best != null ? best.rule : null);
+        }
+
+        return new PathMatcher(
+                fieldTransitions,
+                otherFieldTransitions.stream().mapToInt(Integer::intValue).toArray(),
+                elementTransitions.stream().mapToInt(Integer::intValue).toArray(),
+                rules.toArray(new FieldRule[0]));
+    }
+
+    /**
+     * Разбирает путь на сегменты: имена полей, {@code *} и {@code [*]}
+     */
+    static List<String> parse(String path) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalArgumentException("Path must not be empty");
+        }
+        List<String> segments = new ArrayList<>();
+        boolean named = false;
+        for (String part : path.split("\\.", -1)) {
+            String name = part;
+            int bracket = part.indexOf('[');
+            if (bracket >= 0) {
+                name = part.substring(0, bracket);
+            }
+            if (name.isEmpty() && bracket != 0) {
+                throw new IllegalArgumentException("Empty segment in path: " + path);
+            }
+            if (!name.isEmpty()) {
+                segments.add(name);
+                named |= !ANY_FIELD.equals(name);
+            }
+            if (bracket >= 0) {
+                String indexes = part.substring(bracket);
+                if (!indexes.replace(ANY_ELEMENT, "").isEmpty()) {
+                    throw new IllegalArgumentException("Only [*] is supported as an array index: " + path);
+                }
+                for (int i = 0; i < indexes.length(); i += ANY_ELEMENT.length()) {
+                    segments.add(ANY_ELEMENT);
+                }
+            }
+        }
+        if (!named) {
+            throw new IllegalArgumentException("Path must contain at least one field name: " + path);
+        }
+        return segments;
+    }
+
+    /**
+     * Последнее имя поля в пути — по нему тело проверяется до парсинга
+     */
+    static String lastFieldName(String path) {
+        List<String> segments = parse(path);
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            String segment = segments.get(i);
+            if (!ANY_FIELD.equals(segment) && !ANY_ELEMENT.equals(segment)) {
+                return segment;
+            }
+        }
+        throw new IllegalStateException("Path without field name: " + path);
+    }
+
+    /**
+     * Начальное состояние — корень документа
+     */
+    public int root() {
+        return rules.length == 0 ? DEAD : 0;
+    }
+
+    /**
+     * Состояние значения поля объекта
+     */
+    public int onField(int state, String fieldName) {
+        if (state == DEAD) {
+            return DEAD;
+        }
+        Integer next = fieldTransitions.get(state).get(fieldName);
+        return next != null ? next : otherFieldTransitions[state];
+    }
+
+    /**
+     * Состояние элемента массива
+     */
+    public int onElement(int state) {
+        return state == DEAD ? DEAD : elementTransitions[state];
+    }
+
+    /**
+     * Правило для значения в этом состоянии или null
+     */
+    public FieldRule getRule(int state) {
+        return state == DEAD ? null : rules[state];
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    private static int stateId(TreeSet<Integer> nodeIds, Map<TreeSet<Integer>, Integer> stateIds,
+                               List<TreeSet<Integer>> states) {
+        if (nodeIds.isEmpty()) {
+            return DEAD;
+        }
+        Integer id = stateIds.get(nodeIds);
+        if (id == null) {
+            id = states.size();
+            stateIds.put(nodeIds, id);
+            states.add(nodeIds);
+        }
+        return id;
+    }
+
+    /**
+     * Узел бора путей
+     */
+    private static final class Node {
+        final int wildcards;
+        final Map<String, Node> fields = new LinkedHashMap<>();
+        Node anyField;
+        Node anyElement;
+        FieldRule rule;
+        int order;
+        int id;
+
+        Node(int wildcards) {
+            this.wildcards = wildcards;
+        }
+
+        Node child(String segment) {
+            if (ANY_FIELD.equals(segment)) {
+                if (anyField == null) {
+                    anyField = new Node(wildcards + 1);
+                }
+                return anyField;
+            }
+            if (ANY_ELEMENT.equals(segment)) {
+                if (anyElement == null) {
+                    // [*] — единственный способ попасть в массив, он не делает путь менее точным
+                    anyElement = new Node(wildcards);
+                }
+                return anyElement;
+            }
+            return fields.computeIfAbsent(segment, name -> new Node(wildcards));
+        }
+
+        /**
+         * Более точный путь или, при равной точности, более позднее правило
+         */
+        boolean beats(Node other) {
+            return wildcards < other.wildcards || wildcards == other.wildcards && order > other.order;
+        }
+
+        void collect(List<Node> nodes) {
+            id = nodes.size();
+            nodes.add(this);
+            for (Node child : fields.values()) {
+                child.collect(nodes);
+            }
+            if (anyField != null) {
+                anyField.collect(nodes);
+            }
+            if (anyElement != null) {
+                anyElement.collect(nodes);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.masker.service;
+
+import lombok.Getter;
+
+/**
+ * Сервисы маскировки запроса и ответа, выбранные для одного HTTP-запроса.
+ * Создаётся {@link JsonMaskingService#forRequest}: маршрут ищется один раз на оба направления
+ */
+@Getter
+public final class RouteMasking {
+
+    /** Правила для тела запроса; пустой план — запрос не маскируется */
+    private final JsonMaskingService request;
+    /** Правила для тела ответа; пустой план — ответ не маскируется */
+    private final JsonMaskingService response;
+
+    RouteMasking(JsonMaskingService request, JsonMaskingService response) {
+        this.request = request;
+        this.response = response;
+    }
+}
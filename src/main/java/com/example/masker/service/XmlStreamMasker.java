@@ -0,0 +1,408 @@
+package com.example.masker.service;
+
+import com.example.masker.metrics.MaskingRecorder;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Потоковый маскировщик XML на StAX.
+ *
+ * События читаются из {@link XMLEventReader} и сразу пишутся в {@link XMLEventWriter}.
+ * DOM не строится: состояние — это стек открытых элементов. Правила полей действуют
+ * по локальному имени (без префикса пространства имён):
+ * <ul>
+ *   <li>текст элемента без дочерних элементов — {@code <inn>7707083893</inn>};</li>
+ *   <li>значение атрибута — {@code <card cardNumber="4111..."/>}.</li>
+ * </ul>
+ * Текст элемента с дочерними элементами, как и объект в JSON, не маскируется.
+ * Правила по пути относятся к JSON и здесь не действуют.
+ *
+ * Семантика «динамических» DTO (code / codeValue) та же, что в {@link JsonStreamMasker}:
+ * соседние элементы {@code <code>inn</code><codeValue>...</codeValue>} или атрибуты
+ * одного элемента. Если codeValue встречается раньше code, он и последующие события
+ * родителя откладываются до появления code или конца родителя, поэтому память
+ * ограничена размером одного такого элемента, а не всего документа.
+ *
+ * DTD и внешние сущности отключены (XXE). Экземпляр хранит состояние одного документа
+ * и не потокобезопасен.
+ */
+final class XmlStreamMasker {
+
+    private static final String CODE_FIELD = "code";
+    private static final String CODE_VALUE_FIELD = "codeValue";
+
+    private static final XMLInputFactory INPUT_FACTORY = inputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+    private final MaskingPlan plan;
+    private final MaskingRecorder recorder;
+
+    private XMLEventWriter out;
+    private Frame top;
+
+    XmlStreamMasker(MaskingPlan plan, MaskingRecorder recorder) {
+        this.plan = plan;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Маскирует документ из in и пишет результат в target в кодировке,
+     * объявленной в документе (по умолчанию UTF-8). Потоки не закрываются
+     *
+     * @throws IOException если документ не является корректным XML
+     */
+    void mask(InputStream in, OutputStream target) throws IOException {
+        XMLEventReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLEventReader(in);
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (out == null) {
+                    out = OUTPUT_FACTORY.createXMLEventWriter(target, encoding(event));
+                }
+                process(event);
+            }
+            if (out != null) {
+                out.flush();
+                out.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid XML: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // Исходный поток читателем не закрывается, освобождать нечего
+                }
+            }
+        }
+    }
+
+    private void process(XMLEvent event) throws XMLStreamException {
+        switch (event.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                startElement(event.asStartElement());
+                return;
+            case XMLStreamConstants.END_ELEMENT:
+                endElement(event.asEndElement());
+                return;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                characters(event);
+                return;
+            default:
+                // Комментарий или инструкция внутри элемента: текст уже не сплошной
+                if (top != null) {
+                    open(top);
+                }
+                emit(top, event);
+        }
+    }
+
+    private void startElement(StartElement element) throws XMLStreamException {
+        Frame parent = top;
+        if (parent != null) {
+            open(parent);
+        }
+        StartElement start = maskAttributes(element);
+        String name = element.getName().getLocalPart();
+        Frame frame = new Frame(parent, name, start);
+        if (plan.hasRule(name) || CODE_FIELD.equals(name) || CODE_VALUE_FIELD.equals(name)) {
+            // Открывающий тег пишется, когда станет ясно, что внутри только текст
+            frame.text = new StringBuilder();
+        } else {
+            emit(parent, start);
+        }
+        top = frame;
+    }
+
+    private void characters(XMLEvent event) throws XMLStreamException {
+        Frame frame = top;
+        if (frame != null && frame.text != null) {
+            frame.text.append(event.asCharacters().getData());
+            return;
+        }
+        emit(frame, event);
+    }
+
+    private void endElement(EndElement end) throws XMLStreamException {
+        Frame frame = top;
+        top = frame.parent;
+        if (frame.pendingName != null) {
+            resolvePending(frame, false);
+        }
+        if (frame.text == null) {
+            emit(frame.parent, end);
+            return;
+        }
+
+        Frame parent = frame.parent;
+        String name = frame.name;
+        String text = frame.text.toString();
+        if (parent != null && CODE_VALUE_FIELD.equals(name)) {
+            parent.codeValueSeen = true;
+            if (parent.pendingName != null) {
+                resolvePending(parent, CODE_FIELD.equals(parent.pendingName));
+            }
+            if (parent.codeSeen) {
+                writeElement(parent, frame.start, text, end, codeValueRule(parent.codeText));
+            } else {
+                // code ещё не встречался — решение откладываем
+                defer(parent, name, frame.start, text, end);
+            }
+            return;
+        }
+
+        if (parent != null && CODE_FIELD.equals(name)) {
+            parent.codeSeen = true;
+            parent.codeText = text;
+            if (parent.pendingName != null) {
+                resolvePending(parent, CODE_VALUE_FIELD.equals(parent.pendingName));
+            }
+            if (!parent.codeValueSeen && plan.hasRule(CODE_FIELD)) {
+                // Маскировать ли code, зависит от наличия codeValue дальше в родителе
+                defer(parent, name, frame.start, text, end);
+            } else {
+                // В динамическом DTO code копируется как есть
+                writeElement(parent, frame.start, text, end, null);
+            }
+            return;
+        }
+
+        writeElement(parent, frame.start, text, end, plan.getRule(name));
+    }
+
+    /**
+     * У элемента, текст которого копился, появилось дочернее событие: он не скалярный.
+     * Записывает открывающий тег и накопленный текст как есть
+     */
+    private void open(Frame frame) throws XMLStreamException {
+        if (frame.text == null) {
+            return;
+        }
+        String text = frame.text.toString();
+        frame.text = null;
+
+        Frame parent = frame.parent;
+        if (parent != null && CODE_VALUE_FIELD.equals(frame.name)) {
+            parent.codeValueSeen = true;
+            if (parent.pendingName != null) {
+                resolvePending(parent, CODE_FIELD.equals(parent.pendingName));
+            }
+        } else if (parent != null && CODE_FIELD.equals(frame.name)) {
+            parent.codeSeen = true;
+            parent.codeText = null;
+            if (parent.pendingName != null) {
+                resolvePending(parent, CODE_VALUE_FIELD.equals(parent.pendingName));
+            }
+        }
+
+        emit(parent, frame.start);
+        if (!text.isEmpty()) {
+            emit(frame, EVENT_FACTORY.createCharacters(text));
+        }
+    }
+
+    /**
+     * Маскирует атрибуты по именам; пара атрибутов code / codeValue — как динамический DTO
+     */
+    private StartElement maskAttributes(StartElement element) {
+        Iterator<Attribute> iterator = element.getAttributes();
+        if (!iterator.hasNext()) {
+            return element;
+        }
+
+        List<Attribute> attributes = new ArrayList<>();
+        String codeText = null;
+        boolean hasCodeValue = false;
+        while (iterator.hasNext()) {
+            Attribute attribute = iterator.next();
+            String name = attribute.getName().getLocalPart();
+            if (CODE_FIELD.equals(name)) {
+                codeText = attribute.getValue();
+            } else if (CODE_VALUE_FIELD.equals(name)) {
+                hasCodeValue = true;
+            }
+            attributes.add(attribute);
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute attribute = attributes.get(i);
+            String name = attribute.getName().getLocalPart();
+            FieldRule rule;
+            if (CODE_VALUE_FIELD.equals(name)) {
+                rule = codeValueRule(codeText);
+            } else if (CODE_FIELD.equals(name) && hasCodeValue) {
+                rule = null;
+            } else {
+                rule = plan.getRule(name);
+            }
+            String value = attribute.getValue();
+            String masked = maskText(value, rule);
+            if (masked != value) {
+                attributes.set(i, EVENT_FACTORY.createAttribute(attribute.getName(), masked));
+                changed = true;
+            }
+        }
+        return changed
+                ? EVENT_FACTORY.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces())
+                : element;
+    }
+
+    /**
+     * Откладывает запись элемента: всё, что идёт за ним в родителе, копится в хвосте
+     */
+    private void defer(Frame frame, String name, StartElement start, String text, EndElement end) {
+        frame.pendingName = name;
+        frame.pendingStart = start;
+        frame.pendingText = text;
+        frame.pendingEnd = end;
+        frame.tail = new ArrayList<>();
+    }
+
+    /**
+     * Записывает отложенный элемент и воспроизводит накопленный хвост родителя
+     *
+     * @param dynamic найдена ли парная часть code / codeValue
+     */
+    private void resolvePending(Frame frame, boolean dynamic) throws XMLStreamException {
+        String name = frame.pendingName;
+        List<XMLEvent> tail = frame.tail;
+
+        FieldRule rule;
+        if (CODE_VALUE_FIELD.equals(name)) {
+            rule = codeValueRule(dynamic ? frame.codeText : null);
+        } else {
+            rule = dynamic ? null : plan.getRule(name);
+        }
+
+        StartElement start = frame.pendingStart;
+        String text = frame.pendingText;
+        EndElement end = frame.pendingEnd;
+        frame.pendingName = null;
+        frame.pendingStart = null;
+        frame.pendingText = null;
+        frame.pendingEnd = null;
+        frame.tail = null;
+
+        writeElement(frame, start, text, end, rule);
+        for (XMLEvent event : tail) {
+            emit(frame, event);
+        }
+    }
+
+    /**
+     * Правило для codeValue: по значению code, иначе — обычное правило поля codeValue
+     */
+    private FieldRule codeValueRule(String codeText) {
+        if (codeText != null) {
+            FieldRule rule = plan.getRule(codeText);
+            if (rule != null) {
+                return rule;
+            }
+        }
+        return plan.getRule(CODE_VALUE_FIELD);
+    }
+
+    private void writeElement(Frame parent, StartElement start, String text, EndElement end,
+                              FieldRule rule) throws XMLStreamException {
+        emit(parent, start);
+        if (!text.isEmpty()) {
+            emit(parent, EVENT_FACTORY.createCharacters(maskText(text, rule)));
+        }
+        emit(parent, end);
+    }
+
+    private String maskText(String text, FieldRule rule) {
+        if (rule == null) {
+            return text;
+        }
+        String masked = rule.mask(text);
+        if (masked != text) {
+            recorder.recordFieldMasked(rule.getFieldName());
+        }
+        return masked;
+    }
+
+    /**
+     * Пишет событие внутри элемента frame: в хвост ближайшего элемента с отложенным
+     * дочерним элементом или сразу в результат
+     */
+    private void emit(Frame frame, XMLEvent event) throws XMLStreamException {
+        for (Frame current = frame; current != null; current = current.parent) {
+            if (current.tail != null) {
+                current.tail.add(event);
+                return;
+            }
+        }
+        out.add(event);
+    }
+
+    private static String encoding(XMLEvent first) {
+        if (first.isStartDocument() && ((StartDocument) first).encodingSet()) {
+            return ((StartDocument) first).getCharacterEncodingScheme();
+        }
+        return StandardCharsets.UTF_8.name();
+    }
+
+    private static XMLInputFactory inputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Открытый элемент
+     */
+    private static final class Frame {
+        final Frame parent;
+        /** Локальное имя */
+        final String name;
+        /** Открывающий тег с уже замаскированными атрибутами */
+        final StartElement start;
+
+        /** Текст элемента, пока в нём не было дочерних событий; null — тег уже записан */
+        StringBuilder text;
+
+        boolean codeSeen;
+        String codeText;
+        boolean codeValueSeen;
+
+        /** Отложенный дочерний элемент code / codeValue */
+        String pendingName;
+        StartElement pendingStart;
+        String pendingText;
+        EndElement pendingEnd;
+        /** События, записанные после отложенного элемента; null — ничего не отложено */
+        List<XMLEvent> tail;
+
+        Frame(Frame parent, String name, StartElement start) {
+            this.parent = parent;
+            this.name = name;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.masker;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.service.JsonMaskingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Общие заготовки тестов: настройки маскировки, сервис и mock-объекты сервлетов
+ */
+public final class MaskingTestSupport {
+
+    private MaskingTestSupport() {
+    }
+
+    /**
+     * Правило, маскирующее значение поля целиком
+     */
+    public static MaskingProperties.FieldMaskingConfig maskAll(String fieldName) {
+        MaskingProperties.FieldMaskingConfig config = new MaskingProperties.FieldMaskingConfig();
+        config.setFieldName(fieldName);
+        config.setMaskAll(true);
+        return config;
+    }
+
+    /**
+     * Настройки по умолчанию с правилами {@link #maskAll} для перечисленных полей
+     */
+    public static MaskingProperties maskAllProperties(String... fieldNames) {
+        MaskingProperties properties = new MaskingProperties();
+        for (String fieldName : fieldNames) {
+            properties.getFields().add(maskAll(fieldName));
+        }
+        return properties;
+    }
+
+    public static JsonMaskingService service(MaskingProperties properties) {
+        return new JsonMaskingService(properties, new ObjectMapper());
+    }
+
+    /**
+     * POST-запрос с телом в UTF-8
+     */
+    public static MockHttpServletRequest request(String uri, String contentType, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContentType(contentType);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    /**
+     * POST /users с JSON-телом
+     */
+    public static MockHttpServletRequest jsonRequest(String body) {
+        return request("/users", "application/json", body);
+    }
+
+    /**
+     * Цепочка фильтров, которая завершается обработчиком вместо контроллера
+     */
+    public static MockFilterChain chain(Handler handler) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                handler.handle(req, resp);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+}
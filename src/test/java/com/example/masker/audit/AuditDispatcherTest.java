@@ -0,0 +1,137 @@
+package com.example.masker.audit;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.filter.MaskingFilter;
+import com.example.masker.metrics.MicrometerMaskingMetrics;
+import com.example.masker.service.JsonMaskingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты режима аудита: исходные тела проходят без изменений, копия маскируется асинхронно
+ */
+public class AuditDispatcherTest {
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        properties.setFilterMode(MaskingProperties.FilterMode.AUDIT);
+        service = service(properties);
+    }
+
+    @Test
+    void testOriginalBodiesPassThroughAndMaskedCopyAudited() throws Exception {
+        BlockingQueue<AuditRecord> records = new LinkedBlockingQueue<>();
+        AuditDispatcher dispatcher = new AuditDispatcher(properties, records::add);
+        MaskingFilter filter = new MaskingFilter(properties, service, dispatcher);
+        String requestBody = "{\"user\":\"john\",\"password\":\"secret\"}";
+        String responseBody = "{\"password\":\"qwerty\",\"id\":1}";
+
+        MockHttpServletRequest request = request("/api/login", "application/json", requestBody);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<String> seenByController = new AtomicReference<>();
+        filter.doFilter(request, response, chain((req, resp) -> {
+            seenByController.set(new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            resp.setStatus(201);
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.getWriter().write(responseBody);
+        }));
+
+        assertEquals(requestBody, seenByController.get());
+        assertEquals(responseBody, response.getContentAsString());
+
+        AuditRecord record = records.poll(5, TimeUnit.SECONDS);
+        assertNotNull(record);
+        assertEquals("POST", record.getMethod());
+        assertEquals("/api/login", record.getUri());
+        assertEquals(201, record.getStatus());
+        assertEquals("{\"user\":\"john\",\"password\":\"******\"}", record.getRequestBody());
+        assertEquals("{\"password\":\"******\",\"id\":1}", record.getResponseBody());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDropPolicyAndQueueMetrics() throws Exception {
+        properties.setAuditQueueCapacity(1);
+        properties.setAuditWorkers(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CountDownLatch sinkEntered = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        AuditDispatcher dispatcher = new AuditDispatcher(properties, record -> {
+            sinkEntered.countDown();
+            unblock.await();
+        }, new MicrometerMaskingMetrics(registry));
+        AuditRecord record = new AuditRecord("GET", "/", 200, null, null, null);
+        AtomicBoolean released = new AtomicBoolean();
+
+        // Первая запись занимает рабочий поток, вторая — очередь, третья отбрасывается
+        assertTrue(dispatcher.submit(() -> record, () -> { }));
+        assertTrue(sinkEntered.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.submit(() -> record, () -> { }));
+        assertFalse(dispatcher.submit(() -> record, () -> released.set(true)));
+
+        assertTrue(released.get());
+        assertEquals(1, dispatcher.getDropped());
+        assertEquals(1.0, registry.get("http.masking.audit.queue.depth").gauge().value());
+        assertEquals(1.0, registry.get("http.masking.audit.dropped").functionCounter().count());
+
+        unblock.countDown();
+        dispatcher.shutdown();
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(0, dispatcher.getFailures());
+    }
+
+    @Test
+    void testBlockedSubmitReleasedOnShutdown() throws Exception {
+        properties.setAuditQueueCapacity(1);
+        properties.setAuditWorkers(1);
+        properties.setAuditOverflowPolicy(MaskingProperties.AuditOverflowPolicy.BLOCK);
+        CountDownLatch sinkEntered = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        AuditDispatcher dispatcher = new AuditDispatcher(properties, record -> {
+            sinkEntered.countDown();
+            unblock.await();
+        });
+        AuditRecord record = new AuditRecord("GET", "/", 200, null, null, null);
+        CountDownLatch released = new CountDownLatch(3);
+
+        assertTrue(dispatcher.submit(() -> record, released::countDown));
+        assertTrue(sinkEntered.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.submit(() -> record, released::countDown));
+
+        // Третья запись ждёт места в очереди, пока диспетчер не остановят
+        AtomicBoolean blockedResult = new AtomicBoolean(true);
+        Thread blocked = new Thread(() -> blockedResult.set(dispatcher.submit(() -> record, released::countDown)));
+        blocked.start();
+        Thread stopper = new Thread(dispatcher::shutdown);
+        stopper.start();
+
+        blocked.join(5000);
+        assertFalse(blocked.isAlive());
+        assertFalse(blockedResult.get());
+        assertEquals(1, dispatcher.getDropped());
+
+        unblock.countDown();
+        stopper.join(5000);
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.masker.filter;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.service.BodyFormat;
+import com.example.masker.service.JsonMaskingService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты маскировки тел с Content-Encoding gzip и deflate
+ */
+public class CompressedBodyMaskingTest {
+
+    private static final String BODY = "{\"user\":\"john\",\"password\":\"secret\"}";
+    private static final String MASKED = "{\"user\":\"john\",\"password\":\"******\"}";
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        service = service(properties);
+    }
+
+    @Test
+    void testGzipRequestAndResponseMaskedAndRecompressed() throws Exception {
+        AtomicReference<String> seenByController = new AtomicReference<>();
+        MockHttpServletResponse response = exchange("gzip", gzip(BODY), "gzip", (req, resp) -> {
+            seenByController.set(new String(gunzip(req.getInputStream().readAllBytes()), StandardCharsets.UTF_8));
+            resp.getOutputStream().write(gzip(BODY));
+        });
+
+        assertEquals(MASKED, seenByController.get());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(MASKED, new String(gunzip(response.getContentAsByteArray()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testStreamingDeflateResponseWrittenByteByByte() throws Exception {
+        properties.setResponseMode(MaskingProperties.ResponseMode.STREAMING);
+        MockHttpServletResponse response = exchange(null, null, "deflate", (req, resp) -> {
+            OutputStream out = resp.getOutputStream();
+            for (byte b : deflate(BODY)) {
+                out.write(b);
+            }
+        });
+
+        byte[] inflated = new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))
+                .readAllBytes();
+        assertEquals(MASKED, new String(inflated, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testGzipHeaderWithOptionalFieldsSplitAcrossWrites() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        // FEXTRA и FNAME в заголовке, затем сжатые данные из обычного gzip без его заголовка
+        compressed.write(new byte[]{0x1F, (byte) 0x8B, 8, 0x04 | 0x08, 0, 0, 0, 0, 0, (byte) 0xFF, 3, 0, 1, 2, 3});
+        compressed.write("body.json\0".getBytes(StandardCharsets.US_ASCII));
+        byte[] plain = gzip(BODY);
+        compressed.write(plain, 10, plain.length - 10);
+
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        MaskingBodyOutputStream stream = new MaskingBodyOutputStream(service, ContentCoding.GZIP, target, 1, BodyFormat.JSON);
+        byte[] bytes = compressed.toByteArray();
+        for (int i = 0; i < bytes.length; i += 3) {
+            stream.write(bytes, i, Math.min(3, bytes.length - i));
+        }
+        stream.finish();
+
+        assertEquals(MASKED, new String(gunzip(target.toByteArray()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testUnsupportedEncodingFollowsOversizePolicy() throws Exception {
+        MockHttpServletRequest request = encodedRequest("br", new byte[]{1, 2, 3});
+        new MaskingFilter(properties, service).doFilter(request, new MockHttpServletResponse(),
+                new MockFilterChain());
+        assertEquals(Boolean.TRUE, request.getAttribute(MaskingFilter.REQUEST_NOT_MASKED_ATTRIBUTE));
+
+        properties.setOversizePolicy(MaskingProperties.OversizePolicy.REJECT);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        new MaskingFilter(properties, service).doFilter(encodedRequest("br", new byte[]{1, 2, 3}), rejected,
+                new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, rejected.getStatus());
+
+        MockHttpServletResponse response = exchange(null, null, "br", (req, resp) ->
+                resp.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response.getStatus());
+    }
+
+    private MockHttpServletResponse exchange(String requestEncoding, byte[] requestBody, String responseEncoding,
+                                             Handler handler) throws Exception {
+        MockHttpServletRequest request = requestBody != null
+                ? encodedRequest(requestEncoding, requestBody)
+                : new MockHttpServletRequest("GET", "/api");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new MaskingFilter(properties, service).doFilter(request, response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.setHeader("Content-Encoding", responseEncoding);
+            handler.handle(req, resp);
+        }));
+        return response;
+    }
+
+    private static MockHttpServletRequest encodedRequest(String encoding, byte[] body) {
+        MockHttpServletRequest request = jsonRequest("");
+        request.addHeader("Content-Encoding", encoding);
+        request.setContent(body);
+        return request;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.masker.filter;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.service.JsonMaskingService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.util.WebUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты маскировки форм, строки запроса и заголовков сервлетным фильтром
+ */
+public class FormMaskingTest {
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        MaskingProperties.FieldMaskingConfig authorization = new MaskingProperties.FieldMaskingConfig();
+        authorization.setFieldName("authorization");
+        authorization.setMaskStartIndex(7);
+        properties.getFields().add(authorization);
+        service = service(properties);
+    }
+
+    @Test
+    void testFormBodyQueryParametersAndHeadersMasked() throws Exception {
+        properties.getFormMediaTypes().add("application/x-www-form-urlencoded");
+        properties.setQueryStringMasking(true);
+        properties.setHeaderMasking(true);
+        service = service(properties);
+        MockHttpServletRequest request = request("/login", "application/x-www-form-urlencoded",
+                "user=john&password=secret");
+        request.setQueryString("page=1&password=qwerty");
+        request.addParameter("page", "1");
+        request.addParameter("password", "qwerty", "secret");
+        request.addHeader("Authorization", "Bearer abc123");
+        request.addHeader("Accept", "text/html");
+        Map<String, Object> seen = new HashMap<>();
+
+        new MaskingFilter(properties, service).doFilter(request, new MockHttpServletResponse(),
+                chain((req, resp) -> {
+                    seen.put("body", new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+                    seen.put("query", req.getQueryString());
+                    seen.put("password", req.getParameterValues("password"));
+                    seen.put("page", req.getParameter("page"));
+                    seen.put("cached", req.getParameterMap() == req.getParameterMap());
+                    seen.put("authorization", req.getHeader("AUTHORIZATION"));
+                    seen.put("authorizations", Collections.list(req.getHeaders("authorization")));
+                    seen.put("accept", req.getHeader("Accept"));
+                }));
+
+        assertEquals("user=john&password=******", seen.get("body"));
+        assertEquals("page=1&password=******", seen.get("query"));
+        assertArrayEquals(new String[] {"******", "******"}, (String[]) seen.get("password"));
+        assertEquals("1", seen.get("page"));
+        assertEquals(Boolean.TRUE, seen.get("cached"));
+        assertEquals("Bearer ******", seen.get("authorization"));
+        assertEquals(List.of("Bearer ******"), seen.get("authorizations"));
+        assertEquals("text/html", seen.get("accept"));
+    }
+
+    @Test
+    void testFormQueryAndHeaderMaskingOffByDefault() throws Exception {
+        MockHttpServletRequest request = request("/login", "application/x-www-form-urlencoded", "password=secret");
+        request.setQueryString("password=qwerty");
+        request.addHeader("Authorization", "Bearer abc123");
+        AtomicReference<HttpServletRequest> seen = new AtomicReference<>();
+        AtomicReference<String> body = new AtomicReference<>();
+
+        new MaskingFilter(properties, service).doFilter(request, new MockHttpServletResponse(),
+                chain((req, resp) -> {
+                    seen.set(req);
+                    body.set(new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+                }));
+
+        // Без явного включения обертка для параметров и заголовков не создаётся, форма не маскируется
+        assertNull(WebUtils.getNativeRequest(seen.get(), MaskedParametersHttpServletRequest.class));
+        assertEquals("password=secret", body.get());
+        assertEquals("password=qwerty", seen.get().getQueryString());
+        assertEquals("Bearer abc123", seen.get().getHeader("Authorization"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.masker.filter;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.service.JsonMaskingService;
+import jakarta.servlet.ServletOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты маскировки тел application/x-ndjson сервлетным фильтром
+ */
+public class NdjsonMaskingTest {
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        service = service(properties);
+    }
+
+    @Test
+    void testRequestRecordsMaskedOneByOne() throws Exception {
+        MockHttpServletRequest request = request("/events", "application/x-ndjson",
+                "{\"password\":\"a\"}\n{\"user\":\"john\"}\n{\"password\":\"bc\"}\n");
+        AtomicReference<String> seenByController = new AtomicReference<>();
+
+        new MaskingFilter(properties, service).doFilter(request, new MockHttpServletResponse(),
+                chain((req, resp) ->
+                        seenByController.set(new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8))));
+
+        assertEquals("{\"password\":\"*\"}\n{\"user\":\"john\"}\n{\"password\":\"**\"}\n", seenByController.get());
+    }
+
+    @Test
+    void testBufferedModeStreamsResponseRecordsAsTheyAreWritten() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<String> sentBeforeSecondRecord = new AtomicReference<>();
+
+        new MaskingFilter(properties, service).doFilter(new MockHttpServletRequest("GET", "/events"), response,
+                chain((req, resp) -> {
+                    resp.setContentType("application/x-ndjson");
+                    ServletOutputStream out = resp.getOutputStream();
+                    out.write("{\"password\":\"first\"}\n".getBytes(StandardCharsets.UTF_8));
+                    sentBeforeSecondRecord.set(response.getContentAsString());
+                    out.write("{\"password\":\"second\"}".getBytes(StandardCharsets.UTF_8));
+                }));
+
+        // Первая запись ушла клиенту замаскированной, не дожидаясь конца ответа
+        assertEquals("{\"password\":\"*****\"}\n", sentBeforeSecondRecord.get());
+        assertEquals("{\"password\":\"*****\"}\n{\"password\":\"******\"}", response.getContentAsString());
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.masker.integration;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.filter.MaskingFilter;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты MaskingFilter для асинхронной обработки и неблокирующего ввода-вывода
+ */
+public class MaskingFilterAsyncIntegrationTest {
+    
+    private MaskingFilter filter;
+    
+    @BeforeEach
+    void setUp() {
+        MaskingProperties properties = maskAllProperties("password");
+        filter = new MaskingFilter(properties, service(properties));
+    }
+    
+    @Test
+    void testRequestBodyMaskedWithReadListener() throws Exception {
+        // Длина исходного тела; замаскированное может быть другой длины
+        MockHttpServletRequest mockRequest = jsonRequest("{\"id\":1,\"password\":\"secret\"}");
+        NonBlockingInput input = new NonBlockingInput();
+        HttpServletRequest request = new HttpServletRequestWrapper(mockRequest) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return input;
+            }
+        };
+        ByteArrayOutputStream seenBody = new ByteArrayOutputStream();
+        AtomicBoolean allRead = new AtomicBoolean();
+        
+        filter.doFilter(request, new MockHttpServletResponse(), chain((req, resp) -> {
+            assertEquals(-1, req.getContentLengthLong());
+            ServletInputStream in = req.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    byte[] buffer = new byte[16];
+                    while (in.isReady() && !in.isFinished()) {
+                        int read = in.read(buffer);
+                        if (read > 0) {
+                            seenBody.write(buffer, 0, read);
+                        }
+                    }
+                }
+                
+                @Override
+                public void onAllDataRead() {
+                    allRead.set(true);
+                }
+                
+                @Override
+                public void onError(Throwable t) {
+                    fail(t);
+                }
+            });
+        }));
+        
+        // Тело приходит частями уже после выхода из сервлета
+        input.push("{\"id\":1,\"passw");
+        input.push("ord\":\"sec");
+        input.push("ret\"}");
+        assertFalse(allRead.get());
+        input.finish();
+        
+        assertTrue(allRead.get());
+        assertEquals("{\"id\":1,\"password\":\"******\"}", seenBody.toString(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void testResponseMaskedWithWriteListenerAndAsyncComplete() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse mockResponse = new MockHttpServletResponse();
+        NonBlockingOutput output = new NonBlockingOutput();
+        HttpServletResponse response = new HttpServletResponseWrapper(mockResponse) {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return output;
+            }
+        };
+        
+        filter.doFilter(request, response, chain((req, resp) -> {
+            AsyncContext asyncContext = req.startAsync();
+            resp.setContentType("application/json");
+            ServletOutputStream out = resp.getOutputStream();
+            out.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() throws IOException {
+                    if (out.isReady()) {
+                        out.write("{\"password\":\"secret\"}".getBytes(StandardCharsets.UTF_8));
+                        asyncContext.complete();
+                    }
+                }
+                
+                @Override
+                public void onError(Throwable t) {
+                    fail(t);
+                }
+            });
+        }));
+        
+        assertTrue(request.isAsyncStarted());
+        output.becomeWritable();
+        
+        // Клиент ещё не принял тело — complete() откладывается до следующего onWritePossible
+        assertEquals("{\"password\":\"******\"}", output.written.toString(StandardCharsets.UTF_8));
+        assertTrue(request.isAsyncStarted());
+        
+        output.becomeWritable();
+        assertFalse(request.isAsyncStarted());
+    }
+    
+    @Test
+    void testSpilledResponseDrainedBySegmentsWithWriteListener() throws Exception {
+        MaskingProperties properties = maskAllProperties("password");
+        properties.setMaxInMemoryBodySize(DataSize.ofKilobytes(1));
+        properties.setBufferSegmentSize(DataSize.ofKilobytes(1));
+        MaskingFilter spillingFilter = new MaskingFilter(properties, service(properties));
+        
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"password\":\"secret\"}");
+        }
+        String json = body.append(']').toString();
+        
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse mockResponse = new MockHttpServletResponse();
+        NonBlockingOutput output = new NonBlockingOutput();
+        HttpServletResponse response = new HttpServletResponseWrapper(mockResponse) {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return output;
+            }
+        };
+        
+        spillingFilter.doFilter(request, response, chain((req, resp) -> {
+            AsyncContext asyncContext = req.startAsync();
+            resp.setContentType("application/json");
+            ServletOutputStream out = resp.getOutputStream();
+            out.setWriteListener(new WriteListener() {
+                @Override
+                public void onWritePossible() throws IOException {
+                    if (out.isReady()) {
+                        out.write(json.getBytes(StandardCharsets.UTF_8));
+                        asyncContext.complete();
+                    }
+                }
+                
+                @Override
+                public void onError(Throwable t) {
+                    fail(t);
+                }
+            });
+        }));
+        
+        int windows = 0;
+        while (request.isAsyncStarted()) {
+            output.becomeWritable();
+            windows++;
+        }
+        
+        // Тело на диске уходит по сегменту за окно готовности, а не копируется в очередь целиком
+        assertEquals(json.replace("\"secret\"", "\"******\""), output.written.toString(StandardCharsets.UTF_8));
+        assertTrue(output.largestWrite <= 1024, "largest write: " + output.largestWrite);
+        assertTrue(windows > json.length() / 1024, "windows: " + windows);
+    }
+    
+    @Test
+    void testResponseMaskedOnAsyncDispatch() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<HttpServletRequest> asyncRequest = new AtomicReference<>();
+        AtomicReference<HttpServletResponse> asyncResponse = new AtomicReference<>();
+        
+        filter.doFilter(request, response, chain((req, resp) -> {
+            req.startAsync(req, resp);
+            asyncRequest.set(req);
+            asyncResponse.set(resp);
+        }));
+        
+        assertEquals("", response.getContentAsString());
+        
+        // Результат готов: контейнер повторно проходит цепочку с теми же обертками
+        request.setAsyncStarted(false);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(asyncRequest.get(), asyncResponse.get(), chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"password\":\"secret\"}");
+        }));
+        
+        assertEquals("{\"password\":\"******\"}", response.getContentAsString());
+    }
+    
+    /**
+     * Входной поток контейнера: данные поступают порциями и сообщаются через ReadListener
+     */
+    private static class NonBlockingInput extends ServletInputStream {
+        private ReadListener listener;
+        private byte[] data = new byte[0];
+        private int position;
+        private boolean finished;
+        
+        void push(String chunk) throws IOException {
+            data = chunk.getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            listener.onDataAvailable();
+        }
+        
+        void finish() throws IOException {
+            finished = true;
+            listener.onAllDataRead();
+        }
+        
+        @Override
+        public int read() {
+            if (position < data.length) {
+                return data[position++] & 0xFF;
+            }
+            if (finished) {
+                return -1;
+            }
+            throw new IllegalStateException("Not ready");
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == data.length) {
+                return read();
+            }
+            int count = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+        
+        @Override
+        public boolean isFinished() {
+            return finished && position == data.length;
+        }
+        
+        @Override
+        public boolean isReady() {
+            return position < data.length;
+        }
+        
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            this.listener = readListener;
+        }
+    }
+    
+    /**
+     * Выходной поток контейнера с медленным клиентом: после каждой записи не готов до onWritePossible
+     */
+    private static class NonBlockingOutput extends ServletOutputStream {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private int largestWrite;
+        private WriteListener listener;
+        private boolean ready;
+        
+        void becomeWritable() throws IOException {
+            ready = true;
+            listener.onWritePossible();
+        }
+        
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (!ready) {
+                throw new IllegalStateException("Write while not ready");
+            }
+            written.write(b, off, len);
+            largestWrite = Math.max(largestWrite, len);
+            ready = false;
+        }
+        
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+        
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.listener = writeListener;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.masker.integration;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.filter.MaskingFilter;
+import com.example.masker.filter.SegmentPool;
+import com.example.masker.service.JsonMaskingService;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты для MaskingFilter на mock-объектах сервлетов
+ */
+public class MaskingFilterIntegrationTest {
+    
+    private MaskingProperties properties;
+    private MaskingFilter filter;
+    
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        filter = new MaskingFilter(properties, service(properties));
+    }
+    
+    @Test
+    void testRequestBodyMasked() throws Exception {
+        MockHttpServletRequest request = jsonRequest("{\"username\":\"john\",\"password\":\"secret\"}");
+        AtomicReference<String> seenBody = new AtomicReference<>();
+        
+        filter.doFilter(request, new MockHttpServletResponse(), chain((req, resp) ->
+                seenBody.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8))));
+        
+        assertEquals("{\"username\":\"john\",\"password\":\"******\"}", seenBody.get());
+    }
+    
+    @Test
+    void testResponseBodyMasked() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getOutputStream().write("{\"password\":\"secret\"}".getBytes(StandardCharsets.UTF_8));
+        }));
+        
+        assertEquals("{\"password\":\"******\"}", response.getContentAsString());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+    }
+    
+    @Test
+    void testNonJsonResponseCopiedAsIs() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/export"), response, chain((req, resp) -> {
+            resp.setContentType("text/plain");
+            resp.getWriter().write("password=secret");
+        }));
+        
+        assertEquals("password=secret", response.getContentAsString());
+    }
+    
+    @Test
+    void testNonJsonResponseBypassesCache() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<Boolean> committedWhileWriting = new AtomicReference<>();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/export"), response, chain((req, resp) -> {
+            resp.setContentType("text/csv");
+            resp.setHeader("Content-Length", "15");
+            resp.getOutputStream().write("password;secret".getBytes(StandardCharsets.UTF_8));
+            resp.flushBuffer();
+            committedWhileWriting.set(response.isCommitted());
+        }));
+        
+        assertTrue(committedWhileWriting.get());
+        assertEquals("password;secret", response.getContentAsString());
+        assertEquals(15, response.getContentLength());
+    }
+    
+    @Test
+    void testFlushBufferDoesNotCommitBufferedJson() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"password\":\"secret\"}");
+            resp.flushBuffer();
+            assertFalse(resp.isCommitted());
+        }));
+        
+        assertEquals("{\"password\":\"******\"}", response.getContentAsString());
+    }
+    
+    @Test
+    void testResetClearsCachedBody() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"partial\":");
+            resp.resetBuffer();
+            resp.getWriter().write("{\"password\":\"secret\"}");
+        }));
+        
+        assertEquals("{\"password\":\"******\"}", response.getContentAsString());
+    }
+    
+    @Test
+    void testContentLengthKeptWithoutBody() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("HEAD", "/users"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.setContentLength(42);
+        }));
+        
+        assertEquals(42, response.getContentLength());
+    }
+    
+    @Test
+    void testMalformedContentLengthHeaderIgnored() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(jsonRequest("{}"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.setHeader("Content-Length", "abc");
+            resp.addHeader("Content-Length", "");
+            resp.getWriter().write("{\"password\":\"secret\"}");
+        }));
+        
+        assertEquals("{\"password\":\"******\"}", response.getContentAsString());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+    }
+    
+    @Test
+    void testLargeBodiesSpilledToDiskAreMasked() throws Exception {
+        properties.setMaxInMemoryBodySize(DataSize.ofBytes(16));
+        MockHttpServletRequest request = jsonRequest("{\"username\":\"john\",\"password\":\"secret\"}");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<String> seenBody = new AtomicReference<>();
+        
+        filter.doFilter(request, response, chain((req, resp) -> {
+            seenBody.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8));
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"items\":[{\"password\":\"secret\"},{\"password\":\"qwerty\"}]}");
+        }));
+        
+        assertEquals("{\"username\":\"john\",\"password\":\"******\"}", seenBody.get());
+        assertEquals("{\"items\":[{\"password\":\"******\"},{\"password\":\"******\"}]}",
+                response.getContentAsString());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+    }
+    
+    @Test
+    void testBodiesSpanningPooledSegmentsAreMaskedAndSegmentsReused() throws Exception {
+        properties.setBufferSegmentSize(DataSize.ofBytes(8));
+        MaskingFilter pooledFilter = new MaskingFilter(properties, service(properties));
+        SegmentPool pool = pooledFilter.getBufferPool();
+        
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            AtomicReference<String> seenBody = new AtomicReference<>();
+            
+            pooledFilter.doFilter(jsonRequest("{\"username\":\"john\",\"password\":\"secret\"}"), response,
+                    chain((req, resp) -> {
+                        seenBody.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8));
+                        resp.setContentType("application/json");
+                        resp.getWriter().write("{\"items\":[{\"id\":1},{\"password\":\"secret\"}]}");
+                    }));
+            
+            assertEquals("{\"username\":\"john\",\"password\":\"******\"}", seenBody.get());
+            assertEquals("{\"items\":[{\"id\":1},{\"password\":\"******\"}]}", response.getContentAsString());
+        }
+        
+        // Второй запрос собран из сегментов, возвращённых первым
+        assertTrue(pool.getHits() > 0);
+        assertTrue(pool.getHitRate() > 0);
+        assertTrue(pool.getPooledSegments() > 0);
+        assertEquals((long) pool.getPooledSegments() * 8, pool.getPooledBytes());
+        
+        // Некорректный размер сегмента отклоняется до создания пула
+        properties.setBufferSegmentSize(DataSize.ofBytes(0));
+        JsonMaskingService service = service(properties);
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> new MaskingFilter(properties, service));
+        assertTrue(error.getMessage().contains("buffer-segment-size"));
+    }
+    
+    @Test
+    void testOversizedRequestPassedThroughWithFlag() throws Exception {
+        properties.setMaxBodySize(DataSize.ofBytes(10));
+        // Без Content-Length: превышение обнаруживается во время чтения
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users");
+        request.setContentType("application/json");
+        request.setContent("{\"password\":\"secret\"}".getBytes(StandardCharsets.UTF_8));
+        request.removeHeader("Content-Length");
+        AtomicReference<String> seenBody = new AtomicReference<>();
+        
+        filter.doFilter(request, new MockHttpServletResponse(), chain((req, resp) ->
+                seenBody.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8))));
+        
+        assertEquals("{\"password\":\"secret\"}", seenBody.get());
+        assertEquals(Boolean.TRUE, request.getAttribute(MaskingFilter.REQUEST_NOT_MASKED_ATTRIBUTE));
+    }
+    
+    @Test
+    void testPassedThroughRequestNotFinishedUntilOriginalStreamEnds() throws Exception {
+        properties.setMaxBodySize(DataSize.ofBytes(10));
+        // Чтение идёт сегментами: в буфере окажутся первые 16 байт, остальное — в оригинальном потоке
+        properties.setBufferSegmentSize(DataSize.ofBytes(16));
+        filter = new MaskingFilter(properties, service(properties));
+        String body = "{\"username\":\"john\",\"password\":\"secret\"}";
+        // Длина не заявлена (chunked): превышение обнаруживается во время чтения
+        HttpServletRequest request = new HttpServletRequestWrapper(jsonRequest(body)) {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        List<Boolean> finished = new ArrayList<>();
+        AtomicReference<String> seenBody = new AtomicReference<>();
+        
+        filter.doFilter(request, new MockHttpServletResponse(), chain((req, resp) -> {
+            ServletInputStream in = req.getInputStream();
+            byte[] prefix = in.readNBytes(16);
+            finished.add(in.isFinished());
+            byte[] rest = in.readAllBytes();
+            finished.add(in.isFinished());
+            seenBody.set(new String(prefix, StandardCharsets.UTF_8) + new String(rest, StandardCharsets.UTF_8));
+        }));
+        
+        assertEquals(body, seenBody.get());
+        assertEquals(Boolean.TRUE, request.getAttribute(MaskingFilter.REQUEST_NOT_MASKED_ATTRIBUTE));
+        assertEquals(List.of(false, true), finished);
+    }
+    
+    @Test
+    void testOversizedRequestRejected() throws Exception {
+        properties.setMaxBodySize(DataSize.ofBytes(10));
+        properties.setOversizePolicy(MaskingProperties.OversizePolicy.REJECT);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = chain((req, resp) -> fail("Chain must not be invoked"));
+        
+        filter.doFilter(jsonRequest("{\"password\":\"secret\"}"), response, chain);
+        
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+    
+    @Test
+    void testOversizedResponseHandledByPolicy() throws Exception {
+        properties.setMaxBodySize(DataSize.ofBytes(10));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(request, response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"password\":\"secret\"}");
+        }));
+        
+        assertEquals("{\"password\":\"secret\"}", response.getContentAsString());
+        assertEquals(Boolean.TRUE, request.getAttribute(MaskingFilter.RESPONSE_NOT_MASKED_ATTRIBUTE));
+        
+        properties.setOversizePolicy(MaskingProperties.OversizePolicy.REJECT);
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), rejected, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"password\":\"secret\"}");
+        }));
+        
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, rejected.getStatus());
+        assertFalse(rejected.getContentAsString().contains("secret"));
+    }
+    
+    @Test
+    void testStreamingResponseMaskedWhileWriting() throws Exception {
+        properties.setResponseMode(MaskingProperties.ResponseMode.STREAMING);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        byte[] body = "{\"items\":[{\"id\":1,\"password\":\"secret\"},{\"id\":2,\"password\":\"qwerty\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.setContentLength(body.length);
+            // Пишем маленькими порциями, разрывая токены
+            for (int i = 0; i < body.length; i += 5) {
+                resp.getOutputStream().write(body, i, Math.min(5, body.length - i));
+            }
+        }));
+        
+        assertEquals("{\"items\":[{\"id\":1,\"password\":\"******\"},{\"id\":2,\"password\":\"******\"}]}",
+                response.getContentAsString());
+        // Длина исходного тела не передаётся: замаскированное тело может отличаться
+        assertNull(response.getHeader("Content-Length"));
+    }
+    
+    @Test
+    void testStreamingResponseNonJsonPassedThrough() throws Exception {
+        properties.setResponseMode(MaskingProperties.ResponseMode.STREAMING);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/export"), response, chain((req, resp) -> {
+            resp.setContentType("text/csv");
+            resp.setContentLength(15);
+            resp.getWriter().write("password;secret");
+        }));
+        
+        assertEquals("password;secret", response.getContentAsString());
+        assertEquals(15, response.getContentLength());
+    }
+    
+    @Test
+    void testStreamingResponseInvalidJsonPassedThrough() throws Exception {
+        properties.setResponseMode(MaskingProperties.ResponseMode.STREAMING);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), response, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("Internal error");
+        }));
+        
+        assertEquals("Internal error", response.getContentAsString());
+    }
+    
+    @Test
+    void testRouteProfilesSelectRulesAndBypassWrapping() throws Exception {
+        MaskingProperties.RouteConfig health = new MaskingProperties.RouteConfig();
+        health.setPattern("/actuator/**");
+        MaskingProperties.RouteConfig cards = new MaskingProperties.RouteConfig();
+        cards.setPattern("/cards/{id}");
+        cards.setMethods(List.of("get"));
+        cards.setDirection(MaskingProperties.MaskingDirection.RESPONSE);
+        cards.getFields().add(maskAll("number"));
+        properties.getRoutes().addAll(List.of(health, cards));
+        filter = new MaskingFilter(properties, service(properties));
+        
+        // Маршрут без правил: обертки не создаются
+        MockHttpServletRequest healthRequest = new MockHttpServletRequest("GET", "/actuator/health");
+        MockHttpServletResponse healthResponse = new MockHttpServletResponse();
+        MockFilterChain healthChain = chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"password\":\"secret\"}");
+        });
+        filter.doFilter(healthRequest, healthResponse, healthChain);
+        assertSame(healthResponse, healthChain.getResponse());
+        assertEquals("{\"password\":\"secret\"}", healthResponse.getContentAsString());
+        
+        // Правила маршрута вместо глобальных, только для ответа
+        MockHttpServletResponse cardResponse = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/cards/7"), cardResponse, chain((req, resp) -> {
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"number\":\"4111\",\"password\":\"secret\"}");
+        }));
+        assertEquals("{\"number\":\"****\",\"password\":\"secret\"}", cardResponse.getContentAsString());
+        
+        // Другой метод не подходит под маршрут — действуют глобальные правила
+        MockHttpServletRequest postCard = jsonRequest("{\"number\":\"4111\",\"password\":\"secret\"}");
+        postCard.setRequestURI("/cards/7");
+        AtomicReference<String> seenBody = new AtomicReference<>();
+        filter.doFilter(postCard, new MockHttpServletResponse(), chain((req, resp) ->
+                seenBody.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8))));
+        assertEquals("{\"number\":\"4111\",\"password\":\"******\"}", seenBody.get());
+    }
+}
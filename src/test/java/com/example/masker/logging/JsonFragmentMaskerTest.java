@@ -0,0 +1,46 @@
+package com.example.masker.logging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты поиска и маскировки JSON-фрагментов в тексте
+ */
+public class JsonFragmentMaskerTest {
+
+    private JsonFragmentMasker masker;
+
+    @BeforeEach
+    void setUp() {
+        masker = new JsonFragmentMasker(service(maskAllProperties("password")));
+    }
+
+    @Test
+    void testEveryFragmentMaskedInPlace() {
+        String line = "[INFO] POST /login body={\"password\":\"se}cr\\\"et\",\"roles\":[\"a]\"]} "
+                + "response=[{\"password\":\"x\"}] took 12ms";
+
+        assertEquals("[INFO] POST /login body={\"password\":\"********\",\"roles\":[\"a]\"]} "
+                + "response=[{\"password\":\"*\"}] took 12ms", masker.mask(line));
+    }
+
+    @Test
+    void testNestedFragmentsOfBrokenBracketMasked() {
+        assertEquals("oops { user={\"password\":\"******\"} and [1, {\"password\":\"**\"}} tail",
+                masker.mask("oops { user={\"password\":\"secret\"} and [1, {\"password\":\"ab\"}} tail"));
+    }
+
+    @Test
+    void testTextWithoutJsonUnchangedAndBufferReused() {
+        StringBuilder out = new StringBuilder();
+        masker.mask("no json {here} [ok] {\"password\":", out);
+        assertEquals("no json {here} [ok] {\"password\":", out.toString());
+
+        out.setLength(0);
+        masker.mask("{\"password\":\"1\"}", out);
+        assertEquals("{\"password\":\"*\"}", out.toString());
+    }
+}
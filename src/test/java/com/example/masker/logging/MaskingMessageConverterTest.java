@@ -0,0 +1,90 @@
+package com.example.masker.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты конвертера Logback без Spring-контекста
+ */
+public class MaskingMessageConverterTest {
+
+    private final LoggerContext context = new LoggerContext();
+
+    @BeforeEach
+    void setUp() {
+        MaskingMessageConverter.setMaskingService(service(maskAllProperties("password")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        MaskingMessageConverter.setMaskingService(null);
+    }
+
+    @Test
+    void testDtoAndJsonStringArgumentsMasked() {
+        MaskingMessageConverter converter = converter("Request body={} {}", "Response body={}");
+        Credentials dto = new Credentials("john", "secret", List.of(Map.of("password", "qwerty")));
+
+        assertEquals("Request body={\"user\":\"john\",\"password\":\"******\",\"history\":[{\"password\":\"******\"}]} 42",
+                converter.convert(event("Request body={} {}", dto, 42)));
+        assertEquals("Response body={\"password\":\"******\"}",
+                converter.convert(event("Response body={}", " {\"password\":\"secret\"} ")));
+    }
+
+    @Test
+    void testOnlyJsonStringsMaskedWithoutTemplates() {
+        MaskingMessageConverter converter = converter();
+        URI uri = URI.create("http://example.com/a?b=1");
+
+        assertEquals("Response body={\"password\":\"******\"}",
+                converter.convert(event("Response body={}", "{\"password\":\"secret\"}")));
+        // Объекты без шаблона в опциях не сериализуются
+        assertEquals("uri http://example.com/a?b=1 {k=v}",
+                converter.convert(event("uri {} {}", uri, Map.of("k", "v"))));
+        assertEquals("user john", converter.convert(event("user {}", "john")));
+    }
+
+    @Test
+    void testOnlyListedTemplatesMasked() {
+        MaskingMessageConverter converter = converter("Request body={}");
+
+        assertEquals("Request body={\"password\":\"******\"}",
+                converter.convert(event("Request body={}", "{\"password\":\"secret\"}")));
+        assertEquals("Other={\"password\":\"secret\"}",
+                converter.convert(event("Other={}", "{\"password\":\"secret\"}")));
+    }
+
+    @Test
+    void testMessageUnchangedWithoutService() {
+        MaskingMessageConverter.setMaskingService(null);
+
+        assertEquals("Request body={\"password\":\"secret\"}",
+                converter().convert(event("Request body={}", "{\"password\":\"secret\"}")));
+    }
+
+    private MaskingMessageConverter converter(String... templates) {
+        MaskingMessageConverter converter = new MaskingMessageConverter();
+        converter.setContext(context);
+        converter.setOptionList(List.of(templates));
+        converter.start();
+        return converter;
+    }
+
+    private LoggingEvent event(String template, Object... args) {
+        return new LoggingEvent(getClass().getName(), context.getLogger("test"), Level.INFO, template, null, args);
+    }
+
+    public record Credentials(String user, String password, List<Map<String, String>> history) {
+    }
+}
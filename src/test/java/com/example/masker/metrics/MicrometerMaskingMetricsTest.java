@@ -0,0 +1,83 @@
+package com.example.masker.metrics;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.filter.MaskingFilter;
+import com.example.masker.filter.SegmentPool;
+import com.example.masker.service.JsonMaskingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты метрик маскировки на SimpleMeterRegistry
+ */
+public class MicrometerMaskingMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        properties = maskAllProperties("password");
+        service = new JsonMaskingService(properties, new ObjectMapper(), new MicrometerMaskingMetrics(registry));
+    }
+
+    @Test
+    void testServiceRecordsFieldsFastPathAndFailures() {
+        service.maskJson("{\"password\":\"a\",\"list\":[{\"password\":\"b\"}]}");
+        service.maskJson("{\"user\":\"john\"}");
+        service.maskJson("{\"password\":");
+
+        assertEquals(2.0, registry.get("http.masking.fields")
+                .tags("route", "default", "direction", "both", "rule", "password").counter().count());
+        assertEquals(1.0, registry.get("http.masking.fast.path.skips").counter().count());
+        assertEquals(1, registry.get("http.masking.duration").timer().count());
+        assertEquals(42.0, registry.get("http.masking.bytes.in").summary().totalAmount());
+        assertEquals(1.0, registry.get("http.masking.parse.failures")
+                .tags("cause", "JsonEOFException").counter().count());
+    }
+
+    @Test
+    void testFilterMetersTaggedByRouteAndDirection() throws Exception {
+        MaskingProperties.RouteConfig route = new MaskingProperties.RouteConfig();
+        route.setPattern("/api/cards/**");
+        route.getFields().add(maskAll("number"));
+        properties.setRoutes(List.of(route));
+        service.reload();
+        MaskingFilter filter = new MaskingFilter(properties, service);
+
+        MockHttpServletRequest request = request("/api/cards/1", "application/json", "{\"number\":\"4111\"}");
+        filter.doFilter(request, new MockHttpServletResponse(), chain((req, resp) -> {
+            req.getInputStream().readAllBytes();
+            resp.setContentType("application/json");
+            resp.getOutputStream().write("{\"number\":\"4111\",\"password\":\"x\"}".getBytes(StandardCharsets.UTF_8));
+        }));
+
+        assertEquals(1.0, registry.get("http.masking.fields")
+                .tags("route", "/api/cards/**", "direction", "request", "rule", "number").counter().count());
+        assertEquals(1.0, registry.get("http.masking.fields")
+                .tags("route", "/api/cards/**", "direction", "response", "rule", "number").counter().count());
+        assertEquals(1, registry.get("http.masking.duration")
+                .tags("route", "/api/cards/**", "direction", "response").timer().count());
+        assertNull(registry.find("http.masking.fields").tags("rule", "password").counter());
+        
+        // Пул буферов фильтра публикуется вместе с остальными метриками
+        SegmentPool pool = filter.getBufferPool();
+        assertTrue(pool.getMisses() > 0);
+        assertEquals(pool.getMisses(), registry.get("http.masking.buffer.pool.misses").functionCounter().count());
+        assertEquals(pool.getHits(), registry.get("http.masking.buffer.pool.hits").functionCounter().count());
+        assertEquals(pool.getHitRate(), registry.get("http.masking.buffer.pool.hit.rate").gauge().value());
+        assertEquals(pool.getPooledBytes(), registry.get("http.masking.buffer.pool.size").gauge().value());
+    }
+}
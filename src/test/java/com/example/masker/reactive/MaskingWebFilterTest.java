@@ -0,0 +1,207 @@
+package com.example.masker.reactive;
+
+import com.example.masker.config.MaskingProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.MultiValueMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для MaskingWebFilter на mock-объектах WebFlux
+ */
+public class MaskingWebFilterTest {
+
+    private MaskingProperties properties;
+    private MaskingWebFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        filter = new MaskingWebFilter(properties, service(properties));
+    }
+
+    @Test
+    void testRequestBodyMaskedChunkByChunk() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(34)
+                .body(chunks("{\"username\":\"jo", "hn\",\"passw", "ord\":\"secret\"}")));
+        AtomicReference<String> seenBody = new AtomicReference<>();
+
+        filter.filter(exchange, filtered -> {
+            assertNull(filtered.getRequest().getHeaders().get("Content-Length"));
+            return DataBufferUtils.join(filtered.getRequest().getBody())
+                    .doOnNext(buffer -> seenBody.set(buffer.toString(StandardCharsets.UTF_8)))
+                    .then();
+        }).block();
+
+        assertEquals("{\"username\":\"john\",\"password\":\"******\"}", seenBody.get());
+    }
+
+    @Test
+    void testResponseBodyMaskedChunkByChunk() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/users"));
+
+        filter.filter(exchange, filtered -> {
+            filtered.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            filtered.getResponse().getHeaders().setContentLength(71);
+            return filtered.getResponse().writeWith(chunks(
+                    "{\"items\":[{\"id\":1,\"pass", "word\":\"secret\"},{\"id\":2,",
+                    "\"password\":\"qwerty\"}]}"));
+        }).block();
+
+        assertEquals("{\"items\":[{\"id\":1,\"password\":\"******\"},{\"id\":2,\"password\":\"******\"}]}",
+                exchange.getResponse().getBodyAsString().block());
+        assertEquals(-1, exchange.getResponse().getHeaders().getContentLength());
+    }
+
+    @Test
+    void testNonJsonResponsePassedThrough() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/export"));
+
+        filter.filter(exchange, filtered -> {
+            filtered.getResponse().getHeaders().setContentType(MediaType.TEXT_PLAIN);
+            filtered.getResponse().getHeaders().setContentLength(15);
+            return filtered.getResponse().writeWith(chunks("password=secret"));
+        }).block();
+
+        assertEquals("password=secret", exchange.getResponse().getBodyAsString().block());
+        assertEquals(15, exchange.getResponse().getHeaders().getContentLength());
+    }
+
+    @Test
+    void testStructuredSuffixResponseMasked() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/users"));
+
+        filter.filter(exchange, filtered -> {
+            filtered.getResponse().getHeaders().set("Content-Type", " Application/Problem+JSON ; charset=UTF-8");
+            return filtered.getResponse().writeWith(chunks("{\"title\":\"x\",\"password\":\"secret\"}"));
+        }).block();
+
+        assertEquals("{\"title\":\"x\",\"password\":\"******\"}", exchange.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    void testFormDataParsedFromMaskedBody() {
+        properties.setFormMediaTypes(List.of(MediaType.APPLICATION_FORM_URLENCODED_VALUE));
+        MaskingWebFilter formFilter = new MaskingWebFilter(properties, service(properties));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/login")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(chunks("username=john&pass", "word=secret")));
+        AtomicReference<MultiValueMap<String, String>> seenForm = new AtomicReference<>();
+
+        // Данные формы, к которым привязывается @ModelAttribute, берутся из замаскированного тела
+        formFilter.filter(exchange, filtered -> filtered.getFormData().doOnNext(seenForm::set).then()).block();
+
+        assertEquals("john", seenForm.get().getFirst("username"));
+        assertEquals("******", seenForm.get().getFirst("password"));
+    }
+
+    @Test
+    void testGzipRequestAndResponseMaskedAndRecompressed() throws Exception {
+        byte[] compressed = gzip("{\"username\":\"john\",\"password\":\"secret\"}");
+        int split = compressed.length / 2;
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(Flux.just(Arrays.copyOfRange(compressed, 0, split),
+                                Arrays.copyOfRange(compressed, split, compressed.length))
+                        .map(DefaultDataBufferFactory.sharedInstance::wrap)));
+        AtomicReference<byte[]> seenBody = new AtomicReference<>();
+
+        filter.filter(exchange, filtered -> {
+            filtered.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            filtered.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return DataBufferUtils.join(filtered.getRequest().getBody())
+                    .doOnNext(buffer -> {
+                        byte[] bytes = new byte[buffer.readableByteCount()];
+                        buffer.read(bytes);
+                        seenBody.set(bytes);
+                    })
+                    .then(filtered.getResponse().writeWith(Flux.just(
+                            DefaultDataBufferFactory.sharedInstance.wrap(compressed))));
+        }).block();
+
+        String masked = "{\"username\":\"john\",\"password\":\"******\"}";
+        assertEquals(masked, gunzip(seenBody.get()));
+        assertEquals(masked, gunzip(DataBufferUtils.join(exchange.getResponse().getBody())
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    return bytes;
+                }).block()));
+        assertEquals("gzip", exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void testUnsupportedEncodingResponsePassedThroughWithAttribute() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/users"));
+
+        filter.filter(exchange, filtered -> {
+            filtered.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            filtered.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "br");
+            return filtered.getResponse().writeWith(chunks("brotli-bytes"));
+        }).block();
+
+        assertEquals("brotli-bytes", exchange.getResponse().getBodyAsString().block());
+        assertEquals(Boolean.TRUE, exchange.getAttribute(MaskingWebFilter.RESPONSE_NOT_MASKED_ATTRIBUTE));
+    }
+
+    @Test
+    void testUnsupportedEncodingRequestRejected() {
+        properties.setOversizePolicy(MaskingProperties.OversizePolicy.REJECT);
+        MaskingWebFilter rejectingFilter = new MaskingWebFilter(properties, service(properties));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, "br")
+                .body(chunks("brotli-bytes")));
+
+        rejectingFilter.filter(exchange, filtered -> {
+            fail("request must not reach the handler");
+            return Mono.empty();
+        }).block();
+
+        assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, exchange.getResponse().getStatusCode());
+    }
+
+    private static Flux<DataBuffer> chunks(String... parts) {
+        return Flux.fromArray(parts)
+                .map(part -> DefaultDataBufferFactory.sharedInstance.wrap(part.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
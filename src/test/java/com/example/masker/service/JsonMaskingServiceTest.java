@@ -0,0 +1,237 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Модульные тесты для JsonMaskingService без Spring-контекста
+ */
+public class JsonMaskingServiceTest {
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MaskingProperties();
+        properties.getFields().add(field("password", true, null, null));
+        service = new JsonMaskingService(properties, new ObjectMapper());
+    }
+
+    @Test
+    void testReloadAddsFieldWithoutRestart() {
+        String json = "{\"password\":\"secret\",\"token\":\"abcdef\"}";
+        assertEquals("{\"password\":\"******\",\"token\":\"abcdef\"}", service.maskJson(json));
+
+        MaskingPlan oldPlan = service.getPlan();
+        properties.getFields().add(field("token", false, 2, null));
+        service.reload();
+
+        assertNotSame(oldPlan, service.getPlan());
+        assertEquals("{\"password\":\"******\",\"token\":\"ab****\"}", service.maskJson(json));
+    }
+
+    @Test
+    void testPlanIsImmutableSnapshot() {
+        MaskingPlan plan = service.getPlan();
+
+        // Изменение свойств без reload не влияет на уже скомпилированный план
+        properties.getFields().add(field("token", true, null, null));
+
+        assertNull(plan.getRule("token"));
+        assertThrows(UnsupportedOperationException.class, () -> plan.getRules().clear());
+    }
+
+    @Test
+    void testRangeRuleClampedToValueLength() {
+        MaskingProperties.FieldMaskingConfig card = field("card", false, 2, 100);
+        card.setMaskChar('#');
+        properties.getFields().add(card);
+        service.reload();
+
+        assertEquals("{\"card\":\"12##\"}", service.maskJson("{\"card\":\"1234\"}"));
+    }
+
+    @Test
+    void testPathRulesAreAnchoredAndBeatNameRules() {
+        properties.getFields().add(path("customer.card.number", true));
+        properties.getFields().add(path("items[*].name", false));
+        properties.getFields().add(path("tags[*]", true));
+        properties.getFields().add(path("password", false));
+        service.reload();
+
+        String json = "{\"number\":\"1\",\"customer\":{\"name\":\"John\",\"card\":{\"number\":\"4111\"}},"
+                + "\"items\":[{\"name\":\"pen\",\"password\":\"secret\"},{\"name\":\"ink\"}],"
+                + "\"tags\":[\"a\",\"bc\"]}";
+
+        // Пути действуют только в своём месте, правило по пути важнее правила по имени
+        assertEquals("{\"number\":\"1\",\"customer\":{\"name\":\"John\",\"card\":{\"number\":\"****\"}},"
+                + "\"items\":[{\"name\":\"#en\",\"password\":\"******\"},{\"name\":\"#nk\"}],"
+                + "\"tags\":[\"*\",\"**\"]}", service.maskJson(json));
+
+        // Правило по пути на верхнем уровне вытесняет правило по имени только там
+        assertEquals("{\"password\":\"#ecret\",\"nested\":{\"password\":\"******\"}}",
+                service.maskJson("{\"password\":\"secret\",\"nested\":{\"password\":\"secret\"}}"));
+    }
+
+    @Test
+    void testUnreachableSubtreesCopiedAsIs() {
+        properties.getFields().clear();
+        properties.getFields().add(path("customer.*.number", true));
+        service.reload();
+
+        String json = "{\"other\":{\"customer\":{\"card\":{\"number\":\"1\"}}},\"list\":[1,{\"a\":[null,true]}],"
+                + "\"customer\":{\"card\":{\"number\":\"4111\"},\"phone\":{\"number\":\"12\"}}}";
+
+        assertEquals("{\"other\":{\"customer\":{\"card\":{\"number\":\"1\"}}},\"list\":[1,{\"a\":[null,true]}],"
+                + "\"customer\":{\"card\":{\"number\":\"****\"},\"phone\":{\"number\":\"**\"}}}",
+                service.maskJson(json));
+    }
+
+    @Test
+    void testInvalidPathRejected() {
+        properties.getFields().add(path("items[0].name", true));
+
+        assertThrows(IllegalArgumentException.class, () -> service.reload());
+    }
+
+    @Test
+    void testKeyWithEscapedSolidusMasked() {
+        properties.getFields().add(field("pass/word", true, null, null));
+        service.reload();
+        String json = "{\"pass\\/word\":\"secret\"}";
+
+        // Предварительная проверка не должна пропускать ключ, записанный через \/
+        assertEquals("{\"pass/word\":\"******\"}", service.maskJson(json));
+        assertEquals("{\"pass/word\":\"******\"}",
+                new String(service.maskJsonBytes(json.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEmbeddedJsonMasked() {
+        String json = "{\"data\":\" {\\\"user\\\":\\\"john\\\",\\\"password\\\":\\\"secret\\\"} \","
+                + "\"list\":\"[{\\\"password\\\":\\\"qwerty\\\"}]\"}";
+
+        assertEquals("{\"data\":\"{\\\"user\\\":\\\"john\\\",\\\"password\\\":\\\"******\\\"}\","
+                + "\"list\":\"[{\\\"password\\\":\\\"******\\\"}]\"}", service.maskJson(json));
+    }
+
+    @Test
+    void testEmbeddedJsonLeftAsIsWhenNothingToMask() {
+        // Разметка сохраняется, если внутри нечего маскировать или это не JSON
+        String json = "{\"data\":\"{ \\\"user\\\" : 1.0e2 }\",\"text\":\"{password}\","
+                + "\"broken\":\"{\\\"password\\\":}\"}";
+
+        assertEquals(json, service.maskJson(json));
+    }
+
+    @Test
+    void testEmbeddedJsonBoundedByDepthAndSize() {
+        String level2 = "{\\\"data\\\":\\\"{\\\\\\\"password\\\\\\\":\\\\\\\"secret\\\\\\\"}\\\"}";
+        String json = "{\"data\":\"" + level2 + "\"}";
+
+        properties.setEmbeddedJsonMaxDepth(1);
+        service.reload();
+        assertEquals(json, service.maskJson(json));
+
+        properties.setEmbeddedJsonMaxDepth(2);
+        service.reload();
+        assertTrue(service.maskJson(json).contains("******"));
+
+        properties.setEmbeddedJsonMaxSize(DataSize.ofBytes(10));
+        service.reload();
+        assertEquals(json, service.maskJson(json));
+    }
+
+    @Test
+    void testParallelArrayMaskingMatchesSequential() throws Exception {
+        properties.getFields().add(path("[*].card.number", true));
+        StringBuilder json = new StringBuilder(" [");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i > 0 ? "," : "")
+                    .append("{\"id\":").append(i)
+                    .append(",\"password\":\"p,]").append(i).append("\\\"\"")
+                    .append(",\"card\":{\"number\":\"").append(4000 + i).append("\"},\"tags\":[1,{\"a\":[]}]}");
+        }
+        json.append("]\n");
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        service.reload();
+        byte[] sequential = service.maskJsonBytes(bytes);
+
+        properties.setParallelArrayMasking(true);
+        properties.setParallelArrayThreshold(100);
+        properties.setParallelPoolSize(3);
+        JsonMaskingService parallel = new JsonMaskingService(properties, new ObjectMapper());
+        try {
+            assertArrayEquals(sequential, parallel.maskJsonBytes(bytes));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            parallel.maskJson(ByteBuffer.wrap(bytes), out);
+            assertArrayEquals(sequential, out.toByteArray());
+
+            // Ошибка в одной из частей — тело возвращается как есть
+            byte[] broken = json.toString().replace("\"id\":500,", "\"id\":500,,").getBytes(StandardCharsets.UTF_8);
+            assertSame(broken, parallel.maskJsonBytes(broken));
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    void testResultCacheReusedForIdenticalBodiesAndClearedOnReload() throws Exception {
+        properties.setResultCacheEnabled(true);
+        service = new JsonMaskingService(properties, new ObjectMapper());
+        byte[] json = "{\"password\":\"secret\",\"token\":\"abcdef\"}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] first = service.maskJsonBytes(json);
+        byte[] second = service.maskJsonBytes(json.clone());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.maskJson(ByteBuffer.wrap(json), out);
+
+        assertEquals("{\"password\":\"******\",\"token\":\"abcdef\"}", new String(first, StandardCharsets.UTF_8));
+        assertArrayEquals(first, second);
+        assertArrayEquals(first, out.toByteArray());
+        assertEquals(1, service.getResultCacheMisses());
+        assertEquals(2, service.getResultCacheHits());
+
+        // Изменение возвращённого массива не портит кэш
+        second[2] = 'X';
+        assertArrayEquals(first, service.maskJsonBytes(json));
+
+        properties.getFields().add(field("token", false, 2, null));
+        service.reload();
+        assertEquals("{\"password\":\"******\",\"token\":\"ab****\"}",
+                new String(service.maskJsonBytes(json), StandardCharsets.UTF_8));
+        assertEquals(2, service.getResultCacheMisses());
+    }
+
+    private static MaskingProperties.FieldMaskingConfig path(String path, boolean maskAll) {
+        MaskingProperties.FieldMaskingConfig config = new MaskingProperties.FieldMaskingConfig();
+        config.setPath(path);
+        config.setMaskAll(maskAll);
+        if (!maskAll) {
+            config.setMaskChar('#');
+            config.setMaskEndIndex(1);
+        }
+        return config;
+    }
+
+    private static MaskingProperties.FieldMaskingConfig field(String name, boolean maskAll,
+                                                              Integer start, Integer end) {
+        MaskingProperties.FieldMaskingConfig config = new MaskingProperties.FieldMaskingConfig();
+        config.setFieldName(name);
+        config.setMaskAll(maskAll);
+        config.setMaskStartIndex(start);
+        config.setMaskEndIndex(end);
+        return config;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.masker.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для предварительной проверки тела на наличие настроенных полей
+ */
+public class KeyPreScannerTest {
+
+    private final KeyPreScanner scanner = KeyPreScanner.compile(List.of("password", "inn", "пароль"));
+
+    @Test
+    void testQuotedKeyFound() {
+        assertTrue(scanner.mayContainKey(bytes("{\"user\":{\"password\":\"x\"}}")));
+        assertTrue(scanner.mayContainKey("{\"user\":{\"password\":\"x\"}}"));
+    }
+
+    @Test
+    void testKeyPrefixOrSuffixNotFound() {
+        // Совпадать должна вся строка в кавычках, а не её часть
+        assertFalse(scanner.mayContainKey(bytes("{\"passwordHint\":\"x\",\"winn\":1}")));
+        assertFalse(scanner.mayContainKey("{\"passwordHint\":\"x\",\"winn\":1}"));
+    }
+
+    @Test
+    void testValueMatchesForCodeCodeValue() {
+        // Имя поля в значении code тоже считается совпадением
+        assertTrue(scanner.mayContainKey(bytes("{\"code\":\"inn\",\"codeValue\":\"123\"}")));
+    }
+
+    @Test
+    void testKeyInsideStringifiedJson() {
+        assertTrue(scanner.mayContainKey(bytes("{\"data\":\"{\\\"password\\\":\\\"x\\\"}\"}")));
+    }
+
+    @Test
+    void testUnicodeEscapeIsConservativeMatch() {
+        assertTrue(scanner.mayContainKey(bytes("{\"p\\u0061ssword\":\"x\"}")));
+    }
+
+    @Test
+    void testEscapedSolidusIsConservativeMatch() {
+        // Jackson не экранирует '/', поэтому "pass\/word" не совпадает ни с одним шаблоном имени
+        KeyPreScanner solidus = KeyPreScanner.compile(List.of("pass/word"));
+        assertTrue(solidus.mayContainKey(bytes("{\"pass\\/word\":\"x\"}")));
+        assertTrue(solidus.mayContainKey("{\"pass\\/word\":\"x\"}"));
+        assertTrue(solidus.mayContainKey(bytes("{\"pass/word\":\"x\"}")));
+    }
+
+    @Test
+    void testNonAsciiKey() {
+        assertTrue(scanner.mayContainKey(bytes("{\"пароль\":\"x\"}")));
+        assertTrue(scanner.mayContainKey("{\"пароль\":\"x\"}"));
+        assertFalse(scanner.mayContainKey("{\"логин\":\"x\"}"));
+    }
+
+    @Test
+    void testIncrementalScanAcrossChunks() {
+        byte[] body = bytes("{\"id\":1,\"password\":\"x\"}");
+        int split = 12; // посередине ключа password
+        int state = scanner.advance(KeyPreScanner.INITIAL_STATE, body, 0, split);
+        assertNotEquals(KeyPreScanner.MATCH, state);
+        assertEquals(KeyPreScanner.MATCH, scanner.advance(state, body, split, body.length - split));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import com.example.masker.metrics.MaskingRecorder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты кэша результатов маскировки
+ */
+public class MaskedBodyCacheTest {
+
+    private final MaskingPlan plan = MaskingPlan.compile(new MaskingProperties());
+
+    @Test
+    void testEntriesEvictedBySizeInLruOrder() {
+        // Запись весит 97 + 100 байт и накладные расходы: сегмент вмещает две
+        MaskedBodyCache cache = new MaskedBodyCache(16 * 700, 1000, Duration.ofMinutes(1), MaskingRecorder.NOOP);
+        ByteBuffer[] bodies = bodiesInSameStripe(3);
+
+        cache.put(plan, bodies[0], MaskedBodyCache.hash(bodies[0]), new byte[100]);
+        cache.put(plan, bodies[1], MaskedBodyCache.hash(bodies[1]), new byte[100]);
+        assertNotNull(cache.get(plan, bodies[0], MaskedBodyCache.hash(bodies[0])));
+        cache.put(plan, bodies[2], MaskedBodyCache.hash(bodies[2]), new byte[100]);
+
+        assertNotNull(cache.get(plan, bodies[0], MaskedBodyCache.hash(bodies[0])));
+        assertNull(cache.get(plan, bodies[1], MaskedBodyCache.hash(bodies[1])));
+        assertNotNull(cache.get(plan, bodies[2], MaskedBodyCache.hash(bodies[2])));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void testExpiredCollidingAndOtherPlanEntriesMissed() throws Exception {
+        MaskedBodyCache cache = new MaskedBodyCache(1 << 20, 1000, Duration.ofMinutes(1), MaskingRecorder.NOOP);
+        ByteBuffer body = body(1);
+        long hash = MaskedBodyCache.hash(body);
+        cache.put(plan, body, hash, new byte[]{1});
+
+        assertArrayEquals(new byte[]{1}, cache.get(plan, body.duplicate(), hash));
+        assertNull(cache.get(MaskingPlan.compile(new MaskingProperties()), body, hash));
+        // Тело той же длины с тем же (подделанным) хешем не выдаёт чужой результат
+        assertNull(cache.get(plan, body(2), hash));
+
+        MaskedBodyCache expiring = new MaskedBodyCache(1 << 20, 1000, Duration.ofNanos(1), MaskingRecorder.NOOP);
+        expiring.put(plan, body, hash, new byte[]{1});
+        Thread.sleep(1);
+        assertNull(expiring.get(plan, body, hash));
+        assertEquals(1, expiring.getEvictions());
+    }
+
+    private static ByteBuffer[] bodiesInSameStripe(int count) {
+        ByteBuffer[] bodies = new ByteBuffer[count];
+        long stripe = MaskedBodyCache.hash(body(0)) >>> 60;
+        for (int i = 0, found = 0; found < count; i++) {
+            ByteBuffer candidate = body(i);
+            if (MaskedBodyCache.hash(candidate) >>> 60 == stripe) {
+                bodies[found++] = candidate;
+            }
+        }
+        return bodies;
+    }
+
+    private static ByteBuffer body(int id) {
+        String text = String.format("{\"id\":%090d}", id);
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
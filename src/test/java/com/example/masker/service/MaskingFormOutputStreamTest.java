@@ -0,0 +1,67 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты маскировки форм и строки запроса сканером закодированных байтов
+ */
+public class MaskingFormOutputStreamTest {
+
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        MaskingProperties properties = maskAllProperties("password");
+        MaskingProperties.FieldMaskingConfig card = new MaskingProperties.FieldMaskingConfig();
+        card.setFieldName("card number");
+        card.setMaskStartIndex(2);
+        properties.getFields().add(card);
+        service = service(properties);
+    }
+
+    @Test
+    void testOnlyMatchedValuesRewrittenAcrossChunkBoundaries() throws Exception {
+        String form = "user=J%C3%B6rg+K&password=p%40ss+w%26rd&flag&card+number=41%2011&pass=x&password=";
+        String expected = "user=J%C3%B6rg+K&password=*********&flag&card+number=41***&pass=x&password=";
+
+        // Байт за байтом: состояние сканера переживает любые границы порций
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaskingOutputStream masking = service.maskingOutputStream(BodyFormat.FORM, out);
+        for (byte b : form.getBytes(StandardCharsets.US_ASCII)) {
+            masking.write(b);
+        }
+        masking.finish();
+        assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+
+        out.reset();
+        service.maskForm(new ByteArrayInputStream(form.getBytes(StandardCharsets.US_ASCII)), out);
+        assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testQueryStringReturnedAsIsWhenNothingMasked() {
+        String query = "page=2&sort=name%2Cdesc";
+        assertSame(query, service.maskQueryString(query));
+        assertNull(service.maskQueryString(null));
+
+        assertEquals("page=2&password=***", service.maskQueryString("page=2&password=abc"));
+        // Символ маскировки, который нужно кодировать, кодируется
+        assertEquals("password=%C2%B7%C2%B7", service(withMaskChar('·'))
+                .maskQueryString("password=ab"));
+    }
+
+    private static MaskingProperties withMaskChar(char maskChar) {
+        MaskingProperties properties = maskAllProperties("password");
+        properties.setDefaultMaskChar(maskChar);
+        return properties;
+    }
+}
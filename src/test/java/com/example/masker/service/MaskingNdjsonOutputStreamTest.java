@@ -0,0 +1,86 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static com.example.masker.MaskingTestSupport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты маскировки NDJSON по записям
+ */
+public class MaskingNdjsonOutputStreamTest {
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = maskAllProperties("password");
+        service = service(properties);
+    }
+
+    @Test
+    void testRecordsMaskedIndependentlyAndFlushedAsTheyComplete() throws Exception {
+        FlushCountingOutputStream target = new FlushCountingOutputStream();
+        MaskingNdjsonOutputStream stream = service.maskingNdjsonOutputStream(target);
+
+        // Запись разрезана между порциями: до перевода строки ничего не выводится
+        stream.write(bytes("{\"id\":1,\"pass"));
+        assertEquals("", target.toString(StandardCharsets.UTF_8));
+        assertEquals(0, target.flushes);
+
+        stream.write(bytes("word\":\"secret\"}\r\n"));
+        assertEquals("{\"id\":1,\"password\":\"******\"}\r\n", target.toString(StandardCharsets.UTF_8));
+        assertEquals(1, target.flushes);
+
+        // Невалидная запись не мешает соседним, пустые строки сохраняются
+        stream.write(bytes("{\"password\":\n\n{\"password\":\"x\"}\n{\"password\":\"tail\"}"));
+        stream.finish();
+
+        assertEquals("{\"id\":1,\"password\":\"******\"}\r\n{\"password\":\n\n{\"password\":\"*\"}\n"
+                + "{\"password\":\"****\"}", target.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testParallelRecordsKeepOrder() throws Exception {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            ndjson.append("{\"id\":").append(i).append(",\"password\":\"p").append(i).append("\"}\n");
+        }
+        byte[] input = bytes(ndjson.toString());
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        service.maskNdjson(new ByteArrayInputStream(input), sequential);
+
+        properties.setNdjsonParallel(true);
+        properties.setParallelPoolSize(3);
+        JsonMaskingService parallel = service(properties);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            parallel.maskNdjson(new ByteArrayInputStream(input), out);
+
+            assertArrayEquals(sequential.toByteArray(), out.toByteArray());
+            assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("{\"id\":0,\"password\":\"**\"}\n"));
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class FlushCountingOutputStream extends ByteArrayOutputStream {
+        int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+}
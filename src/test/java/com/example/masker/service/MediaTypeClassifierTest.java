@@ -0,0 +1,51 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты классификации Content-Type
+ */
+public class MediaTypeClassifierTest {
+
+    @Test
+    void testDefaultRulesMatchSuffixesCaseAndParameters() {
+        MediaTypeClassifier classifier = MediaTypeClassifier.compile(new MaskingProperties());
+
+        assertEquals(BodyFormat.JSON, classifier.classify("application/json"));
+        assertEquals(BodyFormat.JSON, classifier.classify("Application/JSON ; Charset=UTF-8"));
+        assertEquals(BodyFormat.JSON, classifier.classify("application/problem+json"));
+        assertEquals(BodyFormat.JSON, classifier.classify("application/vnd.example.order.v2+json"));
+        assertEquals(BodyFormat.NDJSON, classifier.classify("application/x-ndjson"));
+        // Не JSON, хотя строка начинается с application/json
+        assertEquals(BodyFormat.NDJSON, classifier.classify("application/jsonl"));
+        assertNull(classifier.classify("application/json-seq"));
+
+        assertNull(classifier.classify("text/plain"));
+        assertNull(classifier.classify("application/*"));
+        assertNull(classifier.classify("not a media type"));
+        assertNull(classifier.classify(null));
+        // Повторная классификация берётся из кэша
+        assertEquals(BodyFormat.JSON, classifier.classify("application/problem+json"));
+    }
+
+    @Test
+    void testExactRulesWinOverPatternsAndInvalidRulesRejected() {
+        MaskingProperties properties = new MaskingProperties();
+        properties.setJsonMediaTypes(List.of("application/*"));
+        properties.setNdjsonMediaTypes(List.of("application/x-events"));
+        MediaTypeClassifier classifier = MediaTypeClassifier.compile(properties);
+
+        assertEquals(BodyFormat.NDJSON, classifier.classify("application/x-events"));
+        assertEquals(BodyFormat.JSON, classifier.classify("application/xml"));
+
+        properties.setJsonMediaTypes(List.of("*/*+json"));
+        assertThrows(IllegalArgumentException.class, () -> MediaTypeClassifier.compile(properties));
+        properties.setJsonMediaTypes(List.of("application/"));
+        assertThrows(IllegalArgumentException.class, () -> MediaTypeClassifier.compile(properties));
+    }
+}
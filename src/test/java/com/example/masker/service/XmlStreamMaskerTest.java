@@ -0,0 +1,147 @@
+package com.example.masker.service;
+
+import com.example.masker.config.MaskingProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты потоковой маскировки XML
+ */
+public class XmlStreamMaskerTest {
+
+    private MaskingProperties properties;
+    private JsonMaskingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MaskingProperties();
+        properties.getFields().add(field("inn", true, null, null));
+        properties.getFields().add(field("cardNumber", false, 4, 12));
+        properties.getFields().add(field("snils", false, 0, 3));
+        service = new JsonMaskingService(properties, new ObjectMapper());
+    }
+
+    @Test
+    void testElementsAndAttributesMaskedByLocalName() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:c=\"urn:client\">"
+                + "<soap:Body><c:client id=\"7\" cardNumber=\"4111111111111111\">"
+                + "<c:inn>7707083893</c:inn><c:name>Иван &amp; Co</c:name>"
+                + "<c:inn><![CDATA[1234]]></c:inn><c:inn/>"
+                + "<c:snils>123<!-- комментарий -->45</c:snils>"
+                + "<c:cardNumber><c:inn>99</c:inn></c:cardNumber>"
+                + "</c:client></soap:Body></soap:Envelope>";
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:c=\"urn:client\">"
+                + "<soap:Body><c:client id=\"7\" cardNumber=\"4111********1111\">"
+                + "<c:inn>**********</c:inn><c:name>Иван &amp; Co</c:name>"
+                + "<c:inn>****</c:inn><c:inn></c:inn>"
+                // Текст элемента с дочерними узлами не маскируется, как объект в JSON
+                + "<c:snils>123<!-- комментарий -->45</c:snils>"
+                + "<c:cardNumber><c:inn>**</c:inn></c:cardNumber>"
+                + "</c:client></soap:Body></soap:Envelope>", maskXml(xml, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCodeValuePairsInEitherOrder() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><params>"
+                + "<param><code>inn</code><codeValue>7707083893</codeValue></param>"
+                + "<param><codeValue>4111111111111111</codeValue><note>n</note><code>cardNumber</code></param>"
+                + "<param><codeValue>12345</codeValue></param>"
+                + "</params>";
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><params>"
+                + "<param><code>inn</code><codeValue>**********</codeValue></param>"
+                + "<param><codeValue>4111********1111</codeValue><note>n</note><code>cardNumber</code></param>"
+                + "<param><codeValue>12345</codeValue></param>"
+                + "</params>", maskXml(xml, StandardCharsets.UTF_8));
+
+        // Пара атрибутов одного элемента; порядок атрибутов читатель не сохраняет
+        String attributes = maskXml("<param code=\"snils\" codeValue=\"12345\" snils=\"678\"/>",
+                StandardCharsets.UTF_8);
+        assertTrue(attributes.contains(" code=\"snils\""), attributes);
+        assertTrue(attributes.contains(" codeValue=\"***45\""), attributes);
+        assertTrue(attributes.contains(" snils=\"***\""), attributes);
+    }
+
+    @Test
+    void testDeclaredEncodingKeptAndExternalEntitiesNotResolved() throws Exception {
+        Charset cp1251 = Charset.forName("windows-1251");
+        String xml = "<?xml version=\"1.0\" encoding=\"windows-1251\"?><client><name>Пётр</name><inn>123</inn></client>";
+        assertEquals("<?xml version=\"1.0\" encoding=\"windows-1251\"?><client><name>Пётр</name><inn>***</inn></client>",
+                maskXml(xml, cp1251));
+
+        String xxe = "<?xml version=\"1.0\"?><!DOCTYPE c [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+                + "<c><inn>&x;</inn></c>";
+        assertThrows(IOException.class, () -> maskXml(xxe, StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> maskXml("<c><inn>1</c>", StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testPushStreamMasksDocumentOnFinish() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaskingOutputStream masking = service.maskingOutputStream(BodyFormat.XML, out);
+        masking.write("<a><inn>12".getBytes(StandardCharsets.UTF_8));
+        masking.write("34</inn></a>".getBytes(StandardCharsets.UTF_8));
+        masking.finish();
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a><inn>****</inn></a>",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testPushStreamSpillsLargeBodyAndAppliesOversizePolicy() throws Exception {
+        properties.setMaxInMemoryBodySize(DataSize.ofBytes(8));
+        properties.setMaxBodySize(DataSize.ofBytes(64));
+        service = new JsonMaskingService(properties, new ObjectMapper());
+
+        // Больше порога памяти: тело уходит во временный файл и всё равно маскируется
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><a><inn>****</inn><b>x</b></a>",
+                pushXml("<a><inn>1234</inn>", "<b>x</b></a>"));
+
+        // Больше max-body-size при PASS_THROUGH: тело передаётся как есть
+        String large = "<a><inn>1234</inn>" + "<b>x</b>".repeat(10) + "</a>";
+        assertEquals(large, pushXml(large.substring(0, 40), large.substring(40)));
+
+        properties.setOversizePolicy(MaskingProperties.OversizePolicy.REJECT);
+        service = new JsonMaskingService(properties, new ObjectMapper());
+        assertThrows(IOException.class, () -> pushXml(large.substring(0, 40), large.substring(40)));
+    }
+
+    private String pushXml(String... chunks) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MaskingOutputStream masking = service.maskingOutputStream(BodyFormat.XML, out);
+        for (String chunk : chunks) {
+            masking.write(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+        masking.finish();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private String maskXml(String xml, Charset charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.maskXml(new ByteArrayInputStream(xml.getBytes(charset)), out);
+        return out.toString(charset);
+    }
+
+    private static MaskingProperties.FieldMaskingConfig field(String name, boolean maskAll,
+                                                              Integer start, Integer end) {
+        MaskingProperties.FieldMaskingConfig config = new MaskingProperties.FieldMaskingConfig();
+        config.setFieldName(name);
+        config.setMaskAll(maskAll);
+        config.setMaskStartIndex(start);
+        config.setMaskEndIndex(end);
+        return config;
+    }
+}